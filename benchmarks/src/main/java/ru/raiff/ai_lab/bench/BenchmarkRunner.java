@@ -0,0 +1,38 @@
+package ru.raiff.ai_lab.bench;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Точка входа {@code benchmarks.jar}: те же аргументы, что у {@code org.openjdk.jmh.Main}, но результаты
+ * по умолчанию пишутся в JSON ({@code jmh-result.json}, либо {@code jmh-<bench.commit>.json}, если задано
+ * системное свойство), чтобы прогоны разных коммитов можно было сравнить, например в JMH Visualizer.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+                || commandLine.shouldListProfilers() || commandLine.shouldListResultFormats()) {
+            // справку и списки печатает штатный Main
+            Main.main(args);
+            return;
+        }
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            String commit = System.getProperty("bench.commit");
+            builder.result(commit == null || commit.isBlank() ? "jmh-result.json" : "jmh-" + commit + ".json");
+        }
+        new Runner(builder.build()).run();
+    }
+}
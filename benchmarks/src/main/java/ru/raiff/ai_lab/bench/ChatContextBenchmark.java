@@ -0,0 +1,163 @@
+package ru.raiff.ai_lab.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.data.domain.Limit;
+import ru.raiff.ai_lab.dto.ArchivedChat;
+import ru.raiff.ai_lab.dto.ChatTurn;
+import ru.raiff.ai_lab.model.ChatEntry;
+import ru.raiff.ai_lab.repository.ChatArchiveRepository;
+import ru.raiff.ai_lab.repository.ChatEntryRepository;
+import ru.raiff.ai_lab.service.ChatArchiveService;
+import ru.raiff.ai_lab.service.ChatContextService;
+import ru.raiff.ai_lab.service.ConversationSummaryService;
+import ru.raiff.ai_lab.service.LlmConcurrencyLimiter;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сборка контекста промпта по длинной истории чата: прежний {@code ChatController.buildContext}
+ * (конкатенация последних реплик из полностью загруженной истории) и {@link ChatContextService#buildContext}
+ * с бюджетом токенов. Окно чата прогрето, так что меряется подготовка промпта, а не запрос в БД;
+ * репозиторий и модель подменены заглушками, пересказ пустой.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatContextBenchmark {
+
+    private static final long CHAT_ID = 1L;
+
+    @Param({"1000", "10000"})
+    private int historySize;
+
+    @Param({"200", "4000"})
+    private int turnLength;
+
+    private List<ChatTurn> history;
+    private ChatContextService chatContextService;
+    private ConversationSummaryService conversationSummaryService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        Random random = new Random(42);
+        history = new ArrayList<>(historySize);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+        for (int i = 0; i < historySize; i++) {
+            history.add(new ChatTurn((long) i + 1, i % 2 == 0 ? ChatEntry.Role.USER : ChatEntry.Role.ASSISTANT,
+                    randomText(random, turnLength), start.plusMinutes(i)));
+        }
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        JTokkitTokenCountEstimator estimator = new JTokkitTokenCountEstimator();
+        ChatEntryRepository repository = stubRepository(history);
+        LlmConcurrencyLimiter limiter = new LlmConcurrencyLimiter(meterRegistry, 1, 1, Duration.ofSeconds(1), Duration.ofSeconds(1));
+        ChatModel chatModel = prompt -> {
+            throw new UnsupportedOperationException("Model is not available in benchmarks");
+        };
+        conversationSummaryService = new ConversationSummaryService(repository, limiter, estimator, chatModel,
+                Duration.ofHours(1), 10, 40, 3000, 250);
+        chatContextService = new ChatContextService(repository, conversationSummaryService, noArchive(meterRegistry),
+                estimator, meterRegistry, 20, 1500, 500, Duration.ofHours(1), 10);
+        // первый вызов заполняет окно и запускает фоновый пересказ; пустой пересказ считается без вызова модели
+        chatContextService.buildContext(CHAT_ID);
+        while (conversationSummaryService.cached(CHAT_ID).isEmpty()) {
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        conversationSummaryService.shutdown();
+    }
+
+    @Benchmark
+    public String legacyConcatenation() {
+        return legacyBuildContext(history, 5);
+    }
+
+    @Benchmark
+    public String tokenBudgeted() {
+        return chatContextService.buildContext(CHAT_ID);
+    }
+
+    // копия прежнего ChatController.buildContext — базовая линия для сравнения
+    static String legacyBuildContext(List<ChatTurn> entries, int maxEntries) {
+        if (entries == null || entries.isEmpty()) {
+            return "";
+        }
+        int startIndex = Math.max(0, entries.size() - maxEntries);
+        StringBuilder context = new StringBuilder();
+        for (int i = startIndex; i < entries.size(); i++) {
+            ChatTurn entry = entries.get(i);
+            context.append(entry.role().name())
+                   .append(": ")
+                   .append(entry.content())
+                   .append("\n");
+        }
+        return context.toString();
+    }
+
+    private static String randomText(Random random, int length) {
+        String[] words = {"кредит", "ставка", "договор", "клиент", "платёж", "account", "limit", "процент", "срок", "банк"};
+        StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            text.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        return text.substring(0, length);
+    }
+
+    // архива нет: загрузка окна не ходит в БД
+    private static ChatArchiveService noArchive(SimpleMeterRegistry meterRegistry) {
+        ChatArchiveRepository repository = new ChatArchiveRepository(null) {
+            @Override
+            public Optional<ArchivedChat> findArchive(long chatId) {
+                return Optional.empty();
+            }
+        };
+        return new ChatArchiveService(repository, null, null, new ObjectMapper(), meterRegistry,
+                false, Duration.ofDays(30), 1, 1);
+    }
+
+    // последние реплики из истории; промежуток для пересказа пустой, чтобы фоновое обновление не шло в модель
+    private static ChatEntryRepository stubRepository(List<ChatTurn> history) {
+        return (ChatEntryRepository) Proxy.newProxyInstance(ChatEntryRepository.class.getClassLoader(),
+                new Class<?>[]{ChatEntryRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findLatestTurns" -> {
+                        int limit = ((Limit) args[1]).max();
+                        List<ChatTurn> latest = new ArrayList<>(history.subList(Math.max(0, history.size() - limit), history.size()));
+                        yield latest.reversed();
+                    }
+                    case "findTurnsBetween" -> List.of();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "ChatEntryRepository stub";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,91 @@
+package ru.raiff.ai_lab.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.raiff.ai_lab.service.HashUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SHA-256 содержимого документа ({@code DocumentService.calculateHash}) на больших входах: прежняя реализация
+ * с {@code Integer.toHexString} на байт, текущий {@link HashUtils} по строке и потоковый хеш файла.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+
+    @Param({"1024", "1048576", "16777216"})
+    private int sizeInChars;
+
+    private String content;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        // кириллица вперемешку с латиницей — как в реальных документах, с многобайтным UTF-8
+        String alphabet = "абвгдеёжзийклмнопрстуфхцчшщъыьэюя abcdefghijklmnopqrstuvwxyz .,\n";
+        char[] chars = new char[sizeInChars];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        content = new String(chars);
+        file = Files.createTempFile("hash-bench", ".txt");
+        Files.writeString(file, content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String legacyString() throws NoSuchAlgorithmException {
+        return legacySha256(content);
+    }
+
+    @Benchmark
+    public String hashUtilsString() {
+        return HashUtils.sha256(content);
+    }
+
+    @Benchmark
+    public String hashUtilsFile() {
+        return HashUtils.sha256(file);
+    }
+
+    // копия прежнего DocumentService.calculateHash — базовая линия для сравнения
+    static String legacySha256(String content) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : hash) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) hexString.append('0');
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package ru.raiff.ai_lab.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Преобразование метаданных чанка в JSON и обратно. {@code mapper*} повторяют
+ * {@code VectorStoreService.convertMetadataToJson/parseMetadata} (общий {@link ObjectMapper}, сырой {@code Map.class}),
+ * {@code writer*}/{@code reader*} — заранее построенные {@link ObjectWriter}/{@link ObjectReader} под тип карты.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataJsonBenchmark {
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectWriter writer = objectMapper.writerFor(MAP_TYPE);
+    private final ObjectReader reader = objectMapper.readerFor(MAP_TYPE);
+
+    private Map<String, Object> metadata;
+    private String json;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        // метаданные, которые пишет DocumentIngestionService
+        metadata = new LinkedHashMap<>();
+        metadata.put("source", "Положение о порядке обработки обращений клиентов.pdf");
+        metadata.put("document_hash", "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+        metadata.put("chunk_index", 137);
+        json = objectMapper.writeValueAsString(metadata);
+    }
+
+    @Benchmark
+    public String mapperWrite() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(metadata);
+    }
+
+    @Benchmark
+    public String writerWrite() throws JsonProcessingException {
+        return writer.writeValueAsString(metadata);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> mapperRead() throws JsonProcessingException {
+        return objectMapper.readValue(json, Map.class);
+    }
+
+    @Benchmark
+    public Map<String, Object> readerRead() throws JsonProcessingException {
+        return reader.readValue(json);
+    }
+}
@@ -0,0 +1,91 @@
+package ru.raiff.ai_lab.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.raiff.ai_lab.model.PgVector;
+
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение текстового литерала pgvector (прежний путь через StringBuilder и CAST AS vector)
+ * с бинарным форматом {@link PgVector}: кодирование на запись и разбор на чтение.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PgVectorCodecBenchmark {
+
+    @Param({"1024"})
+    private int dimensions;
+
+    private float[] embedding;
+    private String textValue;
+    private byte[] binaryValue;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        embedding = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            embedding[i] = random.nextFloat() * 2 - 1;
+        }
+        textValue = legacyTextEncode(embedding);
+        PgVector vector = new PgVector(embedding);
+        binaryValue = new byte[vector.lengthInBytes()];
+        vector.toBytes(binaryValue, 0);
+    }
+
+    @Benchmark
+    public String textEncode() {
+        return legacyTextEncode(embedding);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        PgVector vector = new PgVector(embedding);
+        byte[] bytes = new byte[vector.lengthInBytes()];
+        vector.toBytes(bytes, 0);
+        return bytes;
+    }
+
+    @Benchmark
+    public float[] textDecode() throws SQLException {
+        PgVector vector = new PgVector();
+        vector.setValue(textValue);
+        return vector.toArray();
+    }
+
+    @Benchmark
+    public float[] binaryDecode() throws SQLException {
+        PgVector vector = new PgVector();
+        vector.setByteValue(binaryValue, 0);
+        return vector.toArray();
+    }
+
+    // копия прежнего VectorStoreService.convertEmbeddingToString — базовая линия для сравнения
+    static String legacyTextEncode(float[] embedding) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < embedding.length; i++) {
+            sb.append(embedding[i]);
+            if (i < embedding.length - 1) {
+                sb.append(",");
+            }
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,155 @@
+package ru.raiff.ai_lab.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.raiff.ai_lab.index.HnswIndex;
+import ru.raiff.ai_lab.index.Quantization;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Поиск k ближайших по косинусу в памяти: точный перебор по плотному массиву нормированных векторов
+ * на 1k, 100k и 1M векторов — и {@link HnswIndex} на тех же данных. Индекс строится в setup параллельными
+ * вставками; на 1M это занимает минуты, поэтому HNSW на 1M включается явно: {@code -p hnsw=true}.
+ * Миллион векторов по 256 измерений — около 1 ГБ кучи.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SimilaritySearchBenchmark {
+
+    private static final int QUERIES = 64;
+    private static final int K = 10;
+    private static final int EF = 64;
+
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    @Param({"256"})
+    private int dimensions;
+
+    @Param({"NONE"})
+    private Quantization quantization;
+
+    // строить ли HNSW-индекс на 1M (на меньших размерах он строится всегда)
+    @Param({"false"})
+    private boolean hnsw;
+
+    private float[] vectors;
+    private float[][] queries;
+    private int nextQuery;
+    private Path indexDirectory;
+    private HnswIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        vectors = new float[size * dimensions];
+        for (int i = 0; i < size; i++) {
+            float[] vector = randomUnitVector(random, dimensions);
+            System.arraycopy(vector, 0, vectors, i * dimensions, dimensions);
+        }
+        queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = randomUnitVector(random, dimensions);
+        }
+        if (hnsw || size < 1_000_000) {
+            indexDirectory = Files.createTempDirectory("hnsw-bench");
+            index = HnswIndex.open(indexDirectory, dimensions, 16, 100, quantization);
+            IntStream.range(0, size).parallel().forEach(i ->
+                    index.upsert(Integer.toString(i), Arrays.copyOfRange(vectors, i * dimensions, (i + 1) * dimensions)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (index != null) {
+            index.close();
+            try (Stream<Path> files = Files.walk(indexDirectory)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int[] exactScan() {
+        float[] query = nextQuery();
+        // минимальная куча из K лучших по скалярному произведению (для нормированных векторов — по косинусу)
+        PriorityQueue<Scored> best = new PriorityQueue<>(K + 1, Comparator.comparingDouble(Scored::score));
+        for (int i = 0; i < size; i++) {
+            float dot = 0;
+            int offset = i * dimensions;
+            for (int d = 0; d < dimensions; d++) {
+                dot += vectors[offset + d] * query[d];
+            }
+            if (best.size() < K) {
+                best.add(new Scored(i, dot));
+            } else if (dot > best.peek().score()) {
+                best.poll();
+                best.add(new Scored(i, dot));
+            }
+        }
+        int[] result = new int[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = best.poll().index();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<HnswIndex.Neighbor> hnswSearch() {
+        if (index == null) {
+            throw new IllegalStateException("HNSW index is not built for size " + size + ", run with -p hnsw=true");
+        }
+        return index.search(nextQuery(), K, EF);
+    }
+
+    private float[] nextQuery() {
+        float[] query = queries[nextQuery];
+        nextQuery = (nextQuery + 1) % QUERIES;
+        return query;
+    }
+
+    private static float[] randomUnitVector(SplittableRandom random, int dimensions) {
+        float[] vector = new float[dimensions];
+        double norm = 0;
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) (random.nextDouble() * 2 - 1);
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private record Scored(int index, float score) {
+    }
+}
@@ -0,0 +1,236 @@
+package ru.raiff.ai_lab.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Заглушка Ollama для нагрузочных прогонов: {@code /api/chat} (поток NDJSON и обычный ответ) и {@code /api/embed}.
+ * Скорость генерации, задержка первого токена и доля ошибок задаются аргументами, ответ и эмбеддинги
+ * детерминированы по входному тексту — так прогоны сравнимы между собой и не зависят от железа модели.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar ru.raiff.ai_lab.load.OllamaStub \
+ *     --port=11431 --token-rate=50 --first-token-delay-ms=300 --tokens=200 --error-rate=0.01 --dimensions=1024
+ * </pre>
+ * Сервис направляется на заглушку через {@code spring.ai.ollama.base-url}.
+ */
+public final class OllamaStub {
+
+    private static final String[] WORDS = {
+            "кредит", "ставка", "договор", "клиент", "платёж", "вклад", "карта", "счёт", "процент", "срок",
+            "банк", "лимит", "перевод", "комиссия", "account", "balance", "и", "в", "на", "для"
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final double tokenRate;
+    private final long firstTokenDelayMs;
+    private final int tokens;
+    private final double errorRate;
+    private final int dimensions;
+
+    private OllamaStub(Arguments arguments) {
+        this.tokenRate = arguments.getDouble("token-rate", 50);
+        this.firstTokenDelayMs = arguments.getInt("first-token-delay-ms", 300);
+        this.tokens = arguments.getInt("tokens", 200);
+        this.errorRate = arguments.getDouble("error-rate", 0);
+        this.dimensions = arguments.getInt("dimensions", 1024);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Arguments arguments = new Arguments(args);
+        int port = arguments.getInt("port", 11431);
+        OllamaStub stub = new OllamaStub(arguments);
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), arguments.getInt("backlog", 1024));
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/api/chat", exchange -> stub.handle(exchange, stub::chat));
+        server.createContext("/api/embed", exchange -> stub.handle(exchange, stub::embed));
+        server.createContext("/", exchange -> stub.handle(exchange, stub::root));
+        server.start();
+        System.out.printf("Ollama stub on port %d: %.1f tokens/s, first token after %d ms, %d tokens, error rate %.3f, %d dimensions%n",
+                port, stub.tokenRate, stub.firstTokenDelayMs, stub.tokens, stub.errorRate, stub.dimensions);
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try (exchange) {
+            handler.handle(exchange);
+        } catch (IOException e) {
+            // клиент закрыл соединение посреди потока — для заглушки это штатная ситуация
+        }
+    }
+
+    private void root(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/") || path.equals("/api/version")) {
+            send(exchange, 200, "application/json", "{\"version\":\"stub\"}");
+        } else if (path.equals("/api/tags") || path.equals("/api/ps")) {
+            send(exchange, 200, "application/json", "{\"models\":[]}");
+        } else {
+            send(exchange, 404, "application/json", "{\"error\":\"not found\"}");
+        }
+    }
+
+    private void chat(HttpExchange exchange) throws IOException {
+        JsonNode request = readBody(exchange);
+        String model = request.path("model").asText("stub");
+        JsonNode messages = request.path("messages");
+        if (messages.isEmpty()) {
+            // прогрев модели (запрос без сообщений) — Ollama отвечает сразу, только загрузив модель
+            send(exchange, 200, "application/json", objectMapper.writeValueAsString(chunk(model, "", true, 0, 0)));
+            return;
+        }
+        if (injectFailure(exchange)) {
+            return;
+        }
+        String prompt = messages.get(messages.size() - 1).path("content").asText("");
+        SplittableRandom random = new SplittableRandom(seed(prompt));
+        long startedAt = System.nanoTime();
+        if (!request.path("stream").asBoolean(true)) {
+            StringBuilder content = new StringBuilder();
+            for (int i = 0; i < tokens; i++) {
+                content.append(token(random, i));
+            }
+            sleepNanos(TimeUnit.MILLISECONDS.toNanos(firstTokenDelayMs) + (long) (tokens / tokenRate * 1e9));
+            send(exchange, 200, "application/json",
+                    objectMapper.writeValueAsString(chunk(model, content.toString(), true, tokens, System.nanoTime() - startedAt)));
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        long interval = (long) (1e9 / tokenRate);
+        long due = startedAt + TimeUnit.MILLISECONDS.toNanos(firstTokenDelayMs);
+        for (int i = 0; i < tokens; i++) {
+            sleepNanos(due - System.nanoTime());
+            writeLine(out, chunk(model, token(random, i), false, 0, 0));
+            due += interval;
+        }
+        writeLine(out, chunk(model, "", true, tokens, System.nanoTime() - startedAt));
+    }
+
+    private void embed(HttpExchange exchange) throws IOException {
+        JsonNode request = readBody(exchange);
+        if (injectFailure(exchange)) {
+            return;
+        }
+        JsonNode input = request.path("input");
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("model", request.path("model").asText("stub"));
+        ArrayNode embeddings = response.putArray("embeddings");
+        if (input.isArray()) {
+            input.forEach(text -> embedding(embeddings.addArray(), text.asText()));
+        } else {
+            embedding(embeddings.addArray(), input.asText());
+        }
+        response.put("load_duration", 0);
+        send(exchange, 200, "application/json", objectMapper.writeValueAsString(response));
+    }
+
+    // нормированный случайный вектор с зерном из SHA-256 текста: одинаковый текст — одинаковый эмбеддинг
+    private void embedding(ArrayNode target, String text) {
+        SplittableRandom random = new SplittableRandom(seed(text));
+        float[] vector = new float[dimensions];
+        double norm = 0;
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        double scale = 1 / Math.sqrt(norm);
+        for (float value : vector) {
+            target.add((float) (value * scale));
+        }
+    }
+
+    private boolean injectFailure(HttpExchange exchange) throws IOException {
+        if (errorRate <= 0 || ThreadLocalRandom.current().nextDouble() >= errorRate) {
+            return false;
+        }
+        send(exchange, 500, "application/json", "{\"error\":\"stub: injected failure\"}");
+        return true;
+    }
+
+    private ObjectNode chunk(String model, String content, boolean done, int evalCount, long totalNanos) {
+        ObjectNode chunk = objectMapper.createObjectNode();
+        chunk.put("model", model);
+        chunk.put("created_at", Instant.now().toString());
+        ObjectNode message = chunk.putObject("message");
+        message.put("role", "assistant");
+        message.put("content", content);
+        chunk.put("done", done);
+        if (done) {
+            chunk.put("done_reason", "stop");
+            chunk.put("total_duration", totalNanos);
+            chunk.put("load_duration", 0);
+            chunk.put("prompt_eval_count", 0);
+            chunk.put("eval_count", evalCount);
+            chunk.put("eval_duration", totalNanos);
+        }
+        return chunk;
+    }
+
+    private void writeLine(OutputStream out, ObjectNode chunk) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(chunk));
+        out.write('\n');
+        out.flush();
+    }
+
+    private JsonNode readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return objectMapper.readTree(in);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static String token(SplittableRandom random, int index) {
+        String word = WORDS[random.nextInt(WORDS.length)];
+        return index == 0 ? word : " " + word;
+    }
+
+    private static long seed(String text) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(hash).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleepNanos(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+}
@@ -0,0 +1,248 @@
+package ru.raiff.ai_lab.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Нагрузочный прогон {@code /chat-stream/{chatId}}: {@code concurrency} одновременных SSE-соединений, каждое
+ * в своём чате, пока не выполнено {@code requests} запросов. Считает время до первого фрагмента ответа (p50/p99),
+ * скорость выдачи токенов и ошибки по видам. Токеном считается слово ответа — так пишет их {@link OllamaStub}.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar ru.raiff.ai_lab.load.SseLoadDriver \
+ *     --url=http://localhost:8080 --concurrency=200 --requests=2000 --out=load-result.json
+ * </pre>
+ * Промпты различаются номером запроса ({@code %d} в {@code --prompt}), иначе одинаковые запросы склеятся
+ * в один вызов модели; с {@code --prompt} без {@code %d} можно мерить как раз склейку.
+ */
+public final class SseLoadDriver {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final String prompt;
+    private final Duration timeout;
+    private final AtomicInteger issued = new AtomicInteger();
+    private final int requests;
+    private final List<Long> timesToFirstToken = Collections.synchronizedList(new ArrayList<>());
+    private final List<Double> streamTokenRates = Collections.synchronizedList(new ArrayList<>());
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private SseLoadDriver(Arguments arguments) {
+        this.baseUrl = arguments.get("url", "http://localhost:8080");
+        this.prompt = arguments.get("prompt", "Расскажи коротко про условия вклада №%d");
+        this.timeout = Duration.ofSeconds(arguments.getInt("timeout-seconds", 300));
+        this.requests = arguments.getInt("requests", 1000);
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Arguments arguments = new Arguments(args);
+        SseLoadDriver driver = new SseLoadDriver(arguments);
+        int concurrency = arguments.getInt("concurrency", 100);
+        long startedAt = System.nanoTime();
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                int worker = i;
+                workers.execute(() -> driver.work(worker));
+            }
+        }
+        Map<String, Object> report = driver.report(concurrency, System.nanoTime() - startedAt);
+        String json = driver.objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report);
+        System.out.println(json);
+        if (arguments.has("out")) {
+            driver.objectMapper.writerWithDefaultPrettyPrinter().writeValue(Path.of(arguments.get("out", "")).toFile(), report);
+        }
+    }
+
+    private void work(int worker) {
+        Long chatId = null;
+        int request;
+        while ((request = issued.getAndIncrement()) < requests) {
+            try {
+                if (chatId == null) {
+                    chatId = createChat(worker);
+                }
+                stream(chatId, prompt.formatted(request));
+            } catch (IOException e) {
+                error("io: " + e.getClass().getSimpleName());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private Long createChat(int worker) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/chat/new"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString("title=" + encode("load-" + worker)))
+                .timeout(timeout)
+                .build();
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        // ответ — редирект на /chat/{id}
+        String location = response.headers().firstValue("Location")
+                .orElseThrow(() -> new IOException("Chat was not created: HTTP " + response.statusCode()));
+        return Long.parseLong(location.substring(location.lastIndexOf('/') + 1));
+    }
+
+    private void stream(Long chatId, String text) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/chat-stream/" + chatId + "?userPrompt=" + encode(text)))
+                .header("Accept", "text/event-stream")
+                .timeout(timeout)
+                .GET()
+                .build();
+        long startedAt = System.nanoTime();
+        HttpResponse<Stream<String>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+        try (Stream<String> lines = response.body()) {
+            if (response.statusCode() != 200) {
+                error(response.statusCode() == 429 || response.statusCode() == 503 ?
+                        "rejected: HTTP " + response.statusCode() : "HTTP " + response.statusCode());
+                return;
+            }
+            long firstTokenAt = 0;
+            long lastTokenAt = 0;
+            int received = 0;
+            String event = null;
+            StringBuilder data = new StringBuilder();
+            for (Iterator<String> it = lines.iterator(); it.hasNext(); ) {
+                String line = it.next();
+                if (!line.isEmpty()) {
+                    if (line.startsWith("event:")) {
+                        event = field(line);
+                    } else if (line.startsWith("data:")) {
+                        data.append(field(line));
+                    }
+                    continue;
+                }
+                // пустая строка завершает событие
+                if ("done".equals(event)) {
+                    completed.increment();
+                    tokens.add(received);
+                    if (firstTokenAt != 0) {
+                        timesToFirstToken.add(firstTokenAt - startedAt);
+                        if (received > 1 && lastTokenAt > firstTokenAt) {
+                            streamTokenRates.add(received * 1e9 / (lastTokenAt - firstTokenAt));
+                        }
+                    }
+                    return;
+                }
+                if (event == null && !data.isEmpty()) {
+                    int count = countTokens(objectMapper.readTree(data.toString()).path("text").asText(""));
+                    if (count > 0) {
+                        lastTokenAt = System.nanoTime();
+                        if (firstTokenAt == 0) {
+                            firstTokenAt = lastTokenAt;
+                        }
+                        received += count;
+                    }
+                }
+                event = null;
+                data.setLength(0);
+            }
+            error(firstTokenAt == 0 ? "stream ended before first token" : "stream ended before done");
+        }
+    }
+
+    private Map<String, Object> report(int concurrency, long elapsedNanos) {
+        List<Long> ttft;
+        List<Double> rates;
+        synchronized (timesToFirstToken) {
+            ttft = new ArrayList<>(timesToFirstToken);
+        }
+        synchronized (streamTokenRates) {
+            rates = new ArrayList<>(streamTokenRates);
+        }
+        Collections.sort(ttft);
+        Collections.sort(rates);
+        double elapsedSeconds = elapsedNanos / 1e9;
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("url", baseUrl);
+        report.put("concurrency", concurrency);
+        report.put("requests", requests);
+        report.put("completed", completed.sum());
+        report.put("elapsedSeconds", round(elapsedSeconds));
+        report.put("streamsPerSecond", round(completed.sum() / elapsedSeconds));
+        report.put("ttftMillisP50", percentileMillis(ttft, 0.50));
+        report.put("ttftMillisP99", percentileMillis(ttft, 0.99));
+        report.put("ttftMillisMax", ttft.isEmpty() ? null : round(ttft.get(ttft.size() - 1) / 1e6));
+        report.put("tokensPerSecondTotal", round(tokens.sum() / elapsedSeconds));
+        report.put("tokensPerSecondPerStreamP50", percentile(rates, 0.50));
+        report.put("tokensPerSecondPerStreamP1", percentile(rates, 0.01));
+        Map<String, Long> errorCounts = new LinkedHashMap<>();
+        errors.forEach((kind, count) -> errorCounts.put(kind, count.sum()));
+        report.put("errors", errorCounts);
+        return report;
+    }
+
+    private void error(String kind) {
+        errors.computeIfAbsent(kind, key -> new LongAdder()).increment();
+    }
+
+    private static Double percentileMillis(List<Long> sorted, double quantile) {
+        return sorted.isEmpty() ? null : round(sorted.get(rank(sorted.size(), quantile)) / 1e6);
+    }
+
+    private static Double percentile(List<Double> sorted, double quantile) {
+        return sorted.isEmpty() ? null : round(sorted.get(rank(sorted.size(), quantile)));
+    }
+
+    // nearest-rank
+    private static int rank(int size, double quantile) {
+        return Math.min(size - 1, Math.max(0, (int) Math.ceil(quantile * size) - 1));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static int countTokens(String text) {
+        int count = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean space = Character.isWhitespace(text.charAt(i));
+            if (!space && !inWord) {
+                count++;
+            }
+            inWord = !space;
+        }
+        return count;
+    }
+
+    private static String field(String line) {
+        String value = line.substring(line.indexOf(':') + 1);
+        return value.startsWith(" ") ? value.substring(1) : value;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
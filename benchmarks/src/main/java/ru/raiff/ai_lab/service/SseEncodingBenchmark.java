@@ -0,0 +1,70 @@
+package ru.raiff.ai_lab.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кодирование данных SSE-события для фрагмента ответа: прежний {@code String.format} с цепочкой {@code replace},
+ * {@link ObjectMapper} на каждое событие и {@link SseJsonEncoder} с одним генератором на поток.
+ * Лежит в пакете сервиса, потому что кодировщик пакетный.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseEncodingBenchmark {
+
+    // отдельный токен модели и склеенная пачка токенов (см. app.chat-stream.flush-bytes)
+    @Param({"token", "batch"})
+    private String chunkType;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SseJsonEncoder encoder = new SseJsonEncoder();
+    private String chunk;
+
+    @Setup
+    public void setUp() {
+        chunk = "token".equals(chunkType) ? " ответ" :
+                "Вот пример:\n```java\nString s = \"C:\\\\temp\";\n```\nГотово — это **всё**.\n".repeat(4);
+    }
+
+    @Benchmark
+    public String legacyFormat() {
+        return legacyToJson(chunk);
+    }
+
+    @Benchmark
+    public String objectMapper() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(Map.of("text", chunk));
+    }
+
+    @Benchmark
+    public String reusedGenerator() {
+        return encoder.text(chunk);
+    }
+
+    // копия прежнего ChatStreamService.toJson — базовая линия для сравнения
+    static String legacyToJson(String chunk) {
+        return String.format("{\"text\":\"%s\"}",
+                chunk.replace("\\", "\\\\")
+                     .replace("\"", "\\\"")
+                     .replace("\n", "\\n")
+                     .replace("\r", "\\r"));
+    }
+}
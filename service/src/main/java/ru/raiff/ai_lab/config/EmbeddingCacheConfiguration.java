@@ -0,0 +1,23 @@
+package ru.raiff.ai_lab.config;
+
+import org.springframework.ai.ollama.OllamaEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import ru.raiff.ai_lab.service.CachingEmbeddingModel;
+import ru.raiff.ai_lab.service.EmbeddingCache;
+
+@Configuration
+@ConditionalOnProperty(name = "app.embedding-cache.enabled", havingValue = "true", matchIfMissing = true)
+public class EmbeddingCacheConfiguration {
+    
+    @Bean
+    @Primary
+    public CachingEmbeddingModel cachingEmbeddingModel(OllamaEmbeddingModel ollamaEmbeddingModel,
+                                                       EmbeddingCache embeddingCache,
+                                                       @Value("${spring.ai.ollama.embedding.options.model:mxbai-embed-large}") String model) {
+        return new CachingEmbeddingModel(ollamaEmbeddingModel, embeddingCache, model);
+    }
+}
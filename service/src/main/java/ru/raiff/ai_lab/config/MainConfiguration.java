@@ -1,10 +1,14 @@
 package ru.raiff.ai_lab.config;
 
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@EnableConfigurationProperties(OllamaRoutingProperties.class)
 public class MainConfiguration {
 
     @Bean
@@ -12,4 +16,10 @@ public class MainConfiguration {
         return builder.defaultAdvisors().build();
     }
 
+    // cl100k — не словарь нашей модели, но для бюджета контекста достаточно оценки с точностью до десятков процентов
+    @Bean
+    public TokenCountEstimator tokenCountEstimator() {
+        return new JTokkitTokenCountEstimator();
+    }
+
 }
@@ -0,0 +1,29 @@
+package ru.raiff.ai_lab.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Пул бэкендов Ollama для чат-модели. Пустой список — один бэкенд по {@code spring.ai.ollama.base-url}.
+ *
+ * @param backends         адреса Ollama; {@code models} — модели, которые бэкенд обслуживает
+ *                         (пусто — берутся из {@code /api/tags} при проверке здоровья)
+ * @param healthInterval   период активной проверки {@code /api/tags}
+ * @param healthTimeout    таймаут соединения и ответа для проверки
+ * @param failureThreshold подряд идущие ошибки запросов, после которых бэкенд выводится из ротации
+ * @param ejectDuration    минимальное время вне ротации; после него бэкенд возвращается на испытательный срок,
+ *                         где первая же ошибка выводит его снова
+ */
+@ConfigurationProperties("app.ollama.routing")
+public record OllamaRoutingProperties(@DefaultValue List<Backend> backends,
+                                      @DefaultValue("PT10S") Duration healthInterval,
+                                      @DefaultValue("PT2S") Duration healthTimeout,
+                                      @DefaultValue("3") int failureThreshold,
+                                      @DefaultValue("PT30S") Duration ejectDuration) {
+    
+    public record Backend(String url, @DefaultValue List<String> models) {
+    }
+}
\ No newline at end of file
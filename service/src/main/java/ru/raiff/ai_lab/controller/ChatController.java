@@ -4,21 +4,28 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import reactor.core.publisher.Flux;
 import ru.raiff.ai_lab.dto.ChatDto;
 import ru.raiff.ai_lab.dto.ChatEntryDto;
+import ru.raiff.ai_lab.dto.ChatEntrySearchPage;
+import ru.raiff.ai_lab.dto.ChatSummaryPage;
+import ru.raiff.ai_lab.dto.LlmQueueStatus;
 import ru.raiff.ai_lab.model.Chat;
 import ru.raiff.ai_lab.model.ChatEntry;
 import ru.raiff.ai_lab.service.AIService;
+import ru.raiff.ai_lab.service.ChatContextService;
 import ru.raiff.ai_lab.service.ChatService;
+import ru.raiff.ai_lab.service.ChatStreamService;
+import ru.raiff.ai_lab.service.LlmConcurrencyLimiter;
+import ru.raiff.ai_lab.service.LlmOverloadedException;
+import ru.raiff.ai_lab.service.ResponseCacheService;
 
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Controller
@@ -26,14 +33,18 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ChatController {
     
+    private static final String CHAT_ENTRY_ENDPOINT = "chat-entry";
+    
     private final ChatService chatService;
+    private final ChatContextService chatContextService;
     private final AIService aiService;
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final ResponseCacheService responseCacheService;
+    private final LlmConcurrencyLimiter llmConcurrencyLimiter;
+    private final ChatStreamService chatStreamService;
     
     @GetMapping("/")
     public String index(Model model) {
-        List<Chat> chats = chatService.getAllChats();
-        model.addAttribute("chats", chats);
+        addChatList(model);
         model.addAttribute("chat", null);
         return "chat";
     }
@@ -51,12 +62,18 @@ public class ChatController {
         
         log.info("Loading chat {} with {} entries", chatId, chat.getEntries().size());
         
-        List<Chat> chats = chatService.getAllChats();
         model.addAttribute("chat", chat);
-        model.addAttribute("chats", chats);
+        addChatList(model);
         return "chat";
     }
     
+    // первая страница сайдбара; следующие chat.js догружает через /api/chats?cursor=
+    private void addChatList(Model model) {
+        ChatSummaryPage page = chatService.getChatSummaries(null, null);
+        model.addAttribute("chats", page.chats());
+        model.addAttribute("nextCursor", page.nextCursor());
+    }
+    
     @PostMapping("/chat/new")
     public String createNewChat(@RequestParam String title) {
         log.info("Creating new chat with title: {}", title);
@@ -86,23 +103,40 @@ public class ChatController {
         log.info("Processing user prompt for chat {}: prompt=[{}]", chatId, prompt);
         
         if (prompt != null && !prompt.trim().isEmpty()) {
+            // при переполненной очереди отказываем до сохранения сообщения; запрос, который присоединится
+            // к такой же идущей генерации, в очередь не встаёт
+            LlmConcurrencyLimiter.Ticket ticket = aiService.isGenerating(prompt, chatContextService.buildContext(chatId)) ?
+                    null : llmConcurrencyLimiter.enqueue();
             try {
                 // Add user message
                 ChatEntry userEntry = chatService.addChatEntry(chatId, prompt, ChatEntry.Role.USER);
                 log.info("User message saved with id: {}", userEntry.getId());
                 
-                // Get context from previous messages (optional)
-                List<ChatEntry> previousEntries = chatService.getChatEntries(chatId);
-                log.info("Retrieved {} previous entries for context", previousEntries.size());
-                
-                String context = buildContext(previousEntries, 5); // Last 5 messages for context
+                // Get context from the rolling window of recent messages
+                String context = chatContextService.buildContext(chatId);
                 log.info("Built context: {}", context);
                 
                 // Generate AI response
-                log.info("Calling AI service...");
-                String assistantResponse = !context.isEmpty() ?
-                        aiService.generateResponseWithContext(prompt, context) :
-                        aiService.generateResponse(prompt);
+                if (ticket != null && aiService.isGenerating(prompt, context)) {
+                    ticket.release();
+                    ticket = null;
+                }
+                Optional<String> joined = ticket == null ? aiService.joinResponse(prompt, context) : Optional.empty();
+                String assistantResponse;
+                if (joined.isPresent()) {
+                    log.info("Joined in-flight AI response");
+                    assistantResponse = joined.get();
+                } else {
+                    // такая генерация успела закончиться — идём в модель сами
+                    if (ticket == null) {
+                        ticket = llmConcurrencyLimiter.enqueue();
+                    }
+                    ticket.await();
+                    log.info("Calling AI service...");
+                    assistantResponse = !context.isEmpty() ?
+                            aiService.generateResponseWithContext(CHAT_ENTRY_ENDPOINT, chatId, prompt, context) :
+                            aiService.generateResponse(CHAT_ENTRY_ENDPOINT, chatId, prompt);
+                }
                 
                 log.info("AI response received: {}", assistantResponse);
                 
@@ -110,8 +144,14 @@ public class ChatController {
                 ChatEntry assistantEntry = chatService.addChatEntry(chatId, assistantResponse, ChatEntry.Role.ASSISTANT);
                 log.info("Assistant response saved with id: {}", assistantEntry.getId());
                 
+            } catch (LlmOverloadedException e) {
+                throw e;
             } catch (Exception e) {
                 log.error("Error processing chat entry", e);
+            } finally {
+                if (ticket != null) {
+                    ticket.release();
+                }
             }
         } else {
             log.warn("Empty prompt received for chat {}", chatId);
@@ -120,25 +160,6 @@ public class ChatController {
         return "redirect:/chat/" + chatId;
     }
     
-    private String buildContext(List<ChatEntry> entries, int maxEntries) {
-        if (entries == null || entries.isEmpty()) {
-            return "";
-        }
-        
-        int startIndex = Math.max(0, entries.size() - maxEntries);
-        StringBuilder context = new StringBuilder();
-        
-        for (int i = startIndex; i < entries.size(); i++) {
-            ChatEntry entry = entries.get(i);
-            context.append(entry.getRole().name())
-                   .append(": ")
-                   .append(entry.getContent())
-                   .append("\n");
-        }
-        
-        return context.toString();
-    }
-    
     @GetMapping("/api/chat/{chatId}/entries")
     @ResponseBody
     public ResponseEntity<List<ChatEntryDto>> getChatEntries(@PathVariable Long chatId) {
@@ -151,12 +172,49 @@ public class ChatController {
     
     @GetMapping("/api/chats")
     @ResponseBody
-    public ResponseEntity<List<ChatDto>> getAllChats() {
-        List<Chat> chats = chatService.getAllChats();
-        List<ChatDto> chatDtos = chats.stream()
-                .map(this::convertToChatDto)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(chatDtos);
+    public ResponseEntity<ChatSummaryPage> getAllChats(@RequestParam(required = false) String cursor,
+                                                       @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(chatService.getChatSummaries(cursor, limit));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected chat list request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/api/chats/search")
+    @ResponseBody
+    public ResponseEntity<ChatEntrySearchPage> searchEntries(@RequestParam String q,
+                                                             @RequestParam(required = false) String cursor,
+                                                             @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(chatService.searchEntries(q, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected chat search request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/api/llm/queue")
+    @ResponseBody
+    public ResponseEntity<LlmQueueStatus> getLlmQueueStatus() {
+        return ResponseEntity.ok(llmConcurrencyLimiter.status());
+    }
+    
+    @PutMapping("/api/chat/{chatId}/response-cache")
+    @ResponseBody
+    public ResponseEntity<Void> setResponseCacheBypass(@PathVariable Long chatId, @RequestParam boolean bypass) {
+        responseCacheService.setBypass(chatId, bypass);
+        return ResponseEntity.noContent().build();
+    }
+    
+    @DeleteMapping("/api/response-cache")
+    @ResponseBody
+    public ResponseEntity<Integer> invalidateResponseCache(@RequestParam(required = false) String prompt) {
+        int deleted = prompt != null && !prompt.isBlank() ?
+                responseCacheService.invalidate(prompt) :
+                responseCacheService.invalidateAll();
+        return ResponseEntity.ok(deleted);
     }
     
     private ChatDto convertToChatDto(Chat chat) {
@@ -189,74 +247,23 @@ public class ChatController {
     
     @GetMapping(value = "/chat-stream/{chatId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     @ResponseBody
-    public SseEmitter streamChat(@PathVariable Long chatId, 
-                                  @RequestParam(required = false) String userPrompt) {
-        
-        log.info("Stream request for chat {} with prompt: {}", chatId, userPrompt);
+    public Flux<ServerSentEvent<String>> streamChat(@PathVariable Long chatId,
+                                                    @RequestParam(required = false) String userPrompt,
+                                                    @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
         
-        SseEmitter emitter = new SseEmitter(300000L); // 5 minutes timeout
+        // переподключение EventSource: продолжаем идущую генерацию, а не запускаем новую по тому же промпту
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return chatStreamService.resumeEvents(chatId, lastEventId)
+                    .doOnError(error -> log.error("Error in resumed stream for chat {}", chatId, error));
+        }
         
-        executorService.execute(() -> {
-            try {
-                if (userPrompt != null && !userPrompt.trim().isEmpty()) {
-                    // Save user message
-                    ChatEntry userEntry = chatService.addChatEntry(chatId, userPrompt, ChatEntry.Role.USER);
-                    log.info("Saved user message: {}", userEntry.getId());
-                    
-                    // Get context
-                    List<ChatEntry> previousEntries = chatService.getChatEntries(chatId);
-                    String context = buildContext(previousEntries, 5);
-                    
-                    // Stream AI response using reactive stream
-                    Flux<String> responseStream = context != null && !context.isEmpty() ?
-                            aiService.streamResponseWithContext(userPrompt, context) :
-                            aiService.streamResponse(userPrompt);
-                    
-                    StringBuilder fullResponse = new StringBuilder();
-                    
-                    responseStream.subscribe(
-                        chunk -> {
-                            try {
-                                fullResponse.append(chunk);
-                                // Send in format expected by frontend
-                                String jsonData = String.format("{\"text\":\"%s\"}", 
-                                        chunk.replace("\"", "\\\"")
-                                              .replace("\n", "\\n")
-                                              .replace("\r", "\\r"));
-                                emitter.send(jsonData);
-                                log.debug("Sent chunk: {}", chunk);
-                            } catch (Exception e) {
-                                log.error("Error sending chunk", e);
-                            }
-                        },
-                        error -> {
-                            log.error("Error in stream", error);
-                            emitter.completeWithError(error);
-                        },
-                        () -> {
-                            try {
-                                // Save complete assistant response
-                                String finalResponse = fullResponse.toString();
-                                chatService.addChatEntry(chatId, finalResponse, ChatEntry.Role.ASSISTANT);
-                                log.info("Saved assistant response for chat {}", chatId);
-                                
-                                emitter.complete();
-                            } catch (Exception e) {
-                                log.error("Error completing stream", e);
-                                emitter.completeWithError(e);
-                            }
-                        }
-                    );
-                } else {
-                    emitter.complete();
-                }
-            } catch (Exception e) {
-                log.error("Error in streaming", e);
-                emitter.completeWithError(e);
-            }
-        });
+        log.info("Stream request for chat {} with prompt: {}", chatId, userPrompt);
         
-        return emitter;
+        if (userPrompt == null || userPrompt.trim().isEmpty()) {
+            return Flux.empty();
+        }
+        return chatStreamService.streamEvents(chatId, userPrompt)
+                .doOnError(error -> log.error("Error in stream for chat {}", chatId, error));
     }
     
     @GetMapping("/api/chat/{chatId}/stream")
@@ -265,33 +272,7 @@ public class ChatController {
     public Flux<String> streamChatFlux(@PathVariable Long chatId, 
                                         @RequestParam String prompt) {
         log.info("Flux stream request for chat {} with prompt: {}", chatId, prompt);
-        
-        return Flux.create(sink -> {
-            try {
-                // Save user message
-                chatService.addChatEntry(chatId, prompt, ChatEntry.Role.USER);
-                
-                // Generate and stream response
-                String response = aiService.generateResponse(prompt);
-                
-                // Stream word by word
-                String[] words = response.split(" ");
-                for (String word : words) {
-                    sink.next(word + " ");
-                    try {
-                        Thread.sleep(50);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
-                
-                // Save assistant response
-                chatService.addChatEntry(chatId, response, ChatEntry.Role.ASSISTANT);
-                
-                sink.complete();
-            } catch (Exception e) {
-                sink.error(e);
-            }
-        });
+        return chatStreamService.streamTokens(chatId, prompt)
+                .doOnError(error -> log.error("Error in flux stream for chat {}", chatId, error));
     }
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package ru.raiff.ai_lab.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.raiff.ai_lab.dto.IngestionReport;
+import ru.raiff.ai_lab.service.DocumentIngestionService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Загрузка документов с диска сервера. Пути принимаются только внутри {@code app.ingestion.base-dir}:
+ * относительные разрешаются от него, а всё, что после нормализации и раскрытия ссылок выходит за его пределы,
+ * отклоняется — иначе через поиск и RAG можно было бы прочитать любой файл, доступный процессу.
+ */
+@RestController
+@RequestMapping("/api/documents")
+@Slf4j
+public class DocumentController {
+    
+    private final DocumentIngestionService documentIngestionService;
+    private final Path baseDir;
+    
+    public DocumentController(DocumentIngestionService documentIngestionService,
+                              @Value("${app.ingestion.base-dir:./data/documents}") String baseDir) {
+        this.documentIngestionService = documentIngestionService;
+        this.baseDir = Path.of(baseDir).toAbsolutePath().normalize();
+    }
+    
+    @PostMapping("/ingest")
+    public ResponseEntity<IngestionReport> ingest(@RequestBody List<String> paths) {
+        log.info("Ingestion request for {} files", paths.size());
+        
+        Path root;
+        try {
+            root = baseDir.toRealPath();
+        } catch (IOException e) {
+            log.warn("Ingestion base directory {} is not available: {}", baseDir, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        List<Path> files = new ArrayList<>();
+        for (String path : paths) {
+            Path file = root.resolve(path).normalize();
+            if (!file.startsWith(root)) {
+                log.warn("Rejecting ingestion of {}: outside of {}", path, root);
+                return ResponseEntity.badRequest().build();
+            }
+            if (!Files.isRegularFile(file)) {
+                continue;
+            }
+            try {
+                // ссылка внутри каталога может указывать наружу
+                Path real = file.toRealPath();
+                if (!real.startsWith(root)) {
+                    log.warn("Rejecting ingestion of {}: resolves outside of {}", path, root);
+                    return ResponseEntity.badRequest().build();
+                }
+                files.add(real);
+            } catch (IOException e) {
+                log.warn("Cannot resolve {}: {}", path, e.getMessage());
+            }
+        }
+        if (files.size() != paths.size()) {
+            log.warn("Skipping {} paths that are not regular files", paths.size() - files.size());
+        }
+        
+        return ResponseEntity.ok(documentIngestionService.ingest(files));
+    }
+}
@@ -0,0 +1,28 @@
+package ru.raiff.ai_lab.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import ru.raiff.ai_lab.service.LlmOverloadedException;
+
+/**
+ * Перегрузку модели отдаём сразу: 429, если очередь полна, 503, если слот не освободился вовремя.
+ */
+@ControllerAdvice
+@Slf4j
+public class LlmOverloadHandler {
+    
+    @ExceptionHandler(LlmOverloadedException.class)
+    public ResponseEntity<String> handleOverload(LlmOverloadedException e) {
+        HttpStatus status = e.isQueueFull() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE;
+        log.warn("LLM overloaded, responding {}: {}", status.value(), e.getMessage());
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,39 @@
+package ru.raiff.ai_lab.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.raiff.ai_lab.dto.SearchResult;
+import ru.raiff.ai_lab.dto.VectorIndexReport;
+import ru.raiff.ai_lab.service.HybridSearchService;
+import ru.raiff.ai_lab.service.VectorIndexReportService;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/search")
+@RequiredArgsConstructor
+@Slf4j
+public class SearchController {
+    
+    private final HybridSearchService hybridSearchService;
+    private final VectorIndexReportService vectorIndexReportService;
+    
+    @GetMapping
+    public ResponseEntity<List<SearchResult>> search(@RequestParam String q,
+                                                     @RequestParam(defaultValue = "10") int limit) {
+        log.info("Hybrid search request: {}", q);
+        return ResponseEntity.ok(hybridSearchService.search(q, limit));
+    }
+    
+    @GetMapping("/index-report")
+    public ResponseEntity<VectorIndexReport> indexReport(@RequestParam(defaultValue = "50") int queries,
+                                                         @RequestParam(defaultValue = "10") int k) {
+        log.info("Vector index report request: {} queries, k={}", queries, k);
+        return ResponseEntity.ok(vectorIndexReportService.evaluate(queries, k));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+package ru.raiff.ai_lab.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.raiff.ai_lab.dto.VectorIndexInfo;
+import ru.raiff.ai_lab.dto.VectorIndexRequest;
+import ru.raiff.ai_lab.dto.VectorSearchOptions;
+import ru.raiff.ai_lab.dto.VectorSearchPlan;
+import ru.raiff.ai_lab.model.DistanceMetric;
+import ru.raiff.ai_lab.service.VectorIndexService;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/vector-index")
+@RequiredArgsConstructor
+@Slf4j
+public class VectorIndexController {
+    
+    private final VectorIndexService vectorIndexService;
+    
+    @GetMapping
+    public ResponseEntity<List<VectorIndexInfo>> list() {
+        return ResponseEntity.ok(vectorIndexService.listIndexes());
+    }
+    
+    @PostMapping
+    public ResponseEntity<VectorIndexInfo> build(@RequestBody VectorIndexRequest request) {
+        log.info("Vector index build request: {}", request);
+        try {
+            return ResponseEntity.ok(vectorIndexService.build(request));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected vector index request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/explain")
+    public ResponseEntity<VectorSearchPlan> explain(@RequestParam(defaultValue = "COSINE") DistanceMetric metric,
+                                                    @RequestParam(required = false) Integer efSearch,
+                                                    @RequestParam(required = false) Integer probes) {
+        try {
+            return ResponseEntity.ok(vectorIndexService.explain(new VectorSearchOptions(metric, efSearch, probes)));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected explain request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package ru.raiff.ai_lab.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Строка chat_archive. {@code payload} — реплики чата одним блоком в формате {@code codec},
+ * {@code rawSize} — размер блока до сжатия.
+ */
+public record ArchivedChat(long chatId,
+                           int entryCount,
+                           String lastPreview,
+                           LocalDateTime lastMessageAt,
+                           String codec,
+                           int rawSize,
+                           byte[] payload,
+                           LocalDateTime archivedAt) {
+}
\ No newline at end of file
@@ -0,0 +1,11 @@
+package ru.raiff.ai_lab.dto;
+
+import ru.raiff.ai_lab.model.ChatEntry;
+
+import java.time.LocalDateTime;
+
+/**
+ * Реплика в сжатом блоке архивного чата: всё, что нужно, чтобы вернуть её в chat_entry с прежними id и временем.
+ */
+public record ArchivedChatEntry(Long id, ChatEntry.Role role, String content, LocalDateTime createdAt, String language) {
+}
\ No newline at end of file
@@ -0,0 +1,10 @@
+package ru.raiff.ai_lab.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Архивный чат, в репликах которого нашёлся запрос. Реплики и фрагменты появятся в поиске, когда чат откроют
+ * и он вернётся из архива.
+ */
+public record ArchivedChatSearchHit(Long chatId, LocalDateTime lastMessageAt, float rank) {
+}
\ No newline at end of file
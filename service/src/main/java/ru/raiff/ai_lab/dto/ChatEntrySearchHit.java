@@ -0,0 +1,16 @@
+package ru.raiff.ai_lab.dto;
+
+import ru.raiff.ai_lab.model.ChatEntry;
+
+import java.time.LocalDateTime;
+
+/**
+ * Найденная реплика. {@code snippet} — экранированный HTML, совпавшие слова обёрнуты в {@code <mark>}.
+ */
+public record ChatEntrySearchHit(Long id,
+                                 Long chatId,
+                                 ChatEntry.Role role,
+                                 LocalDateTime createdAt,
+                                 float rank,
+                                 String snippet) {
+}
\ No newline at end of file
@@ -0,0 +1,14 @@
+package ru.raiff.ai_lab.dto;
+
+import java.util.List;
+
+/**
+ * Страница результатов поиска по репликам; {@code nextCursor} передаётся в следующий запрос, {@code null} — страниц больше нет.
+ * {@code archivedChats} — совпавшие архивные чаты, только на первой странице.
+ * {@code candidatesCapped} — совпадений больше {@code maxCandidates} ({@code app.chat-search.max-candidates}):
+ * ранжированы только самые свежие из них, более старые в выдачу не попадают — стоит уточнить запрос.
+ */
+public record ChatEntrySearchPage(List<ChatEntrySearchHit> entries, String nextCursor,
+                                  List<ArchivedChatSearchHit> archivedChats,
+                                  int maxCandidates, boolean candidatesCapped) {
+}
\ No newline at end of file
@@ -0,0 +1,19 @@
+package ru.raiff.ai_lab.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSummary {
+    private Long id;
+    private String title;
+    private LocalDateTime createdAt;
+    private long entryCount;
+    private String lastMessagePreview;
+    private LocalDateTime lastMessageAt;
+}
\ No newline at end of file
@@ -0,0 +1,9 @@
+package ru.raiff.ai_lab.dto;
+
+import java.util.List;
+
+/**
+ * Страница списка чатов; {@code nextCursor} передаётся в следующий запрос, {@code null} — страниц больше нет.
+ */
+public record ChatSummaryPage(List<ChatSummary> chats, String nextCursor) {
+}
\ No newline at end of file
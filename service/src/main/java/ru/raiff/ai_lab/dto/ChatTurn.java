@@ -0,0 +1,11 @@
+package ru.raiff.ai_lab.dto;
+
+import ru.raiff.ai_lab.model.ChatEntry;
+
+import java.time.LocalDateTime;
+
+/**
+ * Неизменяемая реплика чата для окна контекста — без managed-сущности и ленивой ссылки на чат.
+ */
+public record ChatTurn(Long id, ChatEntry.Role role, String content, LocalDateTime createdAt) {
+}
\ No newline at end of file
@@ -0,0 +1,11 @@
+package ru.raiff.ai_lab.dto;
+
+public record IngestionReport(int documents,
+                              int skippedDocuments,
+                              long chunks,
+                              long reusedChunks,
+                              long deletedChunks,
+                              long elapsedMillis,
+                              double docsPerSecond,
+                              double chunksPerSecond) {
+}
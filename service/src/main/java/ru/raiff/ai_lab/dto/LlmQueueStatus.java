@@ -0,0 +1,4 @@
+package ru.raiff.ai_lab.dto;
+
+public record LlmQueueStatus(int active, int queued, int maxConcurrent, int maxQueued) {
+}
\ No newline at end of file
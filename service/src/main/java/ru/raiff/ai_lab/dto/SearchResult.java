@@ -0,0 +1,6 @@
+package ru.raiff.ai_lab.dto;
+
+import java.util.Map;
+
+public record SearchResult(String id, String content, Map<String, Object> metadata, double score) {
+}
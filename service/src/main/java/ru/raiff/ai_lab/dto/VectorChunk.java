@@ -0,0 +1,7 @@
+package ru.raiff.ai_lab.dto;
+
+import java.util.Map;
+
+public record VectorChunk(String id, String content, Map<String, Object> metadata, float[] embedding,
+                          Integer documentId, String chunkHash) {
+}
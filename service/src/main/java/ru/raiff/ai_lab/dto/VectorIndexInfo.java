@@ -0,0 +1,11 @@
+package ru.raiff.ai_lab.dto;
+
+import ru.raiff.ai_lab.model.DistanceMetric;
+import ru.raiff.ai_lab.model.VectorIndexMethod;
+
+public record VectorIndexInfo(String name,
+                              VectorIndexMethod method,
+                              DistanceMetric metric,
+                              boolean valid,
+                              String definition) {
+}
\ No newline at end of file
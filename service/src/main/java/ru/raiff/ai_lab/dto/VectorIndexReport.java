@@ -0,0 +1,11 @@
+package ru.raiff.ai_lab.dto;
+
+public record VectorIndexReport(String backend,
+                                long vectors,
+                                double bytesPerVector,
+                                int fullPrecisionBytesPerVector,
+                                int k,
+                                int queries,
+                                double recallAtK,
+                                double avgSearchMillis) {
+}
\ No newline at end of file
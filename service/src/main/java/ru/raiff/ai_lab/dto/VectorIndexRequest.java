@@ -0,0 +1,15 @@
+package ru.raiff.ai_lab.dto;
+
+import ru.raiff.ai_lab.model.DistanceMetric;
+import ru.raiff.ai_lab.model.VectorIndexMethod;
+
+/**
+ * Параметры построения индекса: {@code m} и {@code efConstruction} для HNSW, {@code lists} для IVFFlat.
+ * Незаданные значения берутся по умолчанию pgvector.
+ */
+public record VectorIndexRequest(VectorIndexMethod method,
+                                 DistanceMetric metric,
+                                 Integer m,
+                                 Integer efConstruction,
+                                 Integer lists) {
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+package ru.raiff.ai_lab.dto;
+
+import ru.raiff.ai_lab.model.DistanceMetric;
+
+/**
+ * Параметры одного запроса ближайших соседей. {@code efSearch} и {@code probes} выставляются через
+ * {@code SET LOCAL hnsw.ef_search} / {@code SET LOCAL ivfflat.probes} и действуют до конца транзакции.
+ */
+public record VectorSearchOptions(DistanceMetric metric, Integer efSearch, Integer probes) {
+    
+    public VectorSearchOptions {
+        if (metric == null) {
+            throw new IllegalArgumentException("Distance metric is required");
+        }
+        if (efSearch != null && (efSearch < 1 || efSearch > 1000)) {
+            throw new IllegalArgumentException("hnsw.ef_search must be between 1 and 1000: " + efSearch);
+        }
+        if (probes != null && probes < 1) {
+            throw new IllegalArgumentException("ivfflat.probes must be positive: " + probes);
+        }
+    }
+    
+    public static VectorSearchOptions of(DistanceMetric metric) {
+        return new VectorSearchOptions(metric, null, null);
+    }
+    
+    public boolean hasTuning() {
+        return efSearch != null || probes != null;
+    }
+}
\ No newline at end of file
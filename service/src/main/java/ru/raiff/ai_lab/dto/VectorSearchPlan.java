@@ -0,0 +1,8 @@
+package ru.raiff.ai_lab.dto;
+
+import ru.raiff.ai_lab.model.DistanceMetric;
+
+import java.util.List;
+
+public record VectorSearchPlan(DistanceMetric metric, String indexUsed, List<String> plan) {
+}
\ No newline at end of file
@@ -0,0 +1,611 @@
+package ru.raiff.ai_lab.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * HNSW-индекс по косинусному расстоянию. Векторы (нормированные, в формате {@link Quantization}) и нулевой слой
+ * графа лежат в memory-mapped файлах {@code vectors.dat} и {@code graph.dat}; идентификаторы, надгробия и
+ * верхние слои (их имеет примерно 1/M узлов) сохраняются снимком {@code index.meta} при checkpoint.
+ * Узлы, добавленные после последнего checkpoint, при открытии отбрасываются — их досинхронизирует владелец индекса.
+ * Но {@code graph.dat} отображён в память, и списки соседей старых узлов могли уже сослаться на отброшенные
+ * (а при прореживании и потерять ради них прежние рёбра). Такой граф при открытии не принимается:
+ * {@link #open} бросает {@link UncheckedIOException}, и владелец строит индекс заново.
+ * <p>
+ * Вставки и поиск идут параллельно: списки соседей защищены полосатыми блокировками,
+ * удаление — это надгробие, физически узлы уходят только при перестроении индекса.
+ */
+public final class HnswIndex implements Closeable {
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int VERSION = 2;
+    private static final int MAX_LEVEL = 16;
+    private static final int SLOTS_PER_SEGMENT = 1 << 16;
+    private static final int LOCK_STRIPES = 1024;
+    private static final String META_FILE = "index.meta";
+
+    private final Path directory;
+    private final int dimensions;
+    private final int m;
+    private final int maxConnections0;
+    private final int efConstruction;
+    private final Quantization quantization;
+    private final double levelMultiplier;
+    private final MappedSlotFile vectors;
+    private final MappedSlotFile graph;
+    private final Map<Integer, int[][]> upperLayers = new ConcurrentHashMap<>();
+    private final Map<String, Integer> nodesById = new ConcurrentHashMap<>();
+    private final Set<Integer> tombstones = ConcurrentHashMap.newKeySet();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Object allocationLock = new Object();
+    private final Object entryLock = new Object();
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    private volatile String[] ids = new String[1024];
+    private volatile int nodeCount;
+    private volatile int entryPoint = -1;
+    private volatile int maxLevel = -1;
+
+    private HnswIndex(Path directory, int dimensions, int m, int efConstruction, Quantization quantization) {
+        this.directory = directory;
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxConnections0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.quantization = quantization;
+        this.levelMultiplier = 1 / Math.log(m);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.vectors = new MappedSlotFile(directory.resolve("vectors.dat"), quantization.codeBytes(dimensions), SLOTS_PER_SEGMENT);
+        this.graph = new MappedSlotFile(directory.resolve("graph.dat"), (2 + maxConnections0) * Integer.BYTES, SLOTS_PER_SEGMENT);
+    }
+
+    public static HnswIndex open(Path directory, int dimensions, int m, int efConstruction) {
+        return open(directory, dimensions, m, efConstruction, Quantization.NONE);
+    }
+
+    public static HnswIndex open(Path directory, int dimensions, int m, int efConstruction, Quantization quantization) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error creating index directory " + directory, e);
+        }
+        HnswIndex index = new HnswIndex(directory, dimensions, m, efConstruction, quantization);
+        if (Files.exists(directory.resolve(META_FILE))) {
+            try {
+                index.readMeta();
+            } catch (RuntimeException e) {
+                // без checkpoint: непринятое состояние не должно перезаписать снимок
+                index.vectors.close();
+                index.graph.close();
+                throw e;
+            }
+        }
+        return index;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    public Quantization quantization() {
+        return quantization;
+    }
+
+    /**
+     * Средний объём индекса на узел: код вектора, слот нулевого слоя и верхние слои на куче.
+     */
+    public double bytesPerVector() {
+        int count = Math.max(nodeCount, 1);
+        long upper = 0;
+        for (int[][] layers : upperLayers.values()) {
+            upper += (long) layers.length * (m + 1) * Integer.BYTES;
+        }
+        return quantization.codeBytes(dimensions) + (2 + maxConnections0) * Integer.BYTES + (double) upper / count;
+    }
+
+    public int size() {
+        return nodesById.size();
+    }
+
+    public int tombstoneCount() {
+        return tombstones.size();
+    }
+
+    public boolean contains(String id) {
+        return nodesById.containsKey(id);
+    }
+
+    public Set<String> ids() {
+        return Set.copyOf(nodesById.keySet());
+    }
+
+    public void upsert(String id, float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        float[] normalized = normalize(vector);
+        checkpointLock.readLock().lock();
+        try {
+            int node = allocate(id);
+            quantization.encode(normalized, vectors, node);
+            Integer previous = nodesById.put(id, node);
+            if (previous != null) {
+                tombstones.add(previous);
+            }
+            link(node, quantization.prepare(normalized));
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    public boolean remove(String id) {
+        checkpointLock.readLock().lock();
+        try {
+            Integer node = nodesById.remove(id);
+            if (node == null) {
+                return false;
+            }
+            tombstones.add(node);
+            return true;
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    public List<Neighbor> search(float[] query, int k, int ef) {
+        int ep;
+        int top;
+        synchronized (entryLock) {
+            ep = entryPoint;
+            top = maxLevel;
+        }
+        if (ep < 0) {
+            return List.of();
+        }
+        Quantization.Query q = quantization.prepare(normalize(query));
+        Candidate current = new Candidate(ep, distance(q, ep));
+        for (int level = top; level > 0; level--) {
+            current = greedy(q, current, level);
+        }
+
+        // надгробия остаются в графе как транзитные узлы, поэтому берём кандидатов с запасом
+        int live = Math.max(nodesById.size(), 1);
+        int width = (int) Math.min((long) Math.max(ef, k) * (live + tombstones.size()) / live, Integer.MAX_VALUE);
+        List<Candidate> found = searchLayer(q, current, width, 0);
+
+        String[] names = ids;
+        List<Neighbor> result = new ArrayList<>(k);
+        for (Candidate candidate : found) {
+            if (result.size() == k) {
+                break;
+            }
+            if (!tombstones.contains(candidate.node())) {
+                result.add(new Neighbor(names[candidate.node()], candidate.distance()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Обходит живые узлы; для сжатых форматов отдаёт вектор, восстановленный из кода
+     * (повторное кодирование даёт тот же код, так что перестроение индекса точность не теряет).
+     */
+    public void forEachLive(BiConsumer<String, float[]> consumer) {
+        nodesById.forEach((id, node) -> consumer.accept(id, readVector(node)));
+    }
+
+    public void checkpoint() {
+        checkpointLock.writeLock().lock();
+        try {
+            vectors.force();
+            graph.force();
+            writeMeta();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        checkpoint();
+        vectors.close();
+        graph.close();
+    }
+
+    private int allocate(String id) {
+        synchronized (allocationLock) {
+            int node = nodeCount;
+            vectors.ensureCapacity(node + 1);
+            graph.ensureCapacity(node + 1);
+            String[] names = ids;
+            if (node >= names.length) {
+                String[] grown = new String[names.length * 2];
+                System.arraycopy(names, 0, grown, 0, names.length);
+                names = grown;
+            }
+            names[node] = id;
+            ids = names;
+            nodeCount = node + 1;
+            return node;
+        }
+    }
+
+    private void link(int node, Quantization.Query q) {
+        int level = randomLevel();
+        synchronized (lock(node)) {
+            graph.putInt(node, 0, level);
+            graph.putInt(node, 1, 0);
+            if (level > 0) {
+                upperLayers.put(node, new int[level][m + 1]);
+            }
+        }
+
+        int ep;
+        int top;
+        synchronized (entryLock) {
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return;
+            }
+            ep = entryPoint;
+            top = maxLevel;
+        }
+
+        Candidate current = new Candidate(ep, distance(q, ep));
+        for (int l = top; l > level; l--) {
+            current = greedy(q, current, l);
+        }
+        for (int l = Math.min(level, top); l >= 0; l--) {
+            List<Candidate> found = searchLayer(q, current, efConstruction, l);
+            int[] selected = selectNeighbors(found, m);
+            synchronized (lock(node)) {
+                writeNeighbors(node, l, selected, selected.length);
+            }
+            int maxConnections = l == 0 ? maxConnections0 : m;
+            for (int neighbor : selected) {
+                connect(neighbor, node, l, maxConnections);
+            }
+            current = found.get(0);
+        }
+
+        if (level > top) {
+            synchronized (entryLock) {
+                if (level > maxLevel) {
+                    maxLevel = level;
+                    entryPoint = node;
+                }
+            }
+        }
+    }
+
+    private void connect(int node, int newNeighbor, int level, int maxConnections) {
+        synchronized (lock(node)) {
+            int[] current = readNeighbors(node, level);
+            if (current.length < maxConnections) {
+                int[] extended = new int[current.length + 1];
+                System.arraycopy(current, 0, extended, 0, current.length);
+                extended[current.length] = newNeighbor;
+                writeNeighbors(node, level, extended, extended.length);
+                return;
+            }
+            List<Candidate> candidates = new ArrayList<>(current.length + 1);
+            for (int neighbor : current) {
+                candidates.add(new Candidate(neighbor, distanceBetween(node, neighbor)));
+            }
+            candidates.add(new Candidate(newNeighbor, distanceBetween(node, newNeighbor)));
+            candidates.sort(Comparator.comparingDouble(Candidate::distance));
+            int[] pruned = selectNeighbors(candidates, maxConnections);
+            writeNeighbors(node, level, pruned, pruned.length);
+        }
+    }
+
+    /**
+     * Эвристика выбора соседей из статьи HNSW: кандидат берётся, только если он ближе к базовому узлу,
+     * чем к любому уже выбранному соседу; оставшиеся места добиваются ближайшими из отброшенных.
+     */
+    private int[] selectNeighbors(List<Candidate> sortedCandidates, int max) {
+        List<Candidate> selected = new ArrayList<>(max);
+        List<Candidate> discarded = new ArrayList<>();
+        for (Candidate candidate : sortedCandidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            boolean diverse = true;
+            for (Candidate chosen : selected) {
+                if (distanceBetween(candidate.node(), chosen.node()) < candidate.distance()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                discarded.add(candidate);
+            }
+        }
+        for (int i = 0; i < discarded.size() && selected.size() < max; i++) {
+            selected.add(discarded.get(i));
+        }
+        int[] result = new int[selected.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = selected.get(i).node();
+        }
+        return result;
+    }
+
+    private Candidate greedy(Quantization.Query q, Candidate start, int level) {
+        Candidate current = start;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int neighbor : neighbors(current.node(), level)) {
+                float d = distance(q, neighbor);
+                if (d < current.distance()) {
+                    current = new Candidate(neighbor, d);
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    private List<Candidate> searchLayer(Quantization.Query q, Candidate entry, int ef, int level) {
+        BitSet visited = new BitSet(nodeCount);
+        visited.set(entry.node());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distance));
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distance).reversed());
+        candidates.add(entry);
+        results.add(entry);
+
+        while (!candidates.isEmpty()) {
+            Candidate closest = candidates.poll();
+            if (results.size() >= ef && closest.distance() > results.peek().distance()) {
+                break;
+            }
+            for (int neighbor : neighbors(closest.node(), level)) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float d = distance(q, neighbor);
+                if (results.size() < ef || d < results.peek().distance()) {
+                    Candidate candidate = new Candidate(neighbor, d);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(Candidate::distance));
+        return sorted;
+    }
+
+    private int[] neighbors(int node, int level) {
+        synchronized (lock(node)) {
+            return readNeighbors(node, level);
+        }
+    }
+
+    private int[] readNeighbors(int node, int level) {
+        if (level == 0) {
+            int count = graph.getInt(node, 1);
+            int[] result = new int[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = graph.getInt(node, 2 + i);
+            }
+            return result;
+        }
+        int[][] layers = upperLayers.get(node);
+        if (layers == null || layers.length < level) {
+            return new int[0];
+        }
+        int[] layer = layers[level - 1];
+        int[] result = new int[layer[0]];
+        System.arraycopy(layer, 1, result, 0, result.length);
+        return result;
+    }
+
+    private void writeNeighbors(int node, int level, int[] neighbors, int count) {
+        if (level == 0) {
+            for (int i = 0; i < count; i++) {
+                graph.putInt(node, 2 + i, neighbors[i]);
+            }
+            graph.putInt(node, 1, count);
+            return;
+        }
+        int[] layer = upperLayers.get(node)[level - 1];
+        System.arraycopy(neighbors, 0, layer, 1, count);
+        layer[0] = count;
+    }
+
+    private float distance(Quantization.Query q, int node) {
+        return quantization.distance(q, vectors, node);
+    }
+
+    private float distanceBetween(int a, int b) {
+        return quantization.distanceBetween(vectors, a, b, dimensions);
+    }
+
+    private float[] readVector(int node) {
+        return quantization.decode(vectors, node, dimensions);
+    }
+
+    private int randomLevel() {
+        double r = 1 - ThreadLocalRandom.current().nextDouble();
+        return Math.min((int) (-Math.log(r) * levelMultiplier), MAX_LEVEL);
+    }
+
+    private Object lock(int node) {
+        return locks[node & (LOCK_STRIPES - 1)];
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] result = vector.clone();
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < result.length; i++) {
+                result[i] *= scale;
+            }
+        }
+        return result;
+    }
+
+    private void writeMeta() {
+        Path tmp = directory.resolve(META_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            int count = nodeCount;
+            String[] names = ids;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimensions);
+            out.writeInt(m);
+            out.writeUTF(quantization.name());
+            out.writeInt(count);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int node = 0; node < count; node++) {
+                out.writeUTF(names[node]);
+            }
+            List<Integer> dead = new ArrayList<>(tombstones);
+            out.writeInt(dead.size());
+            for (int node : dead) {
+                out.writeInt(node);
+            }
+            out.writeInt(upperLayers.size());
+            for (Map.Entry<Integer, int[][]> entry : upperLayers.entrySet()) {
+                int[][] layers = entry.getValue();
+                out.writeInt(entry.getKey());
+                out.writeInt(layers.length);
+                for (int[] layer : layers) {
+                    out.writeInt(layer[0]);
+                    for (int i = 1; i <= layer[0]; i++) {
+                        out.writeInt(layer[i]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing index metadata", e);
+        }
+        try {
+            Files.move(tmp, directory.resolve(META_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error replacing index metadata", e);
+        }
+    }
+
+    private void readMeta() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(META_FILE))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported index metadata format");
+            }
+            if (in.readInt() != dimensions || in.readInt() != m || !in.readUTF().equals(quantization.name())) {
+                throw new IOException("Index was built with different dimensions, M or quantization");
+            }
+            int count = in.readInt();
+            int ep = in.readInt();
+            int top = in.readInt();
+
+            vectors.ensureCapacity(count);
+            graph.ensureCapacity(count);
+            String[] names = new String[Math.max(count * 2, 1024)];
+            for (int node = 0; node < count; node++) {
+                names[node] = in.readUTF();
+            }
+            int dead = in.readInt();
+            for (int i = 0; i < dead; i++) {
+                tombstones.add(in.readInt());
+            }
+            for (int node = 0; node < count; node++) {
+                if (!tombstones.contains(node)) {
+                    nodesById.put(names[node], node);
+                }
+            }
+            int upperCount = in.readInt();
+            for (int i = 0; i < upperCount; i++) {
+                int node = in.readInt();
+                int[][] layers = new int[in.readInt()][m + 1];
+                for (int[] layer : layers) {
+                    layer[0] = in.readInt();
+                    for (int j = 1; j <= layer[0]; j++) {
+                        layer[j] = in.readInt();
+                    }
+                }
+                upperLayers.put(node, layers);
+            }
+
+            validateGraph(count, ep);
+
+            ids = names;
+            nodeCount = count;
+            entryPoint = ep;
+            maxLevel = top;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading index metadata from " + directory, e);
+        }
+    }
+
+    private void validateGraph(int count, int ep) throws IOException {
+        if (ep >= count) {
+            throw new IOException("Entry point " + ep + " is past the checkpointed " + count + " nodes");
+        }
+        for (int node = 0; node < count; node++) {
+            int degree = graph.getInt(node, 1);
+            if (degree < 0 || degree > maxConnections0) {
+                throw new IOException("Corrupt level-0 adjacency of node " + node);
+            }
+            for (int i = 0; i < degree; i++) {
+                int neighbor = graph.getInt(node, 2 + i);
+                if (neighbor < 0 || neighbor >= count) {
+                    throw new IOException("Node " + node + " links to node " + neighbor
+                            + " added after the last checkpoint");
+                }
+            }
+        }
+        for (int[][] layers : upperLayers.values()) {
+            for (int[] layer : layers) {
+                for (int i = 1; i <= layer[0]; i++) {
+                    if (layer[i] < 0 || layer[i] >= count) {
+                        throw new IOException("Upper layer links to unknown node " + layer[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    public record Neighbor(String id, float distance) {
+    }
+
+    private record Candidate(int node, float distance) {
+    }
+}
@@ -0,0 +1,114 @@
+package ru.raiff.ai_lab.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Файл из слотов фиксированного размера, отображённый в память сегментами: один
+ * {@link MappedByteBuffer} ограничен 2 ГБ, поэтому файл мапится кусками по {@code slotsPerSegment} слотов.
+ * Доступ только абсолютный (без position), так что чтение и запись разных слотов потокобезопасны.
+ */
+final class MappedSlotFile implements Closeable {
+
+    private final FileChannel channel;
+    private final int slotBytes;
+    private final int slotsPerSegment;
+    private final long segmentBytes;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    MappedSlotFile(Path path, int slotBytes, int slotsPerSegment) {
+        this.slotBytes = slotBytes;
+        this.slotsPerSegment = slotsPerSegment;
+        this.segmentBytes = (long) slotBytes * slotsPerSegment;
+        if (segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment is larger than 2 GB: " + segmentBytes);
+        }
+        try {
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening index file " + path, e);
+        }
+    }
+
+    synchronized void ensureCapacity(int slots) {
+        int needed = (slots + slotsPerSegment - 1) / slotsPerSegment;
+        MappedByteBuffer[] current = segments;
+        if (needed <= current.length) {
+            return;
+        }
+        MappedByteBuffer[] grown = new MappedByteBuffer[needed];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        try {
+            for (int i = current.length; i < needed; i++) {
+                grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * segmentBytes, segmentBytes);
+                grown[i].order(ByteOrder.nativeOrder());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error mapping index segment", e);
+        }
+        segments = grown;
+    }
+
+    float getFloat(int slot, int index) {
+        return segment(slot).getFloat(offset(slot) + index * Float.BYTES);
+    }
+
+    void putFloat(int slot, int index, float value) {
+        segment(slot).putFloat(offset(slot) + index * Float.BYTES, value);
+    }
+
+    int getInt(int slot, int index) {
+        return segment(slot).getInt(offset(slot) + index * Integer.BYTES);
+    }
+
+    void putInt(int slot, int index, int value) {
+        segment(slot).putInt(offset(slot) + index * Integer.BYTES, value);
+    }
+
+    byte getByte(int slot, int offset) {
+        return segment(slot).get(offset(slot) + offset);
+    }
+
+    void putByte(int slot, int offset, byte value) {
+        segment(slot).put(offset(slot) + offset, value);
+    }
+
+    long getLong(int slot, int index) {
+        return segment(slot).getLong(offset(slot) + index * Long.BYTES);
+    }
+
+    void putLong(int slot, int index, long value) {
+        segment(slot).putLong(offset(slot) + index * Long.BYTES, value);
+    }
+
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error closing index file", e);
+        }
+    }
+
+    private MappedByteBuffer segment(int slot) {
+        return segments[slot / slotsPerSegment];
+    }
+
+    private int offset(int slot) {
+        return (slot % slotsPerSegment) * slotBytes;
+    }
+}
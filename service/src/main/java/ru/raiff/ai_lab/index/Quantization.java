@@ -0,0 +1,202 @@
+package ru.raiff.ai_lab.index;
+
+/**
+ * Формат хранения нормированных векторов в {@code vectors.dat}. Сжатые форматы дают приближённое
+ * косинусное расстояние, поэтому результаты поиска по ним стоит пересчитывать по полным векторам.
+ */
+public enum Quantization {
+
+    /**
+     * float32 без сжатия: 4 байта на измерение.
+     */
+    NONE {
+        @Override
+        public int codeBytes(int dimensions) {
+            return dimensions * Float.BYTES;
+        }
+
+        @Override
+        void encode(float[] normalized, MappedSlotFile codes, int slot) {
+            for (int i = 0; i < normalized.length; i++) {
+                codes.putFloat(slot, i, normalized[i]);
+            }
+        }
+
+        @Override
+        float[] decode(MappedSlotFile codes, int slot, int dimensions) {
+            float[] vector = new float[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = codes.getFloat(slot, i);
+            }
+            return vector;
+        }
+
+        @Override
+        float distance(Query query, MappedSlotFile codes, int slot) {
+            float[] q = query.values();
+            float dot = 0;
+            for (int i = 0; i < q.length; i++) {
+                dot += q[i] * codes.getFloat(slot, i);
+            }
+            return 1 - dot;
+        }
+
+        @Override
+        float distanceBetween(MappedSlotFile codes, int a, int b, int dimensions) {
+            float dot = 0;
+            for (int i = 0; i < dimensions; i++) {
+                dot += codes.getFloat(a, i) * codes.getFloat(b, i);
+            }
+            return 1 - dot;
+        }
+    },
+
+    /**
+     * Скалярное квантование в int8 с масштабом на вектор: float-множитель и по байту на измерение.
+     * Компоненты нормированного вектора размерности 1024 порядка 0.03, поэтому общий масштаб
+     * {@code x * 127} съел бы почти всю точность — масштаб берётся от максимальной компоненты.
+     */
+    INT8 {
+        @Override
+        public int codeBytes(int dimensions) {
+            return Float.BYTES + dimensions;
+        }
+
+        @Override
+        void encode(float[] normalized, MappedSlotFile codes, int slot) {
+            float max = 0;
+            for (float v : normalized) {
+                max = Math.max(max, Math.abs(v));
+            }
+            float step = max > 0 ? max / 127 : 1;
+            codes.putFloat(slot, 0, step);
+            for (int i = 0; i < normalized.length; i++) {
+                codes.putByte(slot, Float.BYTES + i, (byte) Math.round(normalized[i] / step));
+            }
+        }
+
+        @Override
+        float[] decode(MappedSlotFile codes, int slot, int dimensions) {
+            float step = codes.getFloat(slot, 0);
+            float[] vector = new float[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = codes.getByte(slot, Float.BYTES + i) * step;
+            }
+            return vector;
+        }
+
+        @Override
+        float distance(Query query, MappedSlotFile codes, int slot) {
+            float[] q = query.values();
+            float dot = 0;
+            for (int i = 0; i < q.length; i++) {
+                dot += q[i] * codes.getByte(slot, Float.BYTES + i);
+            }
+            return 1 - dot * codes.getFloat(slot, 0);
+        }
+
+        @Override
+        float distanceBetween(MappedSlotFile codes, int a, int b, int dimensions) {
+            int dot = 0;
+            for (int i = 0; i < dimensions; i++) {
+                dot += codes.getByte(a, Float.BYTES + i) * codes.getByte(b, Float.BYTES + i);
+            }
+            return 1 - dot * codes.getFloat(a, 0) * codes.getFloat(b, 0);
+        }
+    },
+
+    /**
+     * Бинарное квантование: бит знака на измерение, расстояние по Хэммингу пересчитывается в косинус
+     * через угол ({@code cos(pi * h / d)}). В 32 раза компактнее float32, но без пересчёта полноты мало.
+     */
+    BINARY {
+        @Override
+        public int codeBytes(int dimensions) {
+            return words(dimensions) * Long.BYTES;
+        }
+
+        @Override
+        void encode(float[] normalized, MappedSlotFile codes, int slot) {
+            long[] bits = signBits(normalized);
+            for (int i = 0; i < bits.length; i++) {
+                codes.putLong(slot, i, bits[i]);
+            }
+        }
+
+        @Override
+        float[] decode(MappedSlotFile codes, int slot, int dimensions) {
+            float magnitude = (float) (1 / Math.sqrt(dimensions));
+            float[] vector = new float[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                boolean set = (codes.getLong(slot, i >>> 6) & (1L << (i & 63))) != 0;
+                vector[i] = set ? magnitude : -magnitude;
+            }
+            return vector;
+        }
+
+        @Override
+        float distance(Query query, MappedSlotFile codes, int slot) {
+            long[] bits = query.bits();
+            int hamming = 0;
+            for (int i = 0; i < bits.length; i++) {
+                hamming += Long.bitCount(bits[i] ^ codes.getLong(slot, i));
+            }
+            return angular(hamming, query.values().length);
+        }
+
+        @Override
+        float distanceBetween(MappedSlotFile codes, int a, int b, int dimensions) {
+            int hamming = 0;
+            for (int i = 0, words = words(dimensions); i < words; i++) {
+                hamming += Long.bitCount(codes.getLong(a, i) ^ codes.getLong(b, i));
+            }
+            return angular(hamming, dimensions);
+        }
+
+        @Override
+        Query prepare(float[] normalized) {
+            return new Query(normalized, signBits(normalized));
+        }
+    };
+
+    /**
+     * Размер кода одного вектора в байтах.
+     */
+    public abstract int codeBytes(int dimensions);
+
+    abstract void encode(float[] normalized, MappedSlotFile codes, int slot);
+
+    abstract float[] decode(MappedSlotFile codes, int slot, int dimensions);
+
+    abstract float distance(Query query, MappedSlotFile codes, int slot);
+
+    abstract float distanceBetween(MappedSlotFile codes, int a, int b, int dimensions);
+
+    Query prepare(float[] normalized) {
+        return new Query(normalized, null);
+    }
+
+    private static int words(int dimensions) {
+        return (dimensions + 63) >>> 6;
+    }
+
+    private static long[] signBits(float[] vector) {
+        long[] bits = new long[words(vector.length)];
+        for (int i = 0; i < vector.length; i++) {
+            if (vector[i] > 0) {
+                bits[i >>> 6] |= 1L << (i & 63);
+            }
+        }
+        return bits;
+    }
+
+    private static float angular(int hamming, int dimensions) {
+        return (float) (1 - Math.cos(Math.PI * hamming / dimensions));
+    }
+
+    /**
+     * Запрос, подготовленный под формат: нормированный вектор и, для {@link #BINARY}, его биты знака.
+     */
+    record Query(float[] values, long[] bits) {
+    }
+}
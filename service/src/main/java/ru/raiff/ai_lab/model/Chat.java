@@ -16,8 +16,10 @@ import java.util.List;
 @AllArgsConstructor
 public class Chat {
     
+    // id выдаются блоками по 50 из последовательности identity-колонки, см. миграцию 05
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "chatIdGenerator")
+    @SequenceGenerator(name = "chatIdGenerator", sequenceName = "chat_id_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "created_at")
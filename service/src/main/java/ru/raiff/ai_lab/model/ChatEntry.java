@@ -15,8 +15,10 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class ChatEntry {
     
+    // последовательность identity-колонки с шагом 50 (миграция 05): id известен до вставки, и Hibernate пишет пачками
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "chatEntryIdGenerator")
+    @SequenceGenerator(name = "chatEntryIdGenerator", sequenceName = "chat_entry_id_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "content", columnDefinition = "TEXT")
@@ -29,6 +31,14 @@ public class ChatEntry {
     @Column(name = "role")
     private Role role;
     
+    // язык текста (ru/en) — по нему генерируемая колонка search_vector выбирает конфигурацию text search
+    @Column(name = "language", length = 2)
+    private String language;
+    
+    // черновик ответа, генерация которого ещё идёт: в окно контекста не попадает
+    @Column(name = "draft", nullable = false)
+    private boolean draft;
+    
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "chat_id", referencedColumnName = "id")
     @ToString.Exclude
@@ -0,0 +1,37 @@
+package ru.raiff.ai_lab.model;
+
+/**
+ * Метрика расстояния pgvector: оператор в запросе и класс операторов индекса должны совпадать,
+ * иначе Postgres не сможет использовать индекс и выполнит полный перебор.
+ */
+public enum DistanceMetric {
+    
+    L2("<->", "vector_l2_ops"),
+    COSINE("<=>", "vector_cosine_ops"),
+    INNER_PRODUCT("<#>", "vector_ip_ops");
+    
+    private final String operator;
+    private final String operatorClass;
+    
+    DistanceMetric(String operator, String operatorClass) {
+        this.operator = operator;
+        this.operatorClass = operatorClass;
+    }
+    
+    public String operator() {
+        return operator;
+    }
+    
+    public String operatorClass() {
+        return operatorClass;
+    }
+    
+    public static DistanceMetric fromOperatorClass(String operatorClass) {
+        for (DistanceMetric metric : values()) {
+            if (metric.operatorClass.equals(operatorClass)) {
+                return metric;
+            }
+        }
+        return null;
+    }
+}
\ No newline at end of file
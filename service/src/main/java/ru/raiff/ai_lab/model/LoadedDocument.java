@@ -19,7 +19,10 @@ public class LoadedDocument {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
     
-    @Column(name = "filename", nullable = false)
+    /**
+     * Путь файла относительно {@code app.ingestion.base-dir} с разделителем {@code /}.
+     */
+    @Column(name = "filename", nullable = false, length = 1024)
     private String filename;
     
     @Column(name = "content_hash", nullable = false, length = 64)
@@ -0,0 +1,136 @@
+package ru.raiff.ai_lab.model;
+
+import org.postgresql.core.BaseConnection;
+import org.postgresql.util.PGBinaryObject;
+import org.postgresql.util.PGobject;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+
+import java.io.Serial;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Значение pgvector {@code vector} для драйвера PostgreSQL. Реализует {@link PGBinaryObject},
+ * поэтому после {@link #register(Connection)} драйвер передаёт векторы в бинарном формате
+ * pgvector (int16 dim, int16 unused, dim × float4 big-endian) без текстового форматирования и разбора.
+ */
+public class PgVector extends PGobject implements PGBinaryObject {
+    
+    public static final String TYPE_NAME = "vector";
+    
+    @Serial
+    private static final long serialVersionUID = 1L;
+    
+    private static final int HEADER_BYTES = 4;
+    
+    private float[] vector;
+    
+    public PgVector() {
+        this.type = TYPE_NAME;
+    }
+    
+    public PgVector(float[] vector) {
+        this();
+        this.vector = vector;
+    }
+    
+    public static void register(Connection connection) throws SQLException {
+        BaseConnection pgConnection = connection.unwrap(BaseConnection.class);
+        if (pgConnection.getTypeInfo().getPGobject(TYPE_NAME) != PgVector.class) {
+            pgConnection.addDataType(TYPE_NAME, PgVector.class);
+        }
+    }
+    
+    public float[] toArray() {
+        return vector;
+    }
+    
+    @Override
+    public void setByteValue(byte[] bytes, int offset) throws SQLException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, bytes.length - offset);
+        int dimensions = buffer.getShort() & 0xFFFF;
+        buffer.getShort();
+        if (buffer.remaining() < dimensions * Float.BYTES) {
+            throw new PSQLException("Truncated binary vector value", PSQLState.DATA_ERROR);
+        }
+        float[] result = new float[dimensions];
+        buffer.asFloatBuffer().get(result);
+        this.vector = result;
+    }
+    
+    @Override
+    public int lengthInBytes() {
+        return vector == null ? 0 : HEADER_BYTES + vector.length * Float.BYTES;
+    }
+    
+    @Override
+    public void toBytes(byte[] bytes, int offset) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, lengthInBytes());
+        buffer.putShort((short) vector.length);
+        buffer.putShort((short) 0);
+        buffer.asFloatBuffer().put(vector);
+    }
+    
+    @Override
+    public void setValue(String value) throws SQLException {
+        if (value == null) {
+            this.vector = null;
+            return;
+        }
+        String body = value.trim();
+        if (body.length() < 2 || body.charAt(0) != '[' || body.charAt(body.length() - 1) != ']') {
+            throw new PSQLException("Invalid vector literal", PSQLState.DATA_ERROR);
+        }
+        body = body.substring(1, body.length() - 1);
+        if (body.isBlank()) {
+            this.vector = new float[0];
+            return;
+        }
+        String[] parts = body.split(",");
+        float[] result = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Float.parseFloat(parts[i].trim());
+        }
+        this.vector = result;
+    }
+    
+    @Override
+    public String getValue() {
+        if (vector == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(vector.length * 12).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+    
+    @Override
+    public boolean isNull() {
+        return vector == null;
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof PgVector other && Arrays.equals(vector, other.vector);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(vector);
+    }
+    
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        PgVector copy = (PgVector) super.clone();
+        copy.vector = vector == null ? null : vector.clone();
+        return copy;
+    }
+}
@@ -0,0 +1,91 @@
+package ru.raiff.ai_lab.model;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.UserType;
+import org.postgresql.util.PGobject;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Hibernate-тип для колонок pgvector, отображаемых на {@code float[]}; чтение и запись идут через {@link PgVector}.
+ */
+public class PgVectorType implements UserType<float[]> {
+    
+    @Override
+    public int getSqlType() {
+        return Types.OTHER;
+    }
+    
+    @Override
+    public Class<float[]> returnedClass() {
+        return float[].class;
+    }
+    
+    @Override
+    public boolean equals(float[] x, float[] y) {
+        return Arrays.equals(x, y);
+    }
+    
+    @Override
+    public int hashCode(float[] x) {
+        return Arrays.hashCode(x);
+    }
+    
+    @Override
+    public float[] nullSafeGet(ResultSet rs, int position, SharedSessionContractImplementor session, Object owner)
+            throws SQLException {
+        PgVector.register(rs.getStatement().getConnection());
+        return toArray(rs.getObject(position));
+    }
+    
+    @Override
+    public void nullSafeSet(PreparedStatement st, float[] value, int index, SharedSessionContractImplementor session)
+            throws SQLException {
+        if (value == null) {
+            st.setNull(index, Types.OTHER);
+            return;
+        }
+        PgVector.register(st.getConnection());
+        st.setObject(index, new PgVector(value));
+    }
+    
+    @Override
+    public float[] deepCopy(float[] value) {
+        return value == null ? null : value.clone();
+    }
+    
+    @Override
+    public boolean isMutable() {
+        return true;
+    }
+    
+    @Override
+    public Serializable disassemble(float[] value) {
+        return deepCopy(value);
+    }
+    
+    @Override
+    public float[] assemble(Serializable cached, Object owner) {
+        return deepCopy((float[]) cached);
+    }
+    
+    public static float[] toArray(Object value) throws SQLException {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof PgVector vector) {
+            return vector.toArray();
+        }
+        if (value instanceof PGobject object) {
+            PgVector vector = new PgVector();
+            vector.setValue(object.getValue());
+            return vector.toArray();
+        }
+        throw new SQLException("Unexpected value for vector column: " + value.getClass().getName());
+    }
+}
@@ -0,0 +1,6 @@
+package ru.raiff.ai_lab.model;
+
+public enum VectorIndexMethod {
+    HNSW,
+    IVFFLAT
+}
\ No newline at end of file
@@ -4,7 +4,9 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.Type;
 import org.hibernate.type.SqlTypes;
 
 @Entity
@@ -25,6 +27,14 @@ public class VectorStore {
     @Column(name = "metadata", columnDefinition = "json")
     private String metadata;
     
+    @Type(PgVectorType.class)
     @Column(name = "embedding", columnDefinition = "vector(1024)")
-    private String embedding;
+    @ToString.Exclude
+    private float[] embedding;
+    
+    @Column(name = "document_id")
+    private Integer documentId;
+    
+    @Column(name = "chunk_hash", length = 64)
+    private String chunkHash;
 }
\ No newline at end of file
@@ -0,0 +1,185 @@
+package ru.raiff.ai_lab.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import ru.raiff.ai_lab.dto.ArchivedChat;
+import ru.raiff.ai_lab.dto.ArchivedChatEntry;
+import ru.raiff.ai_lab.model.ChatEntry;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Перенос реплик между chat_entry и холодным chat_archive. Перенос сериализуется блокировкой строки чата:
+ * архивация берёт {@code FOR UPDATE}, возврат — {@code FOR NO KEY UPDATE}. Обе конфликтуют друг с другом,
+ * а вставка новой реплики (внешний ключ берёт {@code FOR KEY SHARE}) ждёт только архивацию.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ChatArchiveRepository {
+
+    // чаты со старыми репликами читаются из старых секций; проверка свежих реплик попадает только в новые
+    private static final String IDLE_CHATS_SQL = """
+            SELECT old.chat_id
+            FROM (SELECT DISTINCT chat_id FROM chat_entry WHERE created_at < ? AND chat_id IS NOT NULL) old
+            WHERE NOT EXISTS (SELECT 1 FROM chat_entry ce WHERE ce.chat_id = old.chat_id AND ce.created_at >= ?)
+            LIMIT ?
+            """;
+
+    private static final String ENTRIES_SQL = """
+            SELECT id, role, content, created_at, language
+            FROM chat_entry
+            WHERE chat_id = ?
+            ORDER BY created_at, id
+            """;
+
+    private static final String ARCHIVE_COLUMNS =
+            "chat_id, entry_count, last_preview, last_message_at, codec, raw_size, payload, archived_at";
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO chat_archive (chat_id, entry_count, last_preview, last_message_at, codec, raw_size, payload, archived_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (chat_id) DO UPDATE SET entry_count     = excluded.entry_count,
+                                                last_preview    = excluded.last_preview,
+                                                last_message_at = excluded.last_message_at,
+                                                codec           = excluded.codec,
+                                                raw_size        = excluded.raw_size,
+                                                payload         = excluded.payload,
+                                                archived_at     = excluded.archived_at
+            """;
+
+    private static final String SEARCH_VECTOR_SQL = """
+            UPDATE chat_archive
+            SET search_vector = strip(to_tsvector('russian', ?) || to_tsvector('english', ?) || to_tsvector('simple', ?))
+            WHERE chat_id = ?
+            """;
+
+    private static final String RESTORE_SQL = """
+            INSERT INTO chat_entry (id, chat_id, role, content, created_at, language)
+            VALUES (?, ?, ?, ?, ?, ?)
+            ON CONFLICT DO NOTHING
+            """;
+
+    private static final RowMapper<ArchivedChat> ARCHIVE_MAPPER = (rs, rowNum) -> new ArchivedChat(
+            rs.getLong("chat_id"),
+            rs.getInt("entry_count"),
+            rs.getString("last_preview"),
+            toLocalDateTime(rs.getTimestamp("last_message_at")),
+            rs.getString("codec"),
+            rs.getInt("raw_size"),
+            rs.getBytes("payload"),
+            toLocalDateTime(rs.getTimestamp("archived_at")));
+
+    private static final RowMapper<ArchivedChatEntry> ENTRY_MAPPER = (rs, rowNum) -> new ArchivedChatEntry(
+            rs.getLong("id"),
+            rs.getString("role") != null ? ChatEntry.Role.valueOf(rs.getString("role")) : null,
+            rs.getString("content"),
+            toLocalDateTime(rs.getTimestamp("created_at")),
+            rs.getString("language"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<Long> findIdleChatIds(LocalDateTime idleSince, int limit) {
+        Timestamp since = Timestamp.valueOf(idleSince);
+        return jdbcTemplate.queryForList(IDLE_CHATS_SQL, Long.class, since, since, limit);
+    }
+
+    public boolean lockForArchive(long chatId) {
+        return !jdbcTemplate.queryForList("SELECT id FROM chat WHERE id = ? FOR UPDATE", Long.class, chatId).isEmpty();
+    }
+
+    public boolean lockForRehydrate(long chatId) {
+        return !jdbcTemplate.queryForList("SELECT id FROM chat WHERE id = ? FOR NO KEY UPDATE", Long.class, chatId).isEmpty();
+    }
+
+    public Optional<LocalDateTime> findLastActivity(long chatId) {
+        Timestamp last = jdbcTemplate.queryForObject(
+                "SELECT max(created_at) FROM chat_entry WHERE chat_id = ?", Timestamp.class, chatId);
+        return Optional.ofNullable(toLocalDateTime(last));
+    }
+
+    public List<ArchivedChatEntry> findEntries(long chatId) {
+        return jdbcTemplate.query(ENTRIES_SQL, ENTRY_MAPPER, chatId);
+    }
+
+    public void deleteEntries(long chatId, List<Long> ids) {
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement("DELETE FROM chat_entry WHERE chat_id = ? AND id = ANY(?)");
+            ps.setLong(1, chatId);
+            ps.setArray(2, connection.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+    }
+
+    public void restoreEntries(long chatId, List<ArchivedChatEntry> entries) {
+        jdbcTemplate.batchUpdate(RESTORE_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setLong(1, entry.id());
+            ps.setLong(2, chatId);
+            ps.setString(3, entry.role() != null ? entry.role().name() : null);
+            ps.setString(4, entry.content());
+            ps.setTimestamp(5, Timestamp.valueOf(entry.createdAt()));
+            ps.setString(6, entry.language());
+        });
+    }
+
+    public boolean existsArchive(long chatId) {
+        return !jdbcTemplate.queryForList("SELECT 1 FROM chat_archive WHERE chat_id = ?", Integer.class, chatId).isEmpty();
+    }
+
+    public long archivedEntryCount(long chatId) {
+        List<Long> count = jdbcTemplate.queryForList(
+                "SELECT entry_count FROM chat_archive WHERE chat_id = ?", Long.class, chatId);
+        return count.isEmpty() ? 0 : count.get(0);
+    }
+
+    public Optional<ArchivedChat> findArchive(long chatId) {
+        return jdbcTemplate.query("SELECT " + ARCHIVE_COLUMNS + " FROM chat_archive WHERE chat_id = ?",
+                ARCHIVE_MAPPER, chatId).stream().findFirst();
+    }
+
+    public void saveArchive(ArchivedChat archive) {
+        jdbcTemplate.update(UPSERT_SQL,
+                archive.chatId(),
+                archive.entryCount(),
+                archive.lastPreview(),
+                archive.lastMessageAt() != null ? Timestamp.valueOf(archive.lastMessageAt()) : null,
+                archive.codec(),
+                archive.rawSize(),
+                archive.payload(),
+                Timestamp.valueOf(archive.archivedAt()));
+    }
+
+    /**
+     * Поисковый вектор архива: тексты реплик на русском, английском и прочих языках разбираются каждый своей
+     * конфигурацией, как search_vector в chat_entry.
+     */
+    public void updateSearchVector(long chatId, String russian, String english, String other) {
+        jdbcTemplate.update(SEARCH_VECTOR_SQL, russian, english, other, chatId);
+    }
+
+    public List<Long> findChatIdsWithoutSearchVector(int limit) {
+        return jdbcTemplate.queryForList(
+                "SELECT chat_id FROM chat_archive WHERE search_vector IS NULL LIMIT ?", Long.class, limit);
+    }
+
+    /**
+     * Удаляет архив, только если это та же версия, что была прочитана: иначе его успели дополнить.
+     */
+    public boolean deleteArchive(long chatId, LocalDateTime archivedAt) {
+        return jdbcTemplate.update("DELETE FROM chat_archive WHERE chat_id = ? AND archived_at = ?",
+                chatId, Timestamp.valueOf(archivedAt)) > 0;
+    }
+
+    public void deleteArchive(long chatId) {
+        jdbcTemplate.update("DELETE FROM chat_archive WHERE chat_id = ?", chatId);
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
\ No newline at end of file
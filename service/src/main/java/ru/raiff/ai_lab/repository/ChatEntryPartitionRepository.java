@@ -0,0 +1,83 @@
+package ru.raiff.ai_lab.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DDL месячных секций chat_entry. Имя секции — {@code chat_entry_pYYYY_MM}, как в SQL-функции
+ * {@code create_chat_entry_partition} из миграции 08; по имени же секция сопоставляется с месяцем.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ChatEntryPartitionRepository {
+
+    private static final Pattern NAME = Pattern.compile("chat_entry_p(\\d{4})_(\\d{2})");
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("'chat_entry_p'yyyy_MM");
+
+    private static final String LIST_SQL = """
+            SELECT c.relname
+            FROM pg_inherits i
+                     JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'chat_entry'::regclass
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public static String partitionName(YearMonth month) {
+        return month.format(NAME_FORMAT);
+    }
+
+    public boolean exists(YearMonth month) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, partitionName(month)));
+    }
+
+    /**
+     * Создание секции блокирует chat_entry целиком; вызывается в отдельной транзакции, ожидание блокировки ограничено.
+     */
+    public String create(YearMonth month) {
+        jdbcTemplate.execute("SET LOCAL lock_timeout = '5s'");
+        return jdbcTemplate.queryForObject("SELECT create_chat_entry_partition(?)", String.class, month.atDay(1));
+    }
+
+    /**
+     * Секции по месяцам, от старых к новым; секции с чужими именами пропускаются.
+     */
+    public Map<YearMonth, String> findAll() {
+        Map<YearMonth, String> partitions = new TreeMap<>();
+        for (String name : jdbcTemplate.queryForList(LIST_SQL, String.class)) {
+            Matcher matcher = NAME.matcher(name);
+            if (matcher.matches()) {
+                partitions.put(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))), name);
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * Удаляет секцию, если в ней не осталось строк. Вызывается в транзакции: родитель блокируется первым,
+     * как и в обычных запросах, так что взаимной блокировки нет, а {@code lock_timeout} не даёт надолго
+     * задержать запросы к chat_entry, если таблица занята.
+     */
+    public boolean dropIfEmpty(String name) {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Not a chat_entry partition: " + name);
+        }
+        jdbcTemplate.execute("SET LOCAL lock_timeout = '1s'");
+        jdbcTemplate.execute("LOCK TABLE chat_entry IN ACCESS EXCLUSIVE MODE");
+        Boolean empty = jdbcTemplate.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM " + name + ")", Boolean.class);
+        if (!Boolean.TRUE.equals(empty)) {
+            return false;
+        }
+        jdbcTemplate.execute("DROP TABLE " + name);
+        return true;
+    }
+}
\ No newline at end of file
@@ -1,9 +1,12 @@
 package ru.raiff.ai_lab.repository;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import ru.raiff.ai_lab.dto.ChatTurn;
 import ru.raiff.ai_lab.model.ChatEntry;
 
 import java.util.List;
@@ -13,6 +16,8 @@ public interface ChatEntryRepository extends JpaRepository<ChatEntry, Long> {
     
     List<ChatEntry> findByChatId(Long chatId);
     
+    long countByChatId(Long chatId);
+    
     List<ChatEntry> findByChatIdOrderByCreatedAtAsc(Long chatId);
     
     List<ChatEntry> findByRole(ChatEntry.Role role);
@@ -20,8 +25,20 @@ public interface ChatEntryRepository extends JpaRepository<ChatEntry, Long> {
     @Query("SELECT ce FROM ChatEntry ce WHERE ce.chat.id = :chatId AND ce.role = :role")
     List<ChatEntry> findByChatIdAndRole(@Param("chatId") Long chatId, @Param("role") ChatEntry.Role role);
     
-    @Query("SELECT ce FROM ChatEntry ce WHERE ce.content LIKE %:keyword%")
-    List<ChatEntry> findByContentContaining(@Param("keyword") String keyword);
+    // последние реплики чата от новых к старым: читается только limit строк, а не вся история
+    @Query("SELECT new ru.raiff.ai_lab.dto.ChatTurn(ce.id, ce.role, ce.content, ce.createdAt) " +
+            "FROM ChatEntry ce WHERE ce.chat.id = :chatId AND ce.draft = false ORDER BY ce.createdAt DESC, ce.id DESC")
+    List<ChatTurn> findLatestTurns(@Param("chatId") Long chatId, Limit limit);
+    
+    // реплики в промежутке id (afterId, beforeId) от старых к новым — вход для накопительного пересказа
+    @Query("SELECT new ru.raiff.ai_lab.dto.ChatTurn(ce.id, ce.role, ce.content, ce.createdAt) " +
+            "FROM ChatEntry ce WHERE ce.chat.id = :chatId AND ce.id > :afterId AND ce.id < :beforeId ORDER BY ce.id")
+    List<ChatTurn> findTurnsBetween(@Param("chatId") Long chatId, @Param("afterId") Long afterId,
+                                    @Param("beforeId") Long beforeId, Limit limit);
+    
+    @Modifying
+    @Query("UPDATE ChatEntry ce SET ce.content = :content WHERE ce.id = :id")
+    int updateContent(@Param("id") Long id, @Param("content") String content);
     
     void deleteByChatId(Long chatId);
 }
\ No newline at end of file
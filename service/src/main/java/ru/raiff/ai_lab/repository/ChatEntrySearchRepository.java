@@ -0,0 +1,144 @@
+package ru.raiff.ai_lab.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.web.util.HtmlUtils;
+import ru.raiff.ai_lab.dto.ArchivedChatSearchHit;
+import ru.raiff.ai_lab.dto.ChatEntrySearchHit;
+import ru.raiff.ai_lab.model.ChatEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Полнотекстовый поиск по chat_entry через GIN-индекс по search_vector. Запрос разбирается и русской,
+ * и английской конфигурацией, варианты объединяются через OR — так находятся реплики на обоих языках.
+ * Кандидатами берутся не больше {@code maxCandidates} самых свежих совпадений: для частого слова
+ * планировщик идёт по первичному ключу с конца и останавливается на лимите, для редкого — по GIN,
+ * поэтому время запроса не растёт вместе с историей. Внутри кандидатов порядок по ts_rank_cd,
+ * пагинация keyset по (rank, id); фрагменты с подсветкой строятся только для строк страницы.
+ * Более старые совпадения за пределами лимита не ранжируются вовсе — страница сообщает об этом
+ * флагом {@link Page#candidatesCapped()}.
+ * Реплики архивных чатов ищутся отдельно, по поисковому вектору чата в chat_archive.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ChatEntrySearchRepository {
+    
+    // управляющие символы вместо тегов: текст реплики экранируется уже после ts_headline
+    private static final String START_SEL = "\u0001";
+    private static final String STOP_SEL = "\u0002";
+    
+    private static final String HEADLINE_OPTIONS = "StartSel=" + START_SEL + ", StopSel=" + STOP_SEL
+            + ", MaxFragments=2, MaxWords=30, MinWords=10, FragmentDelimiter=\" … \"";
+    
+    private static final String PAGE_SQL = """
+            WITH query AS (
+                SELECT websearch_to_tsquery('russian', ?) || websearch_to_tsquery('english', ?) AS q
+            ), candidates AS (
+                SELECT ce.id, ce.chat_id, ce.role, ce.content, ce.created_at, ce.language,
+                       ts_rank_cd(ce.search_vector, query.q) AS rank
+                FROM chat_entry ce, query
+                WHERE ce.search_vector @@ query.q AND ce.id <= ?
+                ORDER BY ce.id DESC
+                LIMIT ?
+            ), page AS (
+                SELECT * FROM candidates
+                WHERE %s
+                ORDER BY rank DESC, id DESC
+                LIMIT ?
+            )
+            SELECT page.id, page.chat_id, page.role, page.created_at, page.rank,
+                   (SELECT count(*) FROM candidates) AS candidate_count,
+                   ts_headline(CASE page.language
+                                   WHEN 'ru' THEN 'russian'::regconfig
+                                   WHEN 'en' THEN 'english'::regconfig
+                                   ELSE 'simple'::regconfig
+                                   END,
+                               page.content, query.q, ?) AS snippet
+            FROM page, query
+            ORDER BY page.rank DESC, page.id DESC
+            """;
+    
+    private static final String ARCHIVED_CHATS_SQL = """
+            WITH query AS (
+                SELECT websearch_to_tsquery('russian', ?) || websearch_to_tsquery('english', ?) AS q
+            )
+            SELECT ca.chat_id, ca.last_message_at, ts_rank(ca.search_vector, query.q) AS rank
+            FROM chat_archive ca, query
+            WHERE ca.search_vector @@ query.q
+            ORDER BY rank DESC, ca.chat_id DESC
+            LIMIT ?
+            """;
+    
+    private static final String FIRST_PAGE_SQL = PAGE_SQL.formatted("TRUE");
+    
+    private static final String NEXT_PAGE_SQL = PAGE_SQL.formatted("(rank, id) < (CAST(? AS real), ?)");
+    
+    private static final RowMapper<ChatEntrySearchHit> ROW_MAPPER = (rs, rowNum) -> new ChatEntrySearchHit(
+            rs.getLong("id"),
+            rs.getLong("chat_id"),
+            ChatEntry.Role.valueOf(rs.getString("role")),
+            rs.getTimestamp("created_at") != null ? rs.getTimestamp("created_at").toLocalDateTime() : null,
+            rs.getFloat("rank"),
+            highlight(rs.getString("snippet")));
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    /**
+     * Строки страницы; {@code candidatesCapped} — совпадений больше {@code maxCandidates}, и ранжированы
+     * только самые свежие из них.
+     */
+    public record Page(List<ChatEntrySearchHit> hits, boolean candidatesCapped) {
+    }
+    
+    /**
+     * Верхняя граница id на момент первой страницы: следующие страницы ищут среди тех же кандидатов,
+     * даже если за это время появились новые реплики.
+     */
+    public long findMaxId() {
+        Long id = jdbcTemplate.queryForObject("SELECT max(id) FROM chat_entry", Long.class);
+        return id != null ? id : 0;
+    }
+    
+    public Page findFirstPage(String query, long maxId, int maxCandidates, int limit) {
+        return jdbcTemplate.query(FIRST_PAGE_SQL, pageExtractor(maxCandidates),
+                query, query, maxId, maxCandidates, limit, HEADLINE_OPTIONS);
+    }
+    
+    public Page findPageAfter(String query, long maxId, int maxCandidates, float rank, long id, int limit) {
+        return jdbcTemplate.query(NEXT_PAGE_SQL, pageExtractor(maxCandidates),
+                query, query, maxId, maxCandidates, rank, id, limit, HEADLINE_OPTIONS);
+    }
+    
+    public List<ArchivedChatSearchHit> findArchivedChats(String query, int limit) {
+        return jdbcTemplate.query(ARCHIVED_CHATS_SQL, (rs, rowNum) -> new ArchivedChatSearchHit(
+                rs.getLong("chat_id"),
+                rs.getTimestamp("last_message_at") != null ? rs.getTimestamp("last_message_at").toLocalDateTime() : null,
+                rs.getFloat("rank")), query, query, limit);
+    }
+    
+    private static ResultSetExtractor<Page> pageExtractor(int maxCandidates) {
+        return rs -> {
+            List<ChatEntrySearchHit> hits = new ArrayList<>();
+            long candidates = 0;
+            while (rs.next()) {
+                candidates = rs.getLong("candidate_count");
+                hits.add(ROW_MAPPER.mapRow(rs, hits.size()));
+            }
+            return new Page(hits, candidates >= maxCandidates);
+        };
+    }
+    
+    private static String highlight(String snippet) {
+        if (snippet == null) {
+            return null;
+        }
+        return HtmlUtils.htmlEscape(snippet)
+                .replace(START_SEL, "<mark>")
+                .replace(STOP_SEL, "</mark>");
+    }
+}
\ No newline at end of file
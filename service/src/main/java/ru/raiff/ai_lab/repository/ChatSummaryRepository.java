@@ -0,0 +1,67 @@
+package ru.raiff.ai_lab.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import ru.raiff.ai_lab.dto.ChatSummary;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Сводка по чатам одним запросом: число реплик — из счётчика chat.entry_count (его ведут триггеры, см. миграцию 12),
+ * превью последней — из индекса chat_entry(chat_id, created_at, id), сами реплики как сущности не загружаются.
+ * У архивных чатов то же берётся из строки chat_archive, архив ради списка не распаковывается.
+ * Пагинация keyset по (created_at, id), поэтому глубокие страницы не дороже первой.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ChatSummaryRepository {
+    
+    private static final String SELECT_SQL = """
+            SELECT c.id, c.title, c.created_at,
+                   c.entry_count + coalesce(a.entry_count, 0) AS entry_count,
+                   coalesce(last_entry.preview, left(a.last_preview, ?)) AS preview,
+                   coalesce(last_entry.created_at, a.last_message_at) AS last_message_at
+            FROM chat c
+                     LEFT JOIN chat_archive a ON a.chat_id = c.id
+                     LEFT JOIN LATERAL (
+                SELECT left(ce.content, ?) AS preview, ce.created_at
+                FROM chat_entry ce
+                WHERE ce.chat_id = c.id
+                ORDER BY ce.created_at DESC, ce.id DESC
+                LIMIT 1
+                ) last_entry ON TRUE
+            """;
+    
+    private static final String FIRST_PAGE_SQL = SELECT_SQL +
+            "ORDER BY c.created_at DESC, c.id DESC LIMIT ?";
+    
+    private static final String NEXT_PAGE_SQL = SELECT_SQL +
+            "WHERE (c.created_at, c.id) < (?, ?) ORDER BY c.created_at DESC, c.id DESC LIMIT ?";
+    
+    private static final RowMapper<ChatSummary> ROW_MAPPER = (rs, rowNum) -> new ChatSummary(
+            rs.getLong("id"),
+            rs.getString("title"),
+            toLocalDateTime(rs.getTimestamp("created_at")),
+            rs.getLong("entry_count"),
+            rs.getString("preview"),
+            toLocalDateTime(rs.getTimestamp("last_message_at")));
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    public List<ChatSummary> findFirstPage(int previewLength, int limit) {
+        return jdbcTemplate.query(FIRST_PAGE_SQL, ROW_MAPPER, previewLength, previewLength, limit);
+    }
+    
+    public List<ChatSummary> findPageBefore(LocalDateTime createdAt, long id, int previewLength, int limit) {
+        return jdbcTemplate.query(NEXT_PAGE_SQL, ROW_MAPPER, previewLength, previewLength,
+                Timestamp.valueOf(createdAt), id, limit);
+    }
+    
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,60 @@
+package ru.raiff.ai_lab.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.raiff.ai_lab.model.PgVector;
+import ru.raiff.ai_lab.model.PgVectorType;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class EmbeddingCacheRepository {
+    
+    private static final String FIND_SQL =
+            "SELECT content_hash, embedding FROM embedding_cache WHERE model = ? AND content_hash = ANY(?)";
+    
+    private static final String INSERT_SQL =
+            "INSERT INTO embedding_cache (model, content_hash, embedding) VALUES (?, ?, ?) " +
+            "ON CONFLICT (model, content_hash) DO NOTHING";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    public Map<String, float[]> findByModelAndHashes(String model, Collection<String> hashes) {
+        return jdbcTemplate.execute((ConnectionCallback<Map<String, float[]>>) connection -> {
+            PgVector.register(connection);
+            try (PreparedStatement ps = connection.prepareStatement(FIND_SQL)) {
+                ps.setString(1, model);
+                ps.setArray(2, connection.createArrayOf("varchar", hashes.toArray()));
+                try (ResultSet rs = ps.executeQuery()) {
+                    Map<String, float[]> result = new HashMap<>();
+                    while (rs.next()) {
+                        result.put(rs.getString(1), PgVectorType.toArray(rs.getObject(2)));
+                    }
+                    return result;
+                }
+            }
+        });
+    }
+    
+    public void saveAll(String model, Map<String, float[]> embeddings) {
+        jdbcTemplate.execute((ConnectionCallback<int[]>) connection -> {
+            PgVector.register(connection);
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+                for (Map.Entry<String, float[]> entry : embeddings.entrySet()) {
+                    ps.setString(1, model);
+                    ps.setString(2, entry.getKey());
+                    ps.setObject(3, new PgVector(entry.getValue()));
+                    ps.addBatch();
+                }
+                return ps.executeBatch();
+            }
+        });
+    }
+}
@@ -0,0 +1,105 @@
+package ru.raiff.ai_lab.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.raiff.ai_lab.model.PgVector;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+@Repository
+@RequiredArgsConstructor
+public class ResponseCacheRepository {
+    
+    private static final String FIND_NEAREST_SQL =
+            "SELECT response, embedding <=> ? AS distance FROM response_cache " +
+            "WHERE model = ? AND context_hash IS NOT DISTINCT FROM ? AND expires_at > now() " +
+            "ORDER BY embedding <=> ? LIMIT 1";
+    
+    private static final String INSERT_SQL =
+            "INSERT INTO response_cache (model, context_hash, prompt, response, embedding, expires_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    /**
+     * Ближайший сохранённый ответ на тот же контекст; {@code contextHash = null} — запрос без истории чата.
+     */
+    public Optional<CachedResponse> findNearest(String model, String contextHash, float[] embedding) {
+        return jdbcTemplate.execute((ConnectionCallback<Optional<CachedResponse>>) connection -> {
+            PgVector.register(connection);
+            try (PreparedStatement ps = connection.prepareStatement(FIND_NEAREST_SQL)) {
+                PgVector vector = new PgVector(embedding);
+                ps.setObject(1, vector);
+                ps.setString(2, model);
+                ps.setString(3, contextHash);
+                ps.setObject(4, vector);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        return Optional.empty();
+                    }
+                    return Optional.of(new CachedResponse(rs.getString("response"), rs.getDouble("distance")));
+                }
+            }
+        });
+    }
+    
+    public void save(String model, String contextHash, String prompt, String response, float[] embedding,
+                     LocalDateTime expiresAt) {
+        jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            PgVector.register(connection);
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+                ps.setString(1, model);
+                ps.setString(2, contextHash);
+                ps.setString(3, prompt);
+                ps.setString(4, response);
+                ps.setObject(5, new PgVector(embedding));
+                ps.setTimestamp(6, Timestamp.valueOf(expiresAt));
+                return ps.executeUpdate();
+            }
+        });
+    }
+    
+    public int deleteSimilar(String model, float[] embedding, double maxDistance) {
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            PgVector.register(connection);
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "DELETE FROM response_cache WHERE model = ? AND embedding <=> ? < ?")) {
+                ps.setString(1, model);
+                ps.setObject(2, new PgVector(embedding));
+                ps.setDouble(3, maxDistance);
+                return ps.executeUpdate();
+            }
+        });
+    }
+    
+    public int deleteExpired() {
+        return jdbcTemplate.update("DELETE FROM response_cache WHERE expires_at <= now()");
+    }
+    
+    public int deleteAll() {
+        return jdbcTemplate.update("DELETE FROM response_cache");
+    }
+    
+    public Set<Long> findBypassedChatIds() {
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT chat_id FROM response_cache_bypass", Long.class));
+    }
+    
+    public void addBypass(Long chatId) {
+        jdbcTemplate.update("INSERT INTO response_cache_bypass (chat_id) VALUES (?) ON CONFLICT DO NOTHING", chatId);
+    }
+    
+    public void removeBypass(Long chatId) {
+        jdbcTemplate.update("DELETE FROM response_cache_bypass WHERE chat_id = ?", chatId);
+    }
+    
+    public record CachedResponse(String response, double distance) {
+    }
+}
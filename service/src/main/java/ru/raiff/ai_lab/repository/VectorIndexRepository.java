@@ -0,0 +1,65 @@
+package ru.raiff.ai_lab.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.raiff.ai_lab.dto.VectorIndexInfo;
+import ru.raiff.ai_lab.model.DistanceMetric;
+import ru.raiff.ai_lab.model.VectorIndexMethod;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DDL векторных индексов vector_store. {@code CREATE/DROP INDEX CONCURRENTLY} нельзя выполнять
+ * внутри транзакции, поэтому методы вызываются только вне {@code @Transactional} (в режиме autocommit).
+ */
+@Repository
+@RequiredArgsConstructor
+public class VectorIndexRepository {
+
+    private static final Pattern DEFINITION = Pattern.compile("USING (hnsw|ivfflat) \\(embedding (\\w+)\\)");
+
+    private static final String LIST_SQL = """
+            SELECT c.relname AS name, pg_get_indexdef(c.oid) AS definition, i.indisvalid AS valid
+            FROM pg_index i
+                     JOIN pg_class c ON c.oid = i.indexrelid
+                     JOIN pg_am am ON am.oid = c.relam
+            WHERE i.indrelid = 'vector_store'::regclass
+              AND am.amname IN ('hnsw', 'ivfflat')
+            ORDER BY c.relname
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<VectorIndexInfo> findAll() {
+        return jdbcTemplate.query(LIST_SQL, (rs, rowNum) -> {
+            String definition = rs.getString("definition");
+            Matcher matcher = DEFINITION.matcher(definition);
+            VectorIndexMethod method = null;
+            DistanceMetric metric = null;
+            if (matcher.find()) {
+                method = VectorIndexMethod.valueOf(matcher.group(1).toUpperCase(Locale.ROOT));
+                metric = DistanceMetric.fromOperatorClass(matcher.group(2));
+            }
+            return new VectorIndexInfo(rs.getString("name"), method, metric, rs.getBoolean("valid"), definition);
+        });
+    }
+
+    public void createConcurrently(String name, VectorIndexMethod method, DistanceMetric metric, String withClause) {
+        String sql = "CREATE INDEX CONCURRENTLY " + name + " ON vector_store USING " + method.name().toLowerCase(Locale.ROOT)
+                + " (embedding " + metric.operatorClass() + ")"
+                + (withClause.isEmpty() ? "" : " WITH (" + withClause + ")");
+        jdbcTemplate.execute(sql);
+    }
+
+    public void dropConcurrently(String name) {
+        jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + name);
+    }
+
+    public void rename(String from, String to) {
+        jdbcTemplate.execute("ALTER INDEX " + from + " RENAME TO " + to);
+    }
+}
\ No newline at end of file
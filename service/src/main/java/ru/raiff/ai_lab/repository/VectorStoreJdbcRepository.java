@@ -0,0 +1,320 @@
+package ru.raiff.ai_lab.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.raiff.ai_lab.dto.VectorSearchOptions;
+import ru.raiff.ai_lab.model.DistanceMetric;
+import ru.raiff.ai_lab.model.PgVector;
+import ru.raiff.ai_lab.model.PgVectorType;
+import ru.raiff.ai_lab.model.VectorStore;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Запросы к vector_store, которые передают эмбеддинги через бинарный {@link PgVector}
+ * вместо текстового литерала и {@code CAST(... AS vector)}. Поиск соседей строится под оператор
+ * выбранной {@link DistanceMetric}, чтобы подходил индекс с тем же классом операторов.
+ */
+@Repository
+@RequiredArgsConstructor
+public class VectorStoreJdbcRepository {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO vector_store (id, content, metadata, embedding, document_id, chunk_hash)
+            VALUES (?, ?, CAST(? AS json), ?, ?, ?)
+            """;
+
+    private static final String RELINK_SQL =
+            "UPDATE vector_store SET document_id = ?, metadata = CAST(? AS json) WHERE id = ?";
+
+    private static final String DELETE_BY_DOCUMENTS_SQL = "DELETE FROM vector_store WHERE document_id = ANY(?) RETURNING id";
+
+    private static final String DELETE_ALL_DOCUMENT_CHUNKS_SQL = "DELETE FROM vector_store WHERE document_id IS NOT NULL RETURNING id";
+
+    private static final String NEAREST_SQL =
+            "SELECT id, content, metadata, embedding FROM vector_store ORDER BY embedding %1$s ? LIMIT ?";
+
+    // фильтр по порогу поверх ORDER BY ... LIMIT: только такой запрос может идти по HNSW/IVFFlat-индексу,
+    // условие "расстояние < порога" в WHERE индекс не использует и перебирает всю таблицу
+    static final String WITHIN_DISTANCE_SQL = """
+            SELECT id, content, metadata, embedding
+            FROM (SELECT id, content, metadata, embedding, embedding %1$s ? AS distance
+                  FROM vector_store
+                  ORDER BY embedding %1$s ?
+                  LIMIT ?) nearest
+            WHERE distance < ?
+            ORDER BY distance
+            """;
+
+    // "+ 0" не даёт планировщику взять HNSW-индекс по vector_cosine_ops, так что перебор точный
+    private static final String EXACT_NEAREST_IDS_SQL =
+            "SELECT id FROM vector_store WHERE embedding IS NOT NULL ORDER BY (embedding <=> ?) + 0 LIMIT ?";
+
+    private static final String STORAGE_BYTES_SQL = """
+            SELECT coalesce(avg(pg_column_size(embedding)), 0)
+                   + pg_relation_size('vector_store_hnsw_index')::float8 / greatest(count(embedding), 1)
+            FROM vector_store
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public void insertBatch(List<VectorStore> vectors) {
+        jdbcTemplate.execute((ConnectionCallback<int[]>) connection -> {
+            PgVector.register(connection);
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+                for (VectorStore vector : vectors) {
+                    ps.setString(1, vector.getId());
+                    ps.setString(2, vector.getContent());
+                    ps.setString(3, vector.getMetadata());
+                    setVector(ps, 4, vector.getEmbedding());
+                    ps.setObject(5, vector.getDocumentId(), Types.INTEGER);
+                    ps.setString(6, vector.getChunkHash());
+                    ps.addBatch();
+                }
+                return ps.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Переносит уже посчитанные чанки к другому документу: меняются только ссылка и метаданные, эмбеддинг остаётся.
+     */
+    public void relinkBatch(List<VectorStore> vectors) {
+        jdbcTemplate.batchUpdate(RELINK_SQL, vectors, vectors.size(), (ps, vector) -> {
+            ps.setInt(1, vector.getDocumentId());
+            ps.setString(2, vector.getMetadata());
+            ps.setString(3, vector.getId());
+        });
+    }
+
+    /**
+     * Удаляет чанки документов и возвращает их id, чтобы вызывающий мог убрать их из индексов.
+     */
+    public List<String> deleteByDocumentIds(List<Integer> documentIds) {
+        if (documentIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(DELETE_BY_DOCUMENTS_SQL);
+            ps.setArray(1, connection.createArrayOf("integer", documentIds.toArray()));
+            return ps;
+        }, (rs, rowNum) -> rs.getString(1));
+    }
+
+    /**
+     * Удаляет все чанки, привязанные к документам; векторы, сохранённые без документа, остаются.
+     */
+    public List<String> deleteAllDocumentChunks() {
+        return jdbcTemplate.query(DELETE_ALL_DOCUMENT_CHUNKS_SQL, (rs, rowNum) -> rs.getString(1));
+    }
+
+    /**
+     * Id чанков документов, сгруппированные по хешу текста. Одинаковые чанки внутри документа дают несколько id на хеш.
+     */
+    public Map<String, Deque<String>> findChunkIdsByHash(List<Integer> documentIds) {
+        Map<String, Deque<String>> result = new HashMap<>();
+        if (documentIds.isEmpty()) {
+            return result;
+        }
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT id, chunk_hash FROM vector_store WHERE document_id = ANY(?) AND chunk_hash IS NOT NULL");
+            ps.setArray(1, connection.createArrayOf("integer", documentIds.toArray()));
+            return ps;
+        }, rs -> {
+            result.computeIfAbsent(rs.getString(2), hash -> new ArrayDeque<>()).add(rs.getString(1));
+        });
+        return result;
+    }
+
+    public List<VectorStore> findNearestNeighbors(float[] embedding, int limit, VectorSearchOptions options) {
+        String sql = NEAREST_SQL.formatted(options.metric().operator());
+        return withSearchSettings(options, Map.of(), () -> query(sql, embedding, ps -> ps.setInt(2, limit)));
+    }
+
+    /**
+     * Соседи ближе {@code distance} среди {@code limit} ближайших по индексу. С HNSW индекс отдаёт не больше
+     * {@code hnsw.ef_search} строк, поэтому для полного набора {@code efSearch} в опциях должен быть не меньше лимита.
+     */
+    public List<VectorStore> findWithinDistance(float[] embedding, double distance, int limit, VectorSearchOptions options) {
+        String sql = WITHIN_DISTANCE_SQL.formatted(options.metric().operator());
+        return withSearchSettings(options, Map.of(), () -> query(sql, embedding, ps -> {
+            setVector(ps, 2, embedding);
+            ps.setInt(3, limit);
+            ps.setDouble(4, distance);
+        }));
+    }
+
+    /**
+     * План запроса ближайших соседей при запрещённом seq scan: если индекс по метрике пригоден,
+     * планировщик обязан его выбрать, иначе в плане останется Seq Scan.
+     */
+    public List<String> explainNearest(float[] embedding, int limit, VectorSearchOptions options) {
+        String sql = "EXPLAIN " + NEAREST_SQL.formatted(options.metric().operator());
+        return withSearchSettings(options, Map.of("enable_seqscan", "off"), () ->
+                jdbcTemplate.execute((ConnectionCallback<List<String>>) connection -> {
+                    PgVector.register(connection);
+                    try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                        setVector(ps, 1, embedding);
+                        ps.setInt(2, limit);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            List<String> plan = new ArrayList<>();
+                            while (rs.next()) {
+                                plan.add(rs.getString(1));
+                            }
+                            return plan;
+                        }
+                    }
+                }));
+    }
+
+    public List<String> findAllIds() {
+        return jdbcTemplate.queryForList("SELECT id FROM vector_store WHERE embedding IS NOT NULL", String.class);
+    }
+
+    public Map<String, float[]> findEmbeddings(List<String> ids) {
+        return jdbcTemplate.execute((ConnectionCallback<Map<String, float[]>>) connection -> {
+            PgVector.register(connection);
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT id, embedding FROM vector_store WHERE id = ANY(?) AND embedding IS NOT NULL")) {
+                ps.setArray(1, connection.createArrayOf("varchar", ids.toArray()));
+                try (ResultSet rs = ps.executeQuery()) {
+                    Map<String, float[]> result = new HashMap<>();
+                    while (rs.next()) {
+                        result.put(rs.getString(1), PgVectorType.toArray(rs.getObject(2)));
+                    }
+                    return result;
+                }
+            }
+        });
+    }
+
+    public List<String> findExactNearestIds(float[] embedding, int limit) {
+        return jdbcTemplate.execute((ConnectionCallback<List<String>>) connection -> {
+            PgVector.register(connection);
+            try (PreparedStatement ps = connection.prepareStatement(EXACT_NEAREST_IDS_SQL)) {
+                setVector(ps, 1, embedding);
+                ps.setInt(2, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    List<String> result = new ArrayList<>();
+                    while (rs.next()) {
+                        result.add(rs.getString(1));
+                    }
+                    return result;
+                }
+            }
+        });
+    }
+
+    public Map<String, float[]> findRandomEmbeddings(int limit) {
+        return jdbcTemplate.execute((ConnectionCallback<Map<String, float[]>>) connection -> {
+            PgVector.register(connection);
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT id, embedding FROM vector_store WHERE embedding IS NOT NULL ORDER BY random() LIMIT ?")) {
+                ps.setInt(1, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    Map<String, float[]> result = new HashMap<>();
+                    while (rs.next()) {
+                        result.put(rs.getString(1), PgVectorType.toArray(rs.getObject(2)));
+                    }
+                    return result;
+                }
+            }
+        });
+    }
+
+    public double averageStorageBytesPerVector() {
+        Double bytes = jdbcTemplate.queryForObject(STORAGE_BYTES_SQL, Double.class);
+        return bytes != null ? bytes : 0;
+    }
+
+    private List<VectorStore> query(String sql, float[] embedding, ParameterBinder binder) {
+        return jdbcTemplate.execute((ConnectionCallback<List<VectorStore>>) connection -> {
+            PgVector.register(connection);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                setVector(ps, 1, embedding);
+                binder.bind(ps);
+                try (ResultSet rs = ps.executeQuery()) {
+                    List<VectorStore> result = new ArrayList<>();
+                    while (rs.next()) {
+                        result.add(mapRow(rs));
+                    }
+                    return result;
+                }
+            }
+        });
+    }
+
+    /**
+     * Выполняет запрос с настройками планировщика, выставленными локально для транзакции. Если вызывающий код
+     * уже в транзакции, запрос выполняется в ней, а прежние значения восстанавливаются сразу после него —
+     * иначе настройки действовали бы на все последующие запросы той транзакции.
+     */
+    private <T> T withSearchSettings(VectorSearchOptions options, Map<String, String> extra, Supplier<T> action) {
+        Map<String, String> settings = new LinkedHashMap<>(extra);
+        if (options.efSearch() != null) {
+            settings.put("hnsw.ef_search", options.efSearch().toString());
+        }
+        if (options.probes() != null) {
+            settings.put("ivfflat.probes", options.probes().toString());
+        }
+        if (settings.isEmpty()) {
+            return action.get();
+        }
+        return transactionTemplate.execute(status -> {
+            Map<String, String> previous = new LinkedHashMap<>();
+            settings.forEach((name, value) -> {
+                previous.put(name, jdbcTemplate.queryForObject("SELECT current_setting(?, true)", String.class, name));
+                jdbcTemplate.queryForObject("SELECT set_config(?, ?, true)", String.class, name, value);
+            });
+            // при ошибке запроса транзакция всё равно откатывается, восстанавливать нечего
+            T result = action.get();
+            previous.forEach((name, value) -> {
+                if (value != null) {
+                    jdbcTemplate.queryForObject("SELECT set_config(?, ?, true)", String.class, name, value);
+                } else {
+                    // параметр расширения ещё не был определён в сессии; имя — константа этого класса, не ввод
+                    jdbcTemplate.execute("SET LOCAL " + name + " TO DEFAULT");
+                }
+            });
+            return result;
+        });
+    }
+
+    private static void setVector(PreparedStatement ps, int index, float[] embedding) throws SQLException {
+        if (embedding == null) {
+            ps.setNull(index, Types.OTHER);
+        } else {
+            ps.setObject(index, new PgVector(embedding));
+        }
+    }
+
+    private static VectorStore mapRow(ResultSet rs) throws SQLException {
+        VectorStore vector = new VectorStore();
+        vector.setId(rs.getString("id"));
+        vector.setContent(rs.getString("content"));
+        vector.setMetadata(rs.getString("metadata"));
+        vector.setEmbedding(PgVectorType.toArray(rs.getObject("embedding")));
+        return vector;
+    }
+
+    @FunctionalInterface
+    private interface ParameterBinder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+}
@@ -12,14 +12,6 @@ import java.util.List;
 @Repository
 public interface VectorStoreRepository extends JpaRepository<VectorStore, String> {
     
-    @Query(value = "SELECT * FROM vector_store ORDER BY embedding <-> CAST(:embedding AS vector) LIMIT :limit", 
-           nativeQuery = true)
-    List<VectorStore> findNearestNeighbors(@Param("embedding") String embedding, @Param("limit") int limit);
-    
-    @Query(value = "SELECT * FROM vector_store WHERE embedding <-> CAST(:embedding AS vector) < :distance", 
-           nativeQuery = true)
-    List<VectorStore> findWithinDistance(@Param("embedding") String embedding, @Param("distance") double distance);
-    
     @Query("SELECT vs FROM VectorStore vs WHERE vs.content LIKE %:keyword%")
     List<VectorStore> findByContentContaining(@Param("keyword") String keyword);
     
@@ -3,26 +3,49 @@ package ru.raiff.ai_lab.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class AIService {
     
+    private static final int REPLAY_CHUNK_CHARS = 32;
+    
     private final ChatClient chatClient;
+    private final ResponseCacheService responseCacheService;
+    private final CompletionCoalescer completionCoalescer;
+    private final LlmMetrics llmMetrics;
     
     public String generateResponse(String prompt) {
+        return generateResponse(LlmMetrics.UNKNOWN_ENDPOINT, null, prompt);
+    }
+    
+    /**
+     * {@code endpoint} — имя вызывающего endpoint'а для тегов метрик, как {@link LlmMetrics#ENDPOINT} у потоков.
+     */
+    public String generateResponse(String endpoint, Long chatId, String prompt) {
         log.info("Generating AI response for prompt: {}", prompt);
         
+        Optional<String> cached = responseCacheService.lookup(chatId, prompt, null);
+        if (cached.isPresent()) {
+            log.info("AI response served from semantic cache");
+            return cached.get();
+        }
+        
         try {
-            String response = chatClient.prompt()
-                    .user(prompt)
-                    .call()
-                    .content();
+            String response = completionCoalescer.call(prompt, null, () -> complete(endpoint, prompt));
             
             log.info("AI response generated successfully");
+            responseCacheService.store(chatId, prompt, null, response);
             return response;
         } catch (Exception e) {
             log.error("Error generating AI response", e);
@@ -31,19 +54,27 @@ public class AIService {
     }
     
     public String generateResponseWithContext(String prompt, String context) {
+        return generateResponseWithContext(LlmMetrics.UNKNOWN_ENDPOINT, null, prompt, context);
+    }
+    
+    public String generateResponseWithContext(String endpoint, Long chatId, String prompt, String context) {
         log.info("Generating AI response with context");
         
+        String fullPrompt = fullPrompt(prompt, context);
+        
+        // в кеш идёт вопрос отдельно от истории, см. ResponseCacheService
+        Optional<String> cached = responseCacheService.lookup(chatId, prompt, context);
+        if (cached.isPresent()) {
+            log.info("AI response with context served from semantic cache");
+            return cached.get();
+        }
+        
         try {
-            String fullPrompt = context != null ? 
-                    "Context: " + context + "\n\nUser: " + prompt : 
-                    prompt;
-            
-            String response = chatClient.prompt()
-                    .user(fullPrompt)
-                    .call()
-                    .content();
+            String response = completionCoalescer.call(prompt, responseCacheService.contextKey(prompt, context),
+                    () -> complete(endpoint, fullPrompt));
             
             log.info("AI response with context generated successfully");
+            responseCacheService.store(chatId, prompt, context, response);
             return response;
         } catch (Exception e) {
             log.error("Error generating AI response with context", e);
@@ -51,35 +82,120 @@ public class AIService {
         }
     }
     
-    public Flux<String> streamResponse(String prompt) {
-        log.info("Streaming AI response for prompt: {}", prompt);
-        
+    /**
+     * Идёт ли уже генерация того же вопроса с той же историей: запрос, который к ней присоединится,
+     * не должен занимать слот модели. {@code context} может быть и без последней строки с вопросом.
+     */
+    public boolean isGenerating(String prompt, String context) {
+        return completionCoalescer.isInFlight(prompt, responseCacheService.contextKey(prompt, context));
+    }
+    
+    /**
+     * Ответ идущей генерации того же вопроса с той же историей, без обращения к модели; пусто, если такой нет —
+     * тогда ответ генерируется обычным путём, со слотом модели.
+     */
+    public Optional<String> joinResponse(String prompt, String context) {
         try {
-            return chatClient.prompt()
-                    .user(prompt)
-                    .stream()
-                    .content();
+            return completionCoalescer.join(prompt, responseCacheService.contextKey(prompt, context));
         } catch (Exception e) {
-            log.error("Error streaming AI response", e);
-            return Flux.just("Извините, произошла ошибка при генерации ответа: " + e.getMessage());
+            log.error("Error joining in-flight AI response", e);
+            return Optional.of("Извините, произошла ошибка при генерации ответа: " + e.getMessage());
         }
     }
     
+    /**
+     * Потоковый вариант {@link #joinResponse}.
+     */
+    public Optional<Flux<String>> joinStream(String prompt, String context) {
+        return completionCoalescer.joinStream(prompt, responseCacheService.contextKey(prompt, context));
+    }
+    
+    public Flux<String> streamResponse(String prompt) {
+        return streamResponse(null, prompt);
+    }
+    
+    public Flux<String> streamResponse(Long chatId, String prompt) {
+        log.info("Streaming AI response for prompt: {}", prompt);
+        return cachedOrStream(chatId, prompt, null);
+    }
+    
     public Flux<String> streamResponseWithContext(String prompt, String context) {
+        return streamResponseWithContext(null, prompt, context);
+    }
+    
+    public Flux<String> streamResponseWithContext(Long chatId, String prompt, String context) {
         log.info("Streaming AI response with context");
         
+        return cachedOrStream(chatId, prompt, context);
+    }
+    
+    private Flux<String> cachedOrStream(Long chatId, String prompt, String context) {
+        if (!responseCacheService.isActiveFor(chatId)) {
+            return streamFromModel(chatId, prompt, context);
+        }
+        // поиск в кеше блокирующий (эмбеддинг + запрос в БД), поэтому уводим его с потоков reactor
+        return Mono.fromCallable(() -> responseCacheService.lookup(chatId, prompt, context))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(cached -> cached
+                        .map(response -> {
+                            log.info("Replaying AI response from semantic cache");
+                            return replay(response);
+                        })
+                        .orElseGet(() -> streamFromModel(chatId, prompt, context)));
+    }
+    
+    // одинаковые одновременные запросы делят одну генерацию, кеш пишет только она
+    private Flux<String> streamFromModel(Long chatId, String prompt, String context) {
+        String fullPrompt = fullPrompt(prompt, context);
+        return completionCoalescer.stream(prompt, responseCacheService.contextKey(prompt, context),
+                () -> generateStream(chatId, prompt, context, fullPrompt));
+    }
+    
+    private Flux<String> generateStream(Long chatId, String prompt, String context, String fullPrompt) {
         try {
-            String fullPrompt = context != null ? 
-                    "Context: " + context + "\n\nUser: " + prompt : 
-                    prompt;
-            
-            return chatClient.prompt()
+            Flux<String> tokens = llmMetrics.instrumentGeneration(chatClient.prompt()
                     .user(fullPrompt)
                     .stream()
-                    .content();
+                    .chatResponse());
+            if (!responseCacheService.isActiveFor(chatId)) {
+                return tokens;
+            }
+            return Flux.defer(() -> {
+                StringBuilder fullResponse = new StringBuilder();
+                return tokens
+                        .doOnNext(fullResponse::append)
+                        .doOnComplete(() -> Mono.fromRunnable(
+                                        () -> responseCacheService.store(chatId, prompt, context, fullResponse.toString()))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .subscribe());
+            });
         } catch (Exception e) {
-            log.error("Error streaming AI response with context", e);
+            log.error("Error streaming AI response", e);
             return Flux.just("Извините, произошла ошибка при генерации ответа: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+    
+    private static String fullPrompt(String prompt, String context) {
+        return context != null ?
+                "Context: " + context + "\n\nUser: " + prompt :
+                prompt;
+    }
+    
+    private String complete(String endpoint, String prompt) {
+        long startedAt = System.nanoTime();
+        ChatResponse response = chatClient.prompt()
+                .user(prompt)
+                .call()
+                .chatResponse();
+        llmMetrics.recordCompletion(endpoint, response, System.nanoTime() - startedAt);
+        return response != null && response.getResult() != null ? response.getResult().getOutput().getText() : null;
+    }
+    
+    private Flux<String> replay(String response) {
+        List<String> chunks = new ArrayList<>(response.length() / REPLAY_CHUNK_CHARS + 1);
+        for (int start = 0; start < response.length(); start += REPLAY_CHUNK_CHARS) {
+            chunks.add(response.substring(start, Math.min(response.length(), start + REPLAY_CHUNK_CHARS)));
+        }
+        return Flux.fromIterable(chunks);
+    }
+}
@@ -0,0 +1,29 @@
+package ru.raiff.ai_lab.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Отложенные действия над in-process состоянием (индексы, кеши), которые должны увидеть только закоммиченные данные.
+ */
+final class AfterCommit {
+    
+    private AfterCommit() {
+    }
+    
+    /**
+     * Выполняет действие после коммита текущей транзакции, а вне транзакции — сразу.
+     */
+    static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,95 @@
+package ru.raiff.ai_lab.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link EmbeddingModel}, который перед вызовом модели проверяет {@link EmbeddingCache}
+ * и отправляет в модель только тексты, которых нет в кеше.
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+    
+    private final EmbeddingModel delegate;
+    private final EmbeddingCache cache;
+    private final String defaultModel;
+    
+    public CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCache cache, String defaultModel) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.defaultModel = defaultModel;
+    }
+    
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        String model = modelName(request.getOptions());
+        
+        List<String> hashes = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            hashes.add(HashUtils.sha256(text));
+        }
+        Map<String, float[]> cached = cache.getAll(model, hashes);
+        
+        // уникальные тексты, которых нет в кеше, в порядке первого появления
+        Map<String, String> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (!cached.containsKey(hashes.get(i))) {
+                missing.putIfAbsent(hashes.get(i), texts.get(i));
+            }
+        }
+        
+        Map<String, float[]> computed = new HashMap<>();
+        if (!missing.isEmpty()) {
+            log.debug("Embedding cache: {} of {} texts sent to model {}", missing.size(), texts.size(), model);
+            EmbeddingResponse response = delegate.call(
+                    new EmbeddingRequest(new ArrayList<>(missing.values()), request.getOptions()));
+            List<String> missingHashes = new ArrayList<>(missing.keySet());
+            for (Embedding embedding : response.getResults()) {
+                computed.put(missingHashes.get(embedding.getIndex()), embedding.getOutput());
+            }
+            cache.putAll(model, computed);
+        }
+        
+        List<Embedding> results = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            float[] output = cached.get(hashes.get(i));
+            if (output == null) {
+                output = computed.get(hashes.get(i));
+            }
+            if (output == null) {
+                throw new RuntimeException("Embedding model returned no vector for input " + i);
+            }
+            results.add(new Embedding(output, i));
+        }
+        return new EmbeddingResponse(results);
+    }
+    
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+    
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+    
+    private String modelName(EmbeddingOptions options) {
+        if (options != null && options.getModel() != null) {
+            return options.getModel();
+        }
+        return defaultModel;
+    }
+}
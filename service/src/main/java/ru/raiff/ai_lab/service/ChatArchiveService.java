@@ -0,0 +1,258 @@
+package ru.raiff.ai_lab.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.Zstd;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.raiff.ai_lab.dto.ArchivedChat;
+import ru.raiff.ai_lab.dto.ArchivedChatEntry;
+import ru.raiff.ai_lab.repository.ChatArchiveRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Холодный архив простаивающих чатов. Раз в {@code interval} чаты без новых реплик дольше {@code idle-after}
+ * переносятся из chat_entry в chat_archive: все реплики чата — один JSON-блок, сжатый zstd. В горячих
+ * секциях chat_entry и их индексах остаются только живые чаты. Архивный чат возвращается при первом
+ * обращении ({@link #rehydrate}) с прежними id и временем реплик и дальше живёт как обычный.
+ * <p>
+ * Рядом с блоком хранится поисковый вектор всех реплик чата: полнотекстовый поиск находит архивный чат целиком,
+ * без фрагментов, пока его не откроют.
+ */
+@Service
+@Slf4j
+public class ChatArchiveService {
+    
+    static final String CODEC = "zstd-json";
+    
+    private static final int PREVIEW_LENGTH = 500;
+    private static final int MAX_REHYDRATE_ATTEMPTS = 3;
+    private static final Comparator<ArchivedChatEntry> CHRONOLOGICAL =
+            Comparator.comparing(ArchivedChatEntry::createdAt).thenComparing(ArchivedChatEntry::id);
+    
+    private final ChatArchiveRepository chatArchiveRepository;
+    private final ChatEntryPartitionService chatEntryPartitionService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Counter archivedChats;
+    private final Counter rehydratedChats;
+    private final DistributionSummary compressionRatio;
+    private final boolean enabled;
+    private final Duration idleAfter;
+    private final int batchSize;
+    private final int compressionLevel;
+    
+    public ChatArchiveService(ChatArchiveRepository chatArchiveRepository,
+                              ChatEntryPartitionService chatEntryPartitionService,
+                              TransactionTemplate transactionTemplate,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.chat-archive.enabled:true}") boolean enabled,
+                              @Value("${app.chat-archive.idle-after:P30D}") Duration idleAfter,
+                              @Value("${app.chat-archive.batch-size:100}") int batchSize,
+                              @Value("${app.chat-archive.compression-level:9}") int compressionLevel) {
+        this.chatArchiveRepository = chatArchiveRepository;
+        this.chatEntryPartitionService = chatEntryPartitionService;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.archivedChats = Counter.builder("chat.archive.chats")
+                .description("Chats moved between chat_entry and the cold archive")
+                .tag("operation", "archive")
+                .register(meterRegistry);
+        this.rehydratedChats = Counter.builder("chat.archive.chats")
+                .description("Chats moved between chat_entry and the cold archive")
+                .tag("operation", "rehydrate")
+                .register(meterRegistry);
+        this.compressionRatio = DistributionSummary.builder("chat.archive.compression.ratio")
+                .description("Raw to compressed size of an archived chat")
+                .register(meterRegistry);
+        this.enabled = enabled;
+        this.idleAfter = idleAfter;
+        this.batchSize = batchSize;
+        this.compressionLevel = compressionLevel;
+    }
+    
+    @Scheduled(fixedDelayString = "${app.chat-archive.interval:PT1H}",
+            initialDelayString = "${app.chat-archive.interval:PT1H}")
+    public void archiveIdleChats() {
+        if (!enabled) {
+            return;
+        }
+        indexArchivesWithoutSearchVector();
+        LocalDateTime idleSince = LocalDateTime.now().minus(idleAfter);
+        long startedAt = System.currentTimeMillis();
+        int archived = 0;
+        List<Long> chatIds;
+        boolean progress;
+        do {
+            chatIds = chatArchiveRepository.findIdleChatIds(idleSince, batchSize);
+            progress = false;
+            for (Long chatId : chatIds) {
+                try {
+                    if (Boolean.TRUE.equals(transactionTemplate.execute(status -> archive(chatId, idleSince)))) {
+                        archived++;
+                        progress = true;
+                    }
+                } catch (Exception e) {
+                    log.warn("Could not archive chat {}", chatId, e);
+                }
+            }
+            // без продвижения следующая пачка была бы той же самой
+        } while (progress && chatIds.size() == batchSize);
+        if (archived > 0) {
+            log.info("Archived {} chats idle since {} in {} ms", archived, idleSince, System.currentTimeMillis() - startedAt);
+        }
+    }
+    
+    /**
+     * Возвращает архивный чат в chat_entry. Без архива это один поиск по первичному ключу chat_archive.
+     * Вызывается в транзакции вызывающего, если она есть: вернувшиеся реплики сразу видны его запросам.
+     */
+    public boolean rehydrate(Long chatId) {
+        if (chatId == null) {
+            return false;
+        }
+        for (int attempt = 0; attempt < MAX_REHYDRATE_ATTEMPTS; attempt++) {
+            Optional<ArchivedChat> archive = chatArchiveRepository.findArchive(chatId);
+            if (archive.isEmpty()) {
+                return false;
+            }
+            List<ArchivedChatEntry> entries = decode(archive.get());
+            // секции создаются отдельной транзакцией до возврата: DDL не должен держать блокировку chat_entry
+            entries.stream()
+                    .map(entry -> YearMonth.from(entry.createdAt()))
+                    .distinct()
+                    .forEach(chatEntryPartitionService::ensurePartition);
+            Boolean restored = transactionTemplate.execute(status -> {
+                chatArchiveRepository.lockForRehydrate(chatId);
+                if (!chatArchiveRepository.deleteArchive(chatId, archive.get().archivedAt())) {
+                    return false;
+                }
+                chatArchiveRepository.restoreEntries(chatId, entries);
+                return true;
+            });
+            if (Boolean.TRUE.equals(restored)) {
+                rehydratedChats.increment();
+                log.info("Rehydrated chat {} with {} entries from archive", chatId, entries.size());
+                return true;
+            }
+            // архив успели поднять параллельно или дополнить — читаем заново
+        }
+        log.warn("Could not rehydrate chat {}: archive keeps changing", chatId);
+        return false;
+    }
+    
+    public long archivedEntryCount(Long chatId) {
+        return chatArchiveRepository.archivedEntryCount(chatId);
+    }
+    
+    public void delete(Long chatId) {
+        chatArchiveRepository.deleteArchive(chatId);
+    }
+    
+    private boolean archive(long chatId, LocalDateTime idleSince) {
+        if (!chatArchiveRepository.lockForArchive(chatId)) {
+            return false;
+        }
+        // пока ждали блокировку, в чат могли написать
+        Optional<LocalDateTime> lastActivity = chatArchiveRepository.findLastActivity(chatId);
+        if (lastActivity.isEmpty() || !lastActivity.get().isBefore(idleSince)) {
+            return false;
+        }
+        List<ArchivedChatEntry> live = chatArchiveRepository.findEntries(chatId);
+        List<ArchivedChatEntry> entries = new ArrayList<>(live);
+        // архив уже есть, если в архивный чат написали, не открывая его: блоки сливаются
+        chatArchiveRepository.findArchive(chatId).ifPresent(previous -> entries.addAll(decode(previous)));
+        entries.sort(CHRONOLOGICAL);
+        
+        byte[] raw = encode(entries);
+        byte[] payload = Zstd.compress(raw, compressionLevel);
+        ArchivedChatEntry last = entries.get(entries.size() - 1);
+        String preview = last.content() != null && last.content().length() > PREVIEW_LENGTH ?
+                last.content().substring(0, PREVIEW_LENGTH) : last.content();
+        chatArchiveRepository.saveArchive(new ArchivedChat(chatId, entries.size(), preview, last.createdAt(), CODEC,
+                raw.length, payload, LocalDateTime.now().truncatedTo(ChronoUnit.MICROS)));
+        updateSearchVector(chatId, entries);
+        chatArchiveRepository.deleteEntries(chatId, live.stream().map(ArchivedChatEntry::id).toList());
+        
+        archivedChats.increment();
+        compressionRatio.record((double) raw.length / Math.max(payload.length, 1));
+        log.debug("Archived chat {}: {} entries, {} -> {} bytes", chatId, entries.size(), raw.length, payload.length);
+        return true;
+    }
+    
+    /**
+     * Архивы, сохранённые до появления поискового вектора, индексируются пачками при проходе архивации.
+     */
+    private void indexArchivesWithoutSearchVector() {
+        int indexed = 0;
+        List<Long> chatIds;
+        do {
+            chatIds = chatArchiveRepository.findChatIdsWithoutSearchVector(batchSize);
+            for (Long chatId : chatIds) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> chatArchiveRepository.findArchive(chatId)
+                            .ifPresent(archive -> updateSearchVector(chatId, decode(archive))));
+                    indexed++;
+                } catch (Exception e) {
+                    log.warn("Could not index archived chat {} for search", chatId, e);
+                    return;
+                }
+            }
+        } while (chatIds.size() == batchSize);
+        if (indexed > 0) {
+            log.info("Indexed {} archived chats for search", indexed);
+        }
+    }
+    
+    private void updateSearchVector(long chatId, List<ArchivedChatEntry> entries) {
+        StringBuilder russian = new StringBuilder();
+        StringBuilder english = new StringBuilder();
+        StringBuilder other = new StringBuilder();
+        for (ArchivedChatEntry entry : entries) {
+            if (entry.content() == null) {
+                continue;
+            }
+            StringBuilder target = "ru".equals(entry.language()) ? russian : "en".equals(entry.language()) ? english : other;
+            target.append(entry.content()).append('\n');
+        }
+        chatArchiveRepository.updateSearchVector(chatId, russian.toString(), english.toString(), other.toString());
+    }
+    
+    private byte[] encode(List<ArchivedChatEntry> entries) {
+        try {
+            return objectMapper.writeValueAsBytes(entries);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error encoding archived chat", e);
+        }
+    }
+    
+    private List<ArchivedChatEntry> decode(ArchivedChat archive) {
+        if (!CODEC.equals(archive.codec())) {
+            throw new IllegalStateException("Unsupported archive codec " + archive.codec() + " for chat " + archive.chatId());
+        }
+        try {
+            byte[] raw = Zstd.decompress(archive.payload(), archive.rawSize());
+            return objectMapper.readValue(raw, new TypeReference<>() {
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error decoding archived chat " + archive.chatId(), e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package ru.raiff.ai_lab.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import ru.raiff.ai_lab.dto.ChatTurn;
+import ru.raiff.ai_lab.model.ChatEntry;
+import ru.raiff.ai_lab.repository.ChatEntryRepository;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Скользящее окно последних реплик для активных чатов: кольцевой буфер на чат в памяти,
+ * простаивающие чаты вытесняются. При промахе окно заполняется запросом последних N строк,
+ * так что подготовка промпта не зависит от длины истории.
+ * <p>
+ * Контекст набирается от новых реплик к старым в бюджет {@code max-tokens}; всё, что старше, заменяет
+ * накопительный пересказ из {@link ConversationSummaryService}. Размер промпта ограничен, как бы ни рос чат.
+ * <p>
+ * Окно чата, ушедшего в холодный архив, загружается после возврата чата из архива ({@link ChatArchiveService}).
+ */
+@Service
+@Slf4j
+public class ChatContextService {
+    
+    private final ChatEntryRepository chatEntryRepository;
+    private final ConversationSummaryService conversationSummaryService;
+    private final ChatArchiveService chatArchiveService;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final int windowSize;
+    private final int maxTokens;
+    private final int maxTurnTokens;
+    private final Cache<Long, ContextWindow> windows;
+    
+    public ChatContextService(ChatEntryRepository chatEntryRepository,
+                              ConversationSummaryService conversationSummaryService,
+                              ChatArchiveService chatArchiveService,
+                              TokenCountEstimator tokenCountEstimator,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.chat-context.window-size:20}") int windowSize,
+                              @Value("${app.chat-context.max-tokens:1500}") int maxTokens,
+                              @Value("${app.chat-context.max-turn-tokens:500}") int maxTurnTokens,
+                              @Value("${app.chat-context.idle-timeout:PT30M}") Duration idleTimeout,
+                              @Value("${app.chat-context.max-chats:10000}") long maxChats) {
+        this.chatEntryRepository = chatEntryRepository;
+        this.conversationSummaryService = conversationSummaryService;
+        this.chatArchiveService = chatArchiveService;
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.windowSize = windowSize;
+        this.maxTokens = maxTokens;
+        this.maxTurnTokens = Math.min(maxTurnTokens, maxTokens);
+        this.windows = Caffeine.newBuilder()
+                .expireAfterAccess(idleTimeout)
+                .maximumSize(maxChats)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, windows, "chat.context.windows");
+    }
+    
+    /**
+     * Последние реплики чата в хронологическом порядке.
+     */
+    public List<ChatTurn> recentTurns(Long chatId) {
+        return window(chatId).snapshot().stream()
+                .map(WindowTurn::turn)
+                .toList();
+    }
+    
+    /**
+     * Контекст в бюджет {@code max-tokens}: реплики от новых к старым, каждая не длиннее {@code max-turn-tokens},
+     * а перед ними — пересказ вытесненной части, если она есть. Устаревший пересказ обновляется в фоне.
+     */
+    public String buildContext(Long chatId) {
+        List<WindowTurn> turns = window(chatId).snapshot();
+        Optional<ConversationSummaryService.RollingSummary> summary = conversationSummaryService.cached(chatId)
+                .filter(s -> !s.text().isEmpty());
+        int budget = maxTokens - summary.map(s -> tokenCountEstimator.estimate(s.text())).orElse(0);
+        
+        Deque<String> lines = new ArrayDeque<>();
+        int used = 0;
+        Long oldestIncludedId = null;
+        boolean truncated = false;
+        for (int i = turns.size() - 1; i >= 0; i--) {
+            WindowTurn turn = turns.get(i);
+            int tokens = turn.tokens();
+            // самую свежую реплику берём всегда, даже если пересказ съел почти весь бюджет
+            if (!lines.isEmpty() && used + tokens > budget) {
+                truncated = true;
+                break;
+            }
+            lines.addFirst(turn.line());
+            used += tokens;
+            oldestIncludedId = turn.turn().id();
+        }
+        
+        // окно заполнено целиком — значит, в БД могут быть реплики старше него
+        boolean olderHistory = truncated || turns.size() >= windowSize;
+        StringBuilder context = new StringBuilder();
+        if (olderHistory && oldestIncludedId != null) {
+            conversationSummaryService.refreshIfStale(chatId, oldestIncludedId);
+            summary.ifPresent(s -> context.append("SUMMARY: ").append(s.text()).append("\n"));
+        }
+        lines.forEach(context::append);
+        return context.toString();
+    }
+    
+    /**
+     * История перед текущим вопросом: контекст из {@link #buildContext} без последней строки — только что
+     * сохранённой реплики пользователя с {@code prompt}. Пустая история — {@code null}: ответ на такой вопрос
+     * от чата не зависит.
+     */
+    public String historyBefore(String context, String prompt) {
+        if (context == null) {
+            return null;
+        }
+        String current = line(ChatEntry.Role.USER, prompt);
+        String history = context.endsWith(current) ? context.substring(0, context.length() - current.length()) : context;
+        return history.isEmpty() ? null : history;
+    }
+    
+    /**
+     * Дописывает сохранённую реплику в окно, если чат сейчас в памяти; иначе окно загрузится при следующем запросе.
+     * compute по ключу сериализуется с загрузкой окна, а повтор уже загруженной реплики отбрасывается по id
+     * (последняя реплика с тем же id заменяется — так в окно попадает дописанный черновик ответа).
+     */
+    public void append(Long chatId, ChatTurn turn) {
+        windows.asMap().computeIfPresent(chatId, (id, window) -> {
+            window.add(render(turn));
+            return window;
+        });
+    }
+    
+    public void evict(Long chatId) {
+        windows.invalidate(chatId);
+        conversationSummaryService.evict(chatId);
+    }
+    
+    public void evictAll() {
+        windows.invalidateAll();
+        conversationSummaryService.evictAll();
+    }
+    
+    /**
+     * Архивный чат поднимается до загрузки окна, а не внутри неё: функция загрузки выполняется под блокировкой
+     * ключа в кеше, а возврат из архива — DDL секций и вставка всех реплик на отдельных соединениях.
+     */
+    private ContextWindow window(Long chatId) {
+        ContextWindow window = windows.getIfPresent(chatId);
+        if (window != null) {
+            return window;
+        }
+        chatArchiveService.rehydrate(chatId);
+        return windows.get(chatId, this::load);
+    }
+    
+    private ContextWindow load(Long chatId) {
+        List<ChatTurn> latest = chatEntryRepository.findLatestTurns(chatId, Limit.of(windowSize));
+        log.debug("Loaded {} latest turns for chat {}", latest.size(), chatId);
+        ContextWindow window = new ContextWindow(windowSize);
+        for (int i = latest.size() - 1; i >= 0; i--) {
+            window.add(render(latest.get(i)));
+        }
+        return window;
+    }
+    
+    /**
+     * Строка реплики для контекста считается один раз при попадании в окно: обрезка и подсчёт токенов
+     * JTokkit не повторяются на каждом запросе.
+     */
+    private WindowTurn render(ChatTurn turn) {
+        String line = line(turn.role(), turn.content());
+        return new WindowTurn(turn, line, tokenCountEstimator.estimate(line));
+    }
+    
+    private String line(ChatEntry.Role role, String content) {
+        return role.name() + ": " + TokenBudget.clip(tokenCountEstimator, content, maxTurnTokens) + "\n";
+    }
+    
+    private record WindowTurn(ChatTurn turn, String line, int tokens) {
+    }
+    
+    private static final class ContextWindow {
+        
+        private final WindowTurn[] buffer;
+        private int next;
+        private int size;
+        
+        ContextWindow(int capacity) {
+            this.buffer = new WindowTurn[Math.max(capacity, 1)];
+        }
+        
+        synchronized void add(WindowTurn turn) {
+            Long id = turn.turn().id();
+            if (size > 0 && id != null) {
+                Long lastId = buffer[(next - 1 + buffer.length) % buffer.length].turn().id();
+                if (lastId != null && id < lastId) {
+                    return;
+                }
+                if (id.equals(lastId)) {
+                    // та же реплика с новым текстом: черновик ответа, дописанный до конца
+                    buffer[(next - 1 + buffer.length) % buffer.length] = turn;
+                    return;
+                }
+            }
+            buffer[next] = turn;
+            next = (next + 1) % buffer.length;
+            size = Math.min(size + 1, buffer.length);
+        }
+        
+        synchronized List<WindowTurn> snapshot() {
+            List<WindowTurn> turns = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                turns.add(buffer[(next - size + i + buffer.length) % buffer.length]);
+            }
+            return turns;
+        }
+    }
+}
\ No newline at end of file
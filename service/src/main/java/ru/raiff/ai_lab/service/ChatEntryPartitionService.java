@@ -0,0 +1,91 @@
+package ru.raiff.ai_lab.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.raiff.ai_lab.repository.ChatEntryPartitionRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Map;
+
+/**
+ * Месячные секции chat_entry. При старте и раз в сутки создаются секции на текущий месяц и
+ * {@code partitions-ahead} следующих, а секции месяцев старше порога архивации, опустевшие после переноса
+ * чатов в архив, удаляются — в каталоге и в планах запросов по chat_id остаются только живые месяцы.
+ * DDL идёт в собственной транзакции, чтобы блокировка chat_entry не жила дольше самой операции.
+ */
+@Service
+@Slf4j
+public class ChatEntryPartitionService {
+    
+    private final ChatEntryPartitionRepository partitionRepository;
+    private final TransactionTemplate ddlTransaction;
+    private final int partitionsAhead;
+    private final Duration idleAfter;
+    
+    public ChatEntryPartitionService(ChatEntryPartitionRepository partitionRepository,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${app.chat-entry.partitions-ahead:2}") int partitionsAhead,
+                                     @Value("${app.chat-archive.idle-after:P30D}") Duration idleAfter) {
+        this.partitionRepository = partitionRepository;
+        this.ddlTransaction = new TransactionTemplate(transactionManager);
+        this.ddlTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.partitionsAhead = partitionsAhead;
+        this.idleAfter = idleAfter;
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+    
+    @Scheduled(cron = "${app.chat-entry.partition-cron:0 15 3 * * *}")
+    public void maintain() {
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= partitionsAhead; i++) {
+            try {
+                ensurePartition(current.plusMonths(i));
+            } catch (Exception e) {
+                log.warn("Could not create chat_entry partition for {}: {}", current.plusMonths(i), e.getMessage());
+            }
+        }
+        dropEmptyPartitions();
+    }
+    
+    /**
+     * Создаёт секцию месяца, если её нет. Нужна перед вставкой реплик с прошлым временем — при возврате чата из архива.
+     */
+    public void ensurePartition(YearMonth month) {
+        if (partitionRepository.exists(month)) {
+            return;
+        }
+        String name = ddlTransaction.execute(status -> partitionRepository.create(month));
+        log.info("Created chat_entry partition {}", name);
+    }
+    
+    private void dropEmptyPartitions() {
+        // секция удаляется, только когда весь её месяц старше порога: в ней могли остаться лишь реплики живых чатов
+        YearMonth oldestKept = YearMonth.from(LocalDateTime.now().minus(idleAfter));
+        for (Map.Entry<YearMonth, String> partition : partitionRepository.findAll().entrySet()) {
+            if (!partition.getKey().isBefore(oldestKept)) {
+                break;
+            }
+            try {
+                Boolean dropped = ddlTransaction.execute(status -> partitionRepository.dropIfEmpty(partition.getValue()));
+                if (Boolean.TRUE.equals(dropped)) {
+                    log.info("Dropped empty chat_entry partition {}", partition.getValue());
+                }
+            } catch (Exception e) {
+                log.warn("Could not drop chat_entry partition {}: {}", partition.getValue(), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package ru.raiff.ai_lab.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.raiff.ai_lab.model.ChatEntry;
+import ru.raiff.ai_lab.repository.ChatEntryRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Групповая запись новых реплик: вставки от параллельных запросов копятся в очереди, и один поток пишет
+ * их пачкой — один JDBC batch и один коммит на всех. Вызывающий ждёт коммита своей пачки, так что после
+ * возврата из {@link #write} реплика уже в БД. Пока идёт запись пачки, следующая набирается сама,
+ * поэтому одиночная вставка не ждёт лишнего; {@code max-delay} добавляет ожидание ради более крупных пачек.
+ */
+@Service
+@Slf4j
+public class ChatEntryWriter {
+
+    private final ChatEntryRepository chatEntryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration maxDelay;
+    private final Duration writeTimeout;
+    private final BlockingQueue<PendingEntry> queue;
+    private volatile boolean running;
+    private Thread flusher;
+
+    public ChatEntryWriter(ChatEntryRepository chatEntryRepository,
+                           TransactionTemplate transactionTemplate,
+                           @Value("${app.chat-entry-writer.batch-size:50}") int batchSize,
+                           @Value("${app.chat-entry-writer.max-delay:PT0S}") Duration maxDelay,
+                           @Value("${app.chat-entry-writer.write-timeout:PT10S}") Duration writeTimeout,
+                           @Value("${app.chat-entry-writer.queue-capacity:10000}") int queueCapacity) {
+        this.chatEntryRepository = chatEntryRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        this.writeTimeout = writeTimeout;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = Thread.ofPlatform().name("chat-entry-writer").daemon().start(this::run);
+    }
+
+    /**
+     * Ставит реплику в очередь и ждёт коммита пачки, в которую она попала. Ошибка по таймауту значит, что реплика
+     * не записана: она снимается с очереди. Если пачка с ней уже пишется, ожидание продолжается до результата —
+     * иначе клиент повторил бы запрос, и реплика записалась бы дважды.
+     */
+    public ChatEntry write(ChatEntry entry) {
+        PendingEntry pending = new PendingEntry(entry, new CompletableFuture<>(), new AtomicBoolean());
+        try {
+            if (!running || !queue.offer(pending, writeTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                // писатель остановлен или не успевает: пишем сами, без пачки
+                log.warn("Chat entry write queue unavailable, writing entry directly");
+                return transactionTemplate.execute(status -> chatEntryRepository.save(entry));
+            }
+            try {
+                return pending.result().get(writeTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (pending.take()) {
+                    queue.remove(pending);
+                    throw new IllegalStateException("Timed out writing chat entry after " + writeTimeout, e);
+                }
+                log.warn("Chat entry batch is slower than {}, waiting for it to commit", writeTimeout);
+                return pending.result().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (pending.take()) {
+                queue.remove(pending);
+            }
+            throw new IllegalStateException("Interrupted while writing chat entry", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Error writing chat entry", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        flusher.join(writeTimeout.toMillis());
+    }
+
+    private void run() {
+        List<PendingEntry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingEntry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                // реплики, от которых вызывающий отказался по таймауту, не пишем
+                batch.removeIf(pending -> !pending.take());
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Unexpected error in chat entry writer", e);
+                batch.forEach(pending -> pending.result().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<PendingEntry> batch) throws InterruptedException {
+        queue.drainTo(batch, batchSize - batch.size());
+        long deadline = System.nanoTime() + maxDelay.toNanos();
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            PendingEntry next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private void flush(List<PendingEntry> batch) {
+        List<ChatEntry> entries = batch.stream().map(PendingEntry::entry).toList();
+        try {
+            transactionTemplate.executeWithoutResult(status -> chatEntryRepository.saveAll(entries));
+            batch.forEach(pending -> pending.result().complete(pending.entry()));
+            log.debug("Wrote batch of {} chat entries", batch.size());
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).result().completeExceptionally(e);
+                return;
+            }
+            // одна плохая реплика (например, чат уже удалён) не должна ронять чужие — пишем по одной
+            log.warn("Batch of {} chat entries failed, retrying one by one: {}", batch.size(), e.getMessage());
+            for (PendingEntry pending : batch) {
+                pending.entry().setId(null);
+                try {
+                    transactionTemplate.executeWithoutResult(status -> chatEntryRepository.save(pending.entry()));
+                    pending.result().complete(pending.entry());
+                } catch (RuntimeException single) {
+                    pending.result().completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@code taken} забирает тот, кто успел первым: писатель — в пачку, вызывающий — отменяя запись по таймауту.
+     */
+    private record PendingEntry(ChatEntry entry, CompletableFuture<ChatEntry> result, AtomicBoolean taken) {
+
+        boolean take() {
+            return taken.compareAndSet(false, true);
+        }
+    }
+}
\ No newline at end of file
@@ -2,14 +2,27 @@ package ru.raiff.ai_lab.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import ru.raiff.ai_lab.dto.ArchivedChatSearchHit;
+import ru.raiff.ai_lab.dto.ChatEntrySearchHit;
+import ru.raiff.ai_lab.dto.ChatEntrySearchPage;
+import ru.raiff.ai_lab.dto.ChatSummary;
+import ru.raiff.ai_lab.dto.ChatSummaryPage;
+import ru.raiff.ai_lab.dto.ChatTurn;
 import ru.raiff.ai_lab.model.Chat;
 import ru.raiff.ai_lab.model.ChatEntry;
 import ru.raiff.ai_lab.repository.ChatEntryRepository;
+import ru.raiff.ai_lab.repository.ChatEntrySearchRepository;
 import ru.raiff.ai_lab.repository.ChatRepository;
+import ru.raiff.ai_lab.repository.ChatSummaryRepository;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,8 +32,35 @@ import java.util.Optional;
 @Transactional
 public class ChatService {
     
+    // для определения языка хватает начала текста, а Lingua на длинных ответах заметно дороже
+    private static final int LANGUAGE_SAMPLE_LENGTH = 1000;
+    
     private final ChatRepository chatRepository;
     private final ChatEntryRepository chatEntryRepository;
+    private final ChatContextService chatContextService;
+    private final ChatSummaryRepository chatSummaryRepository;
+    private final ChatEntryWriter chatEntryWriter;
+    private final ChatEntrySearchRepository chatEntrySearchRepository;
+    private final LanguageDetectionService languageDetectionService;
+    private final ChatArchiveService chatArchiveService;
+    
+    @Value("${app.chat-list.page-size:50}")
+    private int chatListPageSize;
+    
+    @Value("${app.chat-list.max-page-size:200}")
+    private int chatListMaxPageSize;
+    
+    @Value("${app.chat-list.preview-length:120}")
+    private int previewLength;
+    
+    @Value("${app.chat-search.page-size:20}")
+    private int searchPageSize;
+    
+    @Value("${app.chat-search.max-page-size:100}")
+    private int searchMaxPageSize;
+    
+    @Value("${app.chat-search.max-candidates:1000}")
+    private int searchMaxCandidates;
     
     public Chat createChat(String title) {
         Chat chat = new Chat();
@@ -35,6 +75,7 @@ public class ChatService {
     }
     
     public Optional<Chat> getChatWithEntries(Long id) {
+        chatArchiveService.rehydrate(id);
         Optional<Chat> chatOpt = chatRepository.findByIdWithEntries(id);
         chatOpt.ifPresent(chat -> {
             log.info("Loaded chat {} with {} entries", chat.getId(), 
@@ -47,6 +88,29 @@ public class ChatService {
         return chatRepository.findAllOrderByCreatedAtDesc();
     }
     
+    /**
+     * Страница сводок по чатам от новых к старым. {@code cursor} — значение {@code nextCursor} предыдущей страницы.
+     */
+    @Transactional(readOnly = true)
+    public ChatSummaryPage getChatSummaries(String cursor, Integer limit) {
+        int pageSize = limit != null ? Math.min(Math.max(limit, 1), chatListMaxPageSize) : chatListPageSize;
+        // запрашиваем на одну строку больше, чтобы понять, есть ли следующая страница
+        List<ChatSummary> chats;
+        if (cursor == null || cursor.isBlank()) {
+            chats = chatSummaryRepository.findFirstPage(previewLength, pageSize + 1);
+        } else {
+            Cursor position = decodeCursor(cursor);
+            chats = chatSummaryRepository.findPageBefore(position.createdAt(), position.id(), previewLength, pageSize + 1);
+        }
+        if (chats.size() <= pageSize) {
+            return new ChatSummaryPage(chats, null);
+        }
+        chats = chats.subList(0, pageSize);
+        ChatSummary last = chats.get(pageSize - 1);
+        String nextCursor = last.getCreatedAt() != null ? encodeCursor(last.getCreatedAt(), last.getId()) : null;
+        return new ChatSummaryPage(chats, nextCursor);
+    }
+    
     public List<Chat> searchChatsByTitle(String title) {
         return chatRepository.findByTitleContainingIgnoreCase(title);
     }
@@ -59,21 +123,49 @@ public class ChatService {
         return chatRepository.save(chat);
     }
     
+    /**
+     * Вставка идёт через {@link ChatEntryWriter} пачкой с репликами других запросов и в своей транзакции,
+     * поэтому собственная транзакция здесь не открывается — это лишние BEGIN/COMMIT на каждую реплику.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public ChatEntry addChatEntry(Long chatId, String content, ChatEntry.Role role) {
-        Chat chat = chatRepository.findById(chatId)
-                .orElseThrow(() -> new RuntimeException("Chat not found with id: " + chatId));
-        
-        ChatEntry entry = new ChatEntry();
-        entry.setContent(content);
-        entry.setRole(role);
-        entry.setChat(chat);
-        entry.setCreatedAt(LocalDateTime.now());
-        
         log.info("Adding {} entry to chat {}", role, chatId);
-        return chatEntryRepository.save(entry);
+        ChatEntry saved = chatEntryWriter.write(newEntry(chatId, content, role));
+        appendToContext(saved);
+        return saved;
+    }
+    
+    /**
+     * Сохраняет черновик ответа ассистента, пока генерация ещё идёт: первая запись создаёт реплику,
+     * следующие только переписывают её текст. В окно контекста черновик не попадает.
+     */
+    public Long saveAssistantDraft(Long chatId, Long entryId, String content) {
+        if (entryId == null) {
+            ChatEntry draft = newEntry(chatId, content, ChatEntry.Role.ASSISTANT);
+            draft.setDraft(true);
+            return chatEntryWriter.write(draft).getId();
+        }
+        chatEntryRepository.updateContent(entryId, content);
+        return entryId;
+    }
+    
+    /**
+     * Записывает окончательный ответ ассистента — в черновик, если он уже есть, иначе новой репликой.
+     */
+    public ChatEntry completeAssistantEntry(Long chatId, Long draftId, String content) {
+        ChatEntry draft = draftId != null ? chatEntryRepository.findById(draftId).orElse(null) : null;
+        if (draft == null) {
+            return addChatEntry(chatId, content, ChatEntry.Role.ASSISTANT);
+        }
+        draft.setContent(content);
+        draft.setLanguage(detectLanguage(content));
+        draft.setDraft(false);
+        appendToContext(draft);
+        return draft;
     }
     
     public List<ChatEntry> getChatEntries(Long chatId) {
+        chatArchiveService.rehydrate(chatId);
         return chatEntryRepository.findByChatIdOrderByCreatedAtAsc(chatId);
     }
     
@@ -81,23 +173,61 @@ public class ChatService {
         return chatEntryRepository.findByChatIdAndRole(chatId, role);
     }
     
-    public List<ChatEntry> searchEntriesByContent(String keyword) {
-        return chatEntryRepository.findByContentContaining(keyword);
+    /**
+     * Полнотекстовый поиск по репликам всех чатов, самые релевантные первыми, с подсвеченными фрагментами.
+     * {@code cursor} — значение {@code nextCursor} предыдущей страницы. Архивные чаты, где нашёлся запрос,
+     * приходят списком на первой странице. Ранжируются только {@code max-candidates} самых свежих совпадений,
+     * о срезанном хвосте говорит {@link ChatEntrySearchPage#candidatesCapped()}.
+     */
+    @Transactional(readOnly = true)
+    public ChatEntrySearchPage searchEntries(String query, String cursor, Integer limit) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query is empty");
+        }
+        int pageSize = limit != null ? Math.min(Math.max(limit, 1), searchMaxPageSize) : searchPageSize;
+        // запрашиваем на одну строку больше, чтобы понять, есть ли следующая страница
+        ChatEntrySearchRepository.Page page;
+        List<ArchivedChatSearchHit> archived = List.of();
+        long maxId;
+        if (cursor == null || cursor.isBlank()) {
+            maxId = chatEntrySearchRepository.findMaxId();
+            page = chatEntrySearchRepository.findFirstPage(query, maxId, searchMaxCandidates, pageSize + 1);
+            archived = chatEntrySearchRepository.findArchivedChats(query, pageSize);
+        } else {
+            SearchCursor position = decodeSearchCursor(cursor);
+            maxId = position.maxId();
+            page = chatEntrySearchRepository.findPageAfter(query, maxId, searchMaxCandidates,
+                    position.rank(), position.id(), pageSize + 1);
+        }
+        List<ChatEntrySearchHit> hits = page.hits();
+        if (hits.size() <= pageSize) {
+            return new ChatEntrySearchPage(hits, null, archived, searchMaxCandidates, page.candidatesCapped());
+        }
+        hits = hits.subList(0, pageSize);
+        ChatEntrySearchHit last = hits.get(pageSize - 1);
+        return new ChatEntrySearchPage(hits, encodeSearchCursor(last.rank(), last.id(), maxId), archived,
+                searchMaxCandidates, page.candidatesCapped());
     }
     
     public void deleteChat(Long chatId) {
         log.info("Deleting chat with id: {}", chatId);
         chatRepository.deleteById(chatId);
+        AfterCommit.run(() -> chatContextService.evict(chatId));
     }
     
     public void deleteChatEntry(Long entryId) {
         log.info("Deleting chat entry with id: {}", entryId);
+        chatEntryRepository.findById(entryId)
+                .map(entry -> entry.getChat().getId())
+                .ifPresent(chatId -> AfterCommit.run(() -> chatContextService.evict(chatId)));
         chatEntryRepository.deleteById(entryId);
     }
     
     public void deleteAllChatEntries(Long chatId) {
         log.info("Deleting all entries for chat: {}", chatId);
         chatEntryRepository.deleteByChatId(chatId);
+        chatArchiveService.delete(chatId);
+        AfterCommit.run(() -> chatContextService.evict(chatId));
     }
     
     public long countChats() {
@@ -105,6 +235,66 @@ public class ChatService {
     }
     
     public long countChatEntries(Long chatId) {
-        return chatEntryRepository.findByChatId(chatId).size();
+        return chatEntryRepository.countByChatId(chatId) + chatArchiveService.archivedEntryCount(chatId);
+    }
+    
+    private ChatEntry newEntry(Long chatId, String content, ChatEntry.Role role) {
+        // ссылка на чат без SELECT: нужен только chat_id, несуществующий чат отсечёт внешний ключ
+        ChatEntry entry = new ChatEntry();
+        entry.setContent(content);
+        entry.setRole(role);
+        entry.setLanguage(detectLanguage(content));
+        entry.setChat(chatRepository.getReferenceById(chatId));
+        entry.setCreatedAt(LocalDateTime.now());
+        return entry;
+    }
+    
+    private void appendToContext(ChatEntry entry) {
+        Long chatId = entry.getChat().getId();
+        ChatTurn turn = new ChatTurn(entry.getId(), entry.getRole(), entry.getContent(), entry.getCreatedAt());
+        AfterCommit.run(() -> chatContextService.append(chatId, turn));
+    }
+    
+    private String detectLanguage(String content) {
+        if (content == null || content.isBlank()) {
+            return null;
+        }
+        String sample = content.length() > LANGUAGE_SAMPLE_LENGTH ? content.substring(0, LANGUAGE_SAMPLE_LENGTH) : content;
+        return languageDetectionService.isRussian(sample) ? "ru" : "en";
+    }
+    
+    private static String encodeCursor(LocalDateTime createdAt, Long id) {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static Cursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new Cursor(LocalDateTime.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid chat list cursor: " + cursor, e);
+        }
+    }
+    
+    private record Cursor(LocalDateTime createdAt, long id) {
+    }
+    
+    private static String encodeSearchCursor(float rank, Long id, long maxId) {
+        String raw = rank + "|" + id + "|" + maxId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static SearchCursor decodeSearchCursor(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            return new SearchCursor(Float.parseFloat(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid search cursor: " + cursor, e);
+        }
+    }
+    
+    private record SearchCursor(float rank, long id, long maxId) {
     }
 }
\ No newline at end of file
@@ -0,0 +1,345 @@
+package ru.raiff.ai_lab.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.ConnectableFlux;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+import ru.raiff.ai_lab.model.ChatEntry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * Реактивный стриминг ответа модели в чат: токены идут из {@code ChatClient.stream()} прямо клиенту,
+ * с backpressure со стороны ответа. Блокирующие участки вынесены с потоков reactor: JPA — на ограниченный
+ * планировщик (не больше потоков, чем соединений в пуле), ожидание слота модели — на виртуальные потоки.
+ * Токены перед отправкой склеиваются: событие уходит раз в {@code flush-interval} или по набору {@code flush-bytes}.
+ * <p>
+ * Генерация не зависит от соединения: события копятся в {@link ChatStreamSession}, и клиент, переподключившийся
+ * с {@code Last-Event-ID}, получает пропущенное и дальше идёт вместе с той же генерацией. Накопленный текст раз в
+ * {@code checkpoint-interval} сохраняется черновиком реплики, так что оборванный ответ не теряется.
+ */
+@Service
+@Slf4j
+public class ChatStreamService {
+
+    private static final String DONE_DATA = "{}";
+    private static final String SSE_ENDPOINT = "chat-stream";
+    private static final String TOKENS_ENDPOINT = "api-stream";
+
+    private final ChatService chatService;
+    private final ChatContextService chatContextService;
+    private final AIService aiService;
+    private final LlmConcurrencyLimiter llmConcurrencyLimiter;
+    private final LlmMetrics llmMetrics;
+    private final Duration queuePositionInterval;
+    private final Duration flushInterval;
+    private final int flushBytes;
+    private final Duration resumeRetention;
+    private final Scheduler persistenceScheduler;
+    private final Scheduler admissionScheduler;
+    private final Map<Long, ChatStreamSession> sessions = new ConcurrentHashMap<>();
+    // номера генераций не повторяются между перезапусками, поэтому старый Last-Event-ID не попадёт в чужую генерацию
+    private final AtomicLong generations = new AtomicLong(System.currentTimeMillis());
+
+    public ChatStreamService(ChatService chatService,
+                             ChatContextService chatContextService,
+                             AIService aiService,
+                             LlmConcurrencyLimiter llmConcurrencyLimiter,
+                             LlmMetrics llmMetrics,
+                             @Value("${app.llm.queue-position-interval:PT1S}") Duration queuePositionInterval,
+                             @Value("${app.chat-stream.flush-interval:PT0.05S}") Duration flushInterval,
+                             @Value("${app.chat-stream.flush-bytes:512}") int flushBytes,
+                             @Value("${app.chat-stream.resume-retention:PT2M}") Duration resumeRetention,
+                             @Value("${app.chat-stream.persistence-threads:8}") int persistenceThreads,
+                             @Value("${app.chat-stream.persistence-queue:10000}") int persistenceQueue) {
+        this.chatService = chatService;
+        this.chatContextService = chatContextService;
+        this.aiService = aiService;
+        this.llmConcurrencyLimiter = llmConcurrencyLimiter;
+        this.llmMetrics = llmMetrics;
+        this.queuePositionInterval = queuePositionInterval;
+        this.flushInterval = flushInterval;
+        this.flushBytes = flushBytes;
+        this.resumeRetention = resumeRetention;
+        this.persistenceScheduler = Schedulers.newBoundedElastic(persistenceThreads, persistenceQueue, "chat-persistence");
+        this.admissionScheduler = Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "llm-admission");
+    }
+
+    /**
+     * SSE-поток для страницы чата: события {@code queue} с позицией в очереди, затем токены ответа и {@code done}.
+     * Очередь проверяется сразу при вызове, так что переполнение уходит клиенту как 429 до открытия потока.
+     */
+    public Flux<ServerSentEvent<String>> streamEvents(Long chatId, String prompt) {
+        ChatStreamSession session = start(chatId, prompt, SSE_ENDPOINT);
+        return llmMetrics.trackActiveStream(SSE_ENDPOINT, session.events().map(event -> toServerSentEvent(session, event)));
+    }
+
+    /**
+     * Продолжение потока после обрыва: события генерации после {@code lastEventId}. Если генерация уже
+     * забыта (закончилась давно или сервер перезапускался), сразу приходит {@code done} — ответ есть в истории чата.
+     */
+    public Flux<ServerSentEvent<String>> resumeEvents(Long chatId, String lastEventId) {
+        ChatStreamSession.EventId eventId = ChatStreamSession.EventId.parse(lastEventId);
+        ChatStreamSession session = eventId != null ? sessions.get(eventId.generation()) : null;
+        if (session == null || !session.chatId().equals(chatId)) {
+            log.info("No active stream to resume for chat {} from event {}", chatId, lastEventId);
+            return Flux.just(ServerSentEvent.builder(DONE_DATA).event("done").build());
+        }
+        log.info("Resuming stream for chat {} after event {}", chatId, lastEventId);
+        return llmMetrics.trackActiveStream(SSE_ENDPOINT, session.events()
+                .filter(event -> event.seq() > eventId.seq())
+                .map(event -> toServerSentEvent(session, event)));
+    }
+
+    /**
+     * Поток токенов ответа без служебных событий.
+     */
+    public Flux<String> streamTokens(Long chatId, String prompt) {
+        return llmMetrics.trackActiveStream(TOKENS_ENDPOINT, start(chatId, prompt, TOKENS_ENDPOINT).events()
+                .filter(event -> event.chunk() != null)
+                .map(ChatStreamSession.Event::chunk));
+    }
+
+    /**
+     * Сохраняет черновики идущих генераций, в которых с прошлого раза появился новый текст,
+     * и забывает генерации, закончившиеся раньше {@code resume-retention}. Каждый черновик пишется отдельной
+     * задачей на {@code persistenceScheduler}, так что медленный UPDATE одной генерации не задерживает остальные.
+     */
+    @Scheduled(fixedDelayString = "${app.chat-stream.checkpoint-interval:PT2S}")
+    public void checkpointDrafts() {
+        Instant forgetBefore = Instant.now().minus(resumeRetention);
+        for (ChatStreamSession session : sessions.values()) {
+            if (session.finishedBefore(forgetBefore)) {
+                sessions.remove(session.generation());
+                continue;
+            }
+            if (session.pendingDraft() == null) {
+                continue;
+            }
+            try {
+                persistenceScheduler.schedule(() -> checkpoint(session));
+            } catch (RejectedExecutionException e) {
+                log.warn("Draft checkpoint queue is full, skipping chat {} until the next round", session.chatId());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        persistenceScheduler.dispose();
+        admissionScheduler.dispose();
+    }
+
+    /**
+     * Запускает генерацию сразу, не дожидаясь подписчика: её события проигрываются каждому, кто подключится,
+     * а отключение клиента генерацию не отменяет.
+     */
+    private ChatStreamSession start(Long chatId, String prompt, String endpoint) {
+        // запрос, который присоединится к такой же идущей генерации, в очередь модели не встаёт
+        AtomicReference<LlmConcurrencyLimiter.Ticket> ticket = new AtomicReference<>(
+                aiService.isGenerating(prompt, chatContextService.buildContext(chatId)) ?
+                        null : llmConcurrencyLimiter.enqueue());
+        ChatStreamSession session = new ChatStreamSession(generations.incrementAndGet(), chatId, endpoint);
+        SseJsonEncoder encoder = new SseJsonEncoder();
+        Flux<ChatStreamSession.Event> answer = saveUserEntry(session, prompt)
+                .then(buildContext(session))
+                .flatMapMany(context -> aiService.joinStream(prompt, context)
+                        .map(joined -> {
+                            release(ticket);
+                            return tokens(session, encoder, joined);
+                        })
+                        .orElseGet(() -> {
+                            // такая генерация успела закончиться — идём в модель сами
+                            LlmConcurrencyLimiter.Ticket own = ticket.get();
+                            if (own == null) {
+                                own = llmConcurrencyLimiter.enqueue();
+                                ticket.set(own);
+                            }
+                            return awaitSlot(own)
+                                    .map(position -> session.next("queue", encoder.position(position), null))
+                                    .concatWith(tokens(session, encoder, generate(session, prompt, context, own)));
+                        }));
+        Mono<ChatStreamSession.Event> done = Mono.fromCallable(() -> {
+                    complete(session);
+                    return session.next("done", DONE_DATA, null);
+                })
+                .subscribeOn(persistenceScheduler);
+        ConnectableFlux<ChatStreamSession.Event> events = answer
+                .onErrorResume(error -> Mono.fromRunnable(() -> complete(session))
+                        .subscribeOn(persistenceScheduler)
+                        .then(Mono.error(error)))
+                .concatWith(done)
+                .doFinally(signal -> release(ticket))
+                .replay();
+        session.attach(events);
+        sessions.put(session.generation(), session);
+        events.connect();
+        return session;
+    }
+
+    /**
+     * Черновик одной генерации. Если прошлая запись этой генерации или окончательная запись ещё идёт,
+     * раунд пропускается: новый текст уйдёт со следующим.
+     */
+    private void checkpoint(ChatStreamSession session) {
+        if (!session.persistLock().tryLock()) {
+            return;
+        }
+        try {
+            String draft = session.pendingDraft();
+            if (draft == null) {
+                return;
+            }
+            Long entryId = chatService.saveAssistantDraft(session.chatId(), session.entryId(), draft);
+            session.persisted(entryId, draft.length());
+        } catch (Exception e) {
+            log.warn("Could not checkpoint draft response for chat {}", session.chatId(), e);
+        } finally {
+            session.persistLock().unlock();
+        }
+    }
+
+    /**
+     * Окончательная запись ответа: под блокировкой записи сессии, чтобы не разминуться с сохранением черновика.
+     */
+    private void complete(ChatStreamSession session) {
+        session.persistLock().lock();
+        try {
+            session.finish();
+            String response = session.fullText();
+            if (!response.isEmpty() || session.entryId() != null) {
+                long startedAt = System.nanoTime();
+                chatService.completeAssistantEntry(session.chatId(), session.entryId(), response);
+                session.addDbTime(System.nanoTime() - startedAt);
+                log.info("Saved assistant response for chat {}", session.chatId());
+            }
+            llmMetrics.recordTurnDbTime(session.endpoint(), session.dbTime());
+        } finally {
+            session.persistLock().unlock();
+        }
+    }
+
+    private ServerSentEvent<String> toServerSentEvent(ChatStreamSession session, ChatStreamSession.Event event) {
+        return ServerSentEvent.builder(event.data())
+                .id(session.id(event.seq()))
+                .event(event.type())
+                .build();
+    }
+
+    private Mono<ChatEntry> saveUserEntry(ChatStreamSession session, String prompt) {
+        return Mono.fromCallable(() -> {
+                    long startedAt = System.nanoTime();
+                    ChatEntry entry = chatService.addChatEntry(session.chatId(), prompt, ChatEntry.Role.USER);
+                    session.addDbTime(System.nanoTime() - startedAt);
+                    return entry;
+                })
+                .subscribeOn(persistenceScheduler);
+    }
+
+    /**
+     * Ждёт слот модели на виртуальном потоке, раз в {@code queuePositionInterval} отдавая текущую позицию.
+     */
+    private Flux<Integer> awaitSlot(LlmConcurrencyLimiter.Ticket ticket) {
+        return Flux.<Integer>create(sink -> {
+                    try {
+                        while (!ticket.awaitTurn(queuePositionInterval)) {
+                            sink.next(ticket.position());
+                        }
+                        sink.complete();
+                    } catch (Exception e) {
+                        sink.error(e);
+                    }
+                })
+                .subscribeOn(admissionScheduler);
+    }
+
+    private Mono<String> buildContext(ChatStreamSession session) {
+        return Mono.fromCallable(() -> {
+                    long startedAt = System.nanoTime();
+                    String context = chatContextService.buildContext(session.chatId());
+                    session.addDbTime(System.nanoTime() - startedAt);
+                    return context;
+                })
+                .subscribeOn(persistenceScheduler);
+    }
+
+    private Flux<String> generate(ChatStreamSession session, String prompt, String context,
+                                  LlmConcurrencyLimiter.Ticket ticket) {
+        Long chatId = session.chatId();
+        return (context.isEmpty() ?
+                aiService.streamResponse(chatId, prompt) :
+                aiService.streamResponseWithContext(chatId, prompt, context))
+                // слот модели отпускаем по окончании генерации, не дожидаясь записи ответа в БД
+                .doOnTerminate(ticket::release);
+    }
+
+    private Flux<ChatStreamSession.Event> tokens(ChatStreamSession session, SseJsonEncoder encoder, Flux<String> tokens) {
+        return coalesce(tokens.contextWrite(Context.of(LlmMetrics.ENDPOINT, session.endpoint())))
+                .map(chunk -> session.next(null, encoder.text(chunk), chunk));
+    }
+
+    private static void release(AtomicReference<LlmConcurrencyLimiter.Ticket> ticket) {
+        LlmConcurrencyLimiter.Ticket held = ticket.getAndSet(null);
+        if (held != null) {
+            held.release();
+        }
+    }
+
+    /**
+     * Склеивает токены в куски: окно закрывается по таймеру {@code flushInterval}, а внутри окна кусок
+     * отдаётся раньше, как только набрал {@code flushBytes} байт UTF-8. Пустые окна ничего не отправляют.
+     */
+    private Flux<String> coalesce(Flux<String> tokens) {
+        return tokens
+                .windowTimeout(Integer.MAX_VALUE, flushInterval, true)
+                .concatMap(window -> window
+                        .bufferUntil(byteLimit(flushBytes))
+                        .map(parts -> parts.size() == 1 ? parts.get(0) : String.join("", parts)));
+    }
+
+    private static Predicate<String> byteLimit(int maxBytes) {
+        int[] pending = {0};
+        return token -> {
+            pending[0] += utf8Length(token);
+            if (pending[0] < maxBytes) {
+                return false;
+            }
+            pending[0] = 0;
+            return true;
+        };
+    }
+
+    private static int utf8Length(String text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isSurrogate(c)) {
+                // суррогатная пара — 4 байта, по 2 на каждую половину
+                bytes += 2;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
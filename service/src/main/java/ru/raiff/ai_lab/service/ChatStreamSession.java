@@ -0,0 +1,142 @@
+package ru.raiff.ai_lab.service;
+
+import reactor.core.publisher.Flux;
+
+import java.time.Instant;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Одна генерация ответа в чат, отвязанная от HTTP-соединения: события копятся для повторного
+ * подключения, текст ответа — для периодического сохранения черновика в БД.
+ * Событие адресуется id вида {@code <generation>-<seq>}, который клиент возвращает в {@code Last-Event-ID}.
+ */
+final class ChatStreamSession {
+
+    private final long generation;
+    private final Long chatId;
+    private final String endpoint;
+    private final StringBuilder text = new StringBuilder();
+    // запись черновика и окончательного ответа — блокирующий JDBC, а монитор на виртуальном потоке
+    // держал бы поток-носитель всё время запроса
+    private final ReentrantLock persistLock = new ReentrantLock();
+    private long seq;
+    private Long entryId;
+    private int persistedLength;
+    private Instant finishedAt;
+    private long dbNanos;
+    private Flux<Event> events;
+
+    ChatStreamSession(long generation, Long chatId, String endpoint) {
+        this.generation = generation;
+        this.chatId = chatId;
+        this.endpoint = endpoint;
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    Long chatId() {
+        return chatId;
+    }
+
+    String endpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Время работы с БД за эту реплику, для метрики {@code chat.turn.db}.
+     */
+    synchronized void addDbTime(long nanos) {
+        dbNanos += nanos;
+    }
+
+    synchronized long dbTime() {
+        return dbNanos;
+    }
+
+    Flux<Event> events() {
+        return events;
+    }
+
+    void attach(Flux<Event> events) {
+        this.events = events;
+    }
+
+    /**
+     * Следующее событие генерации. Вызывается только из её конвейера, поэтому номер растёт без гонок.
+     */
+    Event next(String type, String data, String chunk) {
+        if (chunk != null) {
+            synchronized (this) {
+                text.append(chunk);
+            }
+        }
+        return new Event(++seq, type, data, chunk);
+    }
+
+    String id(long seq) {
+        return generation + "-" + seq;
+    }
+
+    /**
+     * Сериализует запись черновика с окончательной записью ответа.
+     */
+    ReentrantLock persistLock() {
+        return persistLock;
+    }
+
+    /**
+     * Текст для черновика, если с прошлого сохранения пришло что-то новое и генерация ещё идёт.
+     * Вызывать под {@link #persistLock()}, как и {@link #persisted}.
+     */
+    synchronized String pendingDraft() {
+        return finishedAt == null && text.length() > persistedLength ? text.toString() : null;
+    }
+
+    synchronized String fullText() {
+        return text.toString();
+    }
+
+    synchronized Long entryId() {
+        return entryId;
+    }
+
+    synchronized void persisted(Long entryId, int length) {
+        this.entryId = entryId;
+        this.persistedLength = length;
+    }
+
+    synchronized void finish() {
+        finishedAt = Instant.now();
+    }
+
+    synchronized boolean finishedBefore(Instant moment) {
+        return finishedAt != null && finishedAt.isBefore(moment);
+    }
+
+    /**
+     * Событие потока: {@code type} — имя SSE-события ({@code null} для токенов), {@code data} — готовый JSON,
+     * {@code chunk} — сам текст для потока без служебных событий.
+     */
+    record Event(long seq, String type, String data, String chunk) {
+    }
+
+    record EventId(long generation, long seq) {
+
+        /**
+         * Разбирает {@code Last-Event-ID}; {@code null}, если id не наш.
+         */
+        static EventId parse(String id) {
+            if (id == null) {
+                return null;
+            }
+            int separator = id.indexOf('-');
+            try {
+                return new EventId(Long.parseLong(id.substring(0, separator)), Long.parseLong(id.substring(separator + 1)));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                return null;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,181 @@
+package ru.raiff.ai_lab.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.Normalizer;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Склейка одинаковых запросов к модели, которые выполняются одновременно (single-flight). Ключ — нормализованный
+ * вопрос, ключ истории из {@link ResponseCacheService#contextKey} и параметры модели: та же единица, что и
+ * в семантическом кеше, а не полный промпт, в котором вопрос повторяется. Блокирующие вызовы ждут результата
+ * первого, потоковые подписываются на общий поток токенов с повтором уже выданного. Присоединиться можно и
+ * заранее ({@link #join}, {@link #joinStream}) — тогда запрос не занимает слот модели. Запись снимается,
+ * как только исходный вызов закончился, так что это не кеш: повторный запрос после ответа снова идёт в модель
+ * (или в семантический кеш).
+ */
+@Component
+@Slf4j
+public class CompletionCoalescer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Map<Key, CompletableFuture<String>> inflightCalls = new ConcurrentHashMap<>();
+    private final Map<Key, Flux<String>> inflightStreams = new ConcurrentHashMap<>();
+    private final String optionsSignature;
+    private final Counter coalescedCalls;
+    private final Counter coalescedStreams;
+
+    public CompletionCoalescer(ChatModel chatModel, MeterRegistry meterRegistry) {
+        this.optionsSignature = signature(chatModel.getDefaultOptions());
+        this.coalescedCalls = Counter.builder("llm.requests.coalesced")
+                .description("Model requests that joined an identical in-flight request")
+                .tag("mode", "call")
+                .register(meterRegistry);
+        this.coalescedStreams = Counter.builder("llm.requests.coalesced")
+                .description("Model requests that joined an identical in-flight request")
+                .tag("mode", "stream")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Идёт ли вызов или поток с тем же вопросом и той же историей.
+     */
+    public boolean isInFlight(String prompt, String contextKey) {
+        Key key = key(prompt, contextKey);
+        return inflightCalls.containsKey(key) || inflightStreams.containsKey(key);
+    }
+
+    /**
+     * Результат идущего вызова или потока с тем же вопросом и той же историей; пусто, если такого нет.
+     * Модель не вызывается.
+     */
+    public Optional<String> join(String prompt, String contextKey) {
+        Key key = key(prompt, contextKey);
+        CompletableFuture<String> call = inflightCalls.get(key);
+        if (call != null) {
+            return Optional.ofNullable(await(call));
+        }
+        Flux<String> stream = inflightStreams.get(key);
+        if (stream == null) {
+            return Optional.empty();
+        }
+        coalescedCalls.increment();
+        log.debug("Joining in-flight stream for identical prompt");
+        return Optional.ofNullable(stream.collect(Collectors.joining()).block());
+    }
+
+    /**
+     * Токены идущего потока или результат идущего вызова с тем же вопросом и той же историей; пусто, если такого нет.
+     * Модель не вызывается.
+     */
+    public Optional<Flux<String>> joinStream(String prompt, String contextKey) {
+        Key key = key(prompt, contextKey);
+        Flux<String> stream = inflightStreams.get(key);
+        if (stream != null) {
+            coalescedStreams.increment();
+            log.debug("Joining in-flight stream for identical prompt");
+            return Optional.of(stream);
+        }
+        CompletableFuture<String> call = inflightCalls.get(key);
+        if (call == null) {
+            return Optional.empty();
+        }
+        coalescedStreams.increment();
+        log.debug("Joining in-flight completion for identical prompt");
+        // отписка присоединившегося не должна отменять чужой вызов
+        return Optional.of(Mono.fromFuture(call, true).flux());
+    }
+
+    /**
+     * Результат {@code upstream} для вопроса; если такой же вызов уже идёт, ждёт его результата, не вызывая модель.
+     */
+    public String call(String prompt, String contextKey, Supplier<String> upstream) {
+        Key key = key(prompt, contextKey);
+        CompletableFuture<String> own = new CompletableFuture<>();
+        CompletableFuture<String> existing = inflightCalls.putIfAbsent(key, own);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            String result = upstream.get();
+            own.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflightCalls.remove(key, own);
+        }
+    }
+
+    /**
+     * Поток токенов для промпта, общий для всех одновременных одинаковых запросов: поздний подписчик сначала
+     * получает уже сгенерированное. Исходный поток отменяется, только когда отписались все.
+     */
+    public Flux<String> stream(String prompt, String contextKey, Supplier<Flux<String>> upstream) {
+        Key key = key(prompt, contextKey);
+        AtomicReference<Flux<String>> self = new AtomicReference<>();
+        Flux<String> shared = Flux.defer(upstream)
+                .doFinally(signal -> inflightStreams.remove(key, self.get()))
+                .replay()
+                .refCount();
+        self.set(shared);
+        Flux<String> existing = inflightStreams.putIfAbsent(key, shared);
+        if (existing != null) {
+            coalescedStreams.increment();
+            log.debug("Joining in-flight stream for identical prompt");
+            return existing;
+        }
+        return shared;
+    }
+
+    private String await(CompletableFuture<String> existing) {
+        coalescedCalls.increment();
+        log.debug("Joining in-flight completion for identical prompt");
+        try {
+            return existing.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+    }
+
+    private Key key(String prompt, String contextKey) {
+        String normalized = Normalizer.normalize(prompt, Normalizer.Form.NFC);
+        normalized = WHITESPACE.matcher(normalized.strip()).replaceAll(" ");
+        return new Key(optionsSignature, contextKey, normalized);
+    }
+
+    private static String signature(ChatOptions options) {
+        if (options == null) {
+            return "";
+        }
+        return String.join("|",
+                String.valueOf(options.getModel()),
+                String.valueOf(options.getTemperature()),
+                String.valueOf(options.getTopP()),
+                String.valueOf(options.getTopK()),
+                String.valueOf(options.getMaxTokens()),
+                String.valueOf(options.getFrequencyPenalty()),
+                String.valueOf(options.getPresencePenalty()),
+                String.valueOf(options.getStopSequences()));
+    }
+
+    private record Key(String options, String context, String prompt) {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,162 @@
+package ru.raiff.ai_lab.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import ru.raiff.ai_lab.dto.ChatTurn;
+import ru.raiff.ai_lab.repository.ChatEntryRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Накопительный пересказ старой части чата — того, что не влезло в бюджет контекста. Пересказ считается
+ * в фоне и кешируется на чат; обновление дописывает к прошлому пересказу только новые вытесненные реплики,
+ * так что стоимость не растёт с длиной истории. Пока пересказ обновляется, контекст строится по прежнему.
+ */
+@Service
+@Slf4j
+public class ConversationSummaryService {
+
+    private static final String SYSTEM_PROMPT = """
+            Ты ведёшь краткий конспект диалога пользователя с ассистентом. Дополни прежний конспект новыми репликами: \
+            сохрани факты, договорённости, открытые вопросы и предпочтения пользователя, опусти приветствия и повторы. \
+            Пиши по-русски, в третьем лице, не длиннее %d слов. Ответь только текстом конспекта.""";
+
+    private final ChatEntryRepository chatEntryRepository;
+    private final LlmConcurrencyLimiter llmConcurrencyLimiter;
+    private final TokenCountEstimator tokenCountEstimator;
+    // отдельный клиент без советников: пересказ не должен попадать в семантический кеш и RAG
+    private final ChatClient summaryClient;
+    private final Cache<Long, RollingSummary> summaries;
+    private final Set<Long> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final int maxInputTurns;
+    private final int maxInputTokens;
+    private final int maxSummaryTokens;
+
+    public ConversationSummaryService(ChatEntryRepository chatEntryRepository,
+                                      LlmConcurrencyLimiter llmConcurrencyLimiter,
+                                      TokenCountEstimator tokenCountEstimator,
+                                      ChatModel chatModel,
+                                      @Value("${app.chat-context.idle-timeout:PT30M}") Duration idleTimeout,
+                                      @Value("${app.chat-context.max-chats:10000}") long maxChats,
+                                      @Value("${app.chat-context.summary.max-input-turns:40}") int maxInputTurns,
+                                      @Value("${app.chat-context.summary.max-input-tokens:3000}") int maxInputTokens,
+                                      @Value("${app.chat-context.summary.max-tokens:250}") int maxSummaryTokens) {
+        this.chatEntryRepository = chatEntryRepository;
+        this.llmConcurrencyLimiter = llmConcurrencyLimiter;
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.summaryClient = ChatClient.create(chatModel);
+        this.summaries = Caffeine.newBuilder()
+                .expireAfterAccess(idleTimeout)
+                .maximumSize(maxChats)
+                .build();
+        this.maxInputTurns = maxInputTurns;
+        this.maxInputTokens = maxInputTokens;
+        this.maxSummaryTokens = maxSummaryTokens;
+    }
+
+    /**
+     * Текущий пересказ чата, если он уже посчитан.
+     */
+    public Optional<RollingSummary> cached(Long chatId) {
+        return Optional.ofNullable(summaries.getIfPresent(chatId));
+    }
+
+    /**
+     * Запускает фоновое обновление, если пересказ не покрывает всё, что старше реплики {@code beforeId}.
+     * Повторный вызов, пока обновление идёт, ничего не делает.
+     */
+    public void refreshIfStale(Long chatId, long beforeId) {
+        RollingSummary current = summaries.getIfPresent(chatId);
+        if (current != null && current.coveredBeforeId() >= beforeId) {
+            return;
+        }
+        if (!refreshing.add(chatId)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                refresh(chatId, beforeId);
+            } catch (LlmOverloadedException e) {
+                log.debug("Skipping summary refresh for chat {}: model is busy", chatId);
+            } catch (Exception e) {
+                log.warn("Error refreshing summary for chat {}", chatId, e);
+            } finally {
+                refreshing.remove(chatId);
+            }
+        });
+    }
+
+    public void evict(Long chatId) {
+        summaries.invalidate(chatId);
+    }
+
+    public void evictAll() {
+        summaries.invalidateAll();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void refresh(Long chatId, long beforeId) {
+        RollingSummary current = summaries.getIfPresent(chatId);
+        long from = current != null ? current.coveredBeforeId() - 1 : 0;
+        List<ChatTurn> turns = chatEntryRepository.findTurnsBetween(chatId, from, beforeId, Limit.of(maxInputTurns));
+
+        StringBuilder input = new StringBuilder();
+        int used = 0;
+        long coveredBeforeId = beforeId;
+        for (ChatTurn turn : turns) {
+            String line = turn.role().name() + ": " + TokenBudget.clip(tokenCountEstimator, turn.content(), maxInputTokens / 2) + "\n";
+            int tokens = tokenCountEstimator.estimate(line);
+            if (used > 0 && used + tokens > maxInputTokens) {
+                // остаток перескажем следующим обновлением
+                coveredBeforeId = turn.id();
+                break;
+            }
+            input.append(line);
+            used += tokens;
+        }
+        if (turns.size() == maxInputTurns && coveredBeforeId == beforeId) {
+            coveredBeforeId = turns.get(turns.size() - 1).id() + 1;
+        }
+        if (input.isEmpty()) {
+            summaries.put(chatId, new RollingSummary(current != null ? current.text() : "", coveredBeforeId));
+            return;
+        }
+
+        String previous = current != null && !current.text().isEmpty() ? current.text() : "(пусто)";
+        String prompt = "Прежний конспект:\n" + previous + "\n\nНовые реплики:\n" + input;
+        long startedAt = System.currentTimeMillis();
+        String text = llmConcurrencyLimiter.execute(() -> summaryClient.prompt()
+                .system(SYSTEM_PROMPT.formatted(maxSummaryTokens * 3 / 4))
+                .user(prompt)
+                .call()
+                .content());
+        String summary = text != null ? TokenBudget.clip(tokenCountEstimator, text.strip(), maxSummaryTokens) : "";
+        summaries.put(chatId, new RollingSummary(summary, coveredBeforeId));
+        log.info("Summarized {} turns of chat {} in {} ms", turns.size(), chatId, System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * Пересказ всех реплик чата с id меньше {@code coveredBeforeId}.
+     */
+    public record RollingSummary(String text, long coveredBeforeId) {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,423 @@
+package ru.raiff.ai_lab.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.raiff.ai_lab.dto.IngestionReport;
+import ru.raiff.ai_lab.dto.VectorChunk;
+import ru.raiff.ai_lab.model.LoadedDocument;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Конвейер загрузки документов в vector_store: чтение → нарезка на чанки →
+ * пакетные вызовы embedding-модели → пакетная запись через JDBC.
+ * Стадии связаны ограниченными очередями, поэтому объём памяти не зависит от размера входных файлов.
+ * Повторная загрузка файла по тому же пути сравнивает хеши чанков с прежней версией: совпавшие чанки
+ * переносятся к новой версии без пересчёта эмбеддинга, считаются только новые, пропавшие удаляются пачками.
+ * Документ определяется путём относительно {@code app.ingestion.base-dir}: одноимённые файлы из разных
+ * каталогов — разные документы.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentIngestionService {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final DocumentService documentService;
+    private final VectorStoreService vectorStoreService;
+    private final EmbeddingModel embeddingModel;
+
+    @Value("${app.ingestion.base-dir:./data/documents}")
+    private String baseDir;
+
+    @Value("${app.ingestion.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.ingestion.chunk-overlap:100}")
+    private int chunkOverlap;
+
+    @Value("${app.ingestion.embedding-batch-size:32}")
+    private int embeddingBatchSize;
+
+    @Value("${app.ingestion.write-batch-size:256}")
+    private int writeBatchSize;
+
+    @Value("${app.ingestion.queue-capacity:256}")
+    private int queueCapacity;
+
+    public IngestionReport ingest(List<Path> files) {
+        long startedAt = System.nanoTime();
+        Pipeline pipeline = new Pipeline(root());
+
+        ExecutorService stages = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> reader = stages.submit(() -> pipeline.read(files));
+            Future<?> embedder = stages.submit(pipeline::embed);
+            Future<?> writer = stages.submit(pipeline::write);
+            await(pipeline, reader, embedder, writer);
+        } finally {
+            stages.shutdownNow();
+        }
+
+        long elapsedNanos = Math.max(System.nanoTime() - startedAt, 1);
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        IngestionReport report = new IngestionReport(
+                pipeline.documents.get(),
+                pipeline.skipped.get(),
+                pipeline.chunks.get(),
+                pipeline.reused.get(),
+                pipeline.deleted.get(),
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                pipeline.documents.get() / seconds,
+                pipeline.chunks.get() / seconds);
+
+        log.info("Ingestion finished: {} documents ({} skipped), {} chunks embedded, {} reused, {} deleted in {} ms, "
+                        + "{} docs/sec, {} chunks/sec",
+                report.documents(), report.skippedDocuments(), report.chunks(), report.reusedChunks(),
+                report.deletedChunks(), report.elapsedMillis(),
+                String.format(Locale.ROOT, "%.2f", report.docsPerSecond()),
+                String.format(Locale.ROOT, "%.2f", report.chunksPerSecond()));
+        return report;
+    }
+
+    private void await(Pipeline pipeline, Future<?>... stages) {
+        for (Future<?> stage : stages) {
+            try {
+                stage.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pipeline.failed = true;
+                throw new RuntimeException("Ingestion interrupted", e);
+            } catch (ExecutionException e) {
+                pipeline.failed = true;
+                throw new RuntimeException("Ingestion failed", e.getCause());
+            }
+        }
+    }
+
+    private Path root() {
+        Path root = Path.of(baseDir).toAbsolutePath().normalize();
+        try {
+            // контроллер передаёт пути с раскрытыми ссылками, корень раскрываем так же
+            return root.toRealPath();
+        } catch (IOException e) {
+            return root;
+        }
+    }
+
+    /**
+     * Путь документа относительно корня загрузки; файл вне корня (вызов не через контроллер) — по абсолютному пути.
+     */
+    private static String sourcePath(Path root, Path file) {
+        Path path = file.startsWith(root) ? root.relativize(file) : file.toAbsolutePath().normalize();
+        return path.toString().replace(File.separatorChar, '/');
+    }
+
+    private static String documentType(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || dot == name.length() - 1) {
+            return "txt";
+        }
+        String extension = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return extension.length() > 10 ? extension.substring(0, 10) : extension;
+    }
+
+    private static Map<String, Object> metadata(DocumentTask document, int index) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("source", document.filename());
+        metadata.put("document_hash", document.contentHash());
+        metadata.put("chunk_index", index);
+        return metadata;
+    }
+
+    /**
+     * {@code previousChunks} — чанки прежних версий файла по хешу; читатель забирает из неё совпавшие,
+     * оставшиеся после конца документа удаляются.
+     */
+    private record DocumentTask(Path path, String filename, String contentHash, String documentType, Integer documentId,
+                                List<Integer> replacedDocumentIds, Map<String, Deque<String>> previousChunks,
+                                AtomicInteger chunkCount, AtomicInteger reusedCount) {
+    }
+
+    private sealed interface Item permits ChunkItem, EmbeddedItem, ReusedItem, DocumentEnd, EndOfStream {
+    }
+
+    private record ChunkItem(DocumentTask document, int index, String text, String hash) implements Item {
+    }
+
+    private record EmbeddedItem(VectorChunk chunk) implements Item {
+    }
+
+    private record ReusedItem(VectorChunk chunk) implements Item {
+    }
+
+    private record DocumentEnd(DocumentTask document) implements Item {
+    }
+
+    private record EndOfStream() implements Item {
+    }
+
+    private class Pipeline {
+
+        private final Path root;
+        private final BlockingQueue<Item> chunkQueue = new ArrayBlockingQueue<>(queueCapacity);
+        private final BlockingQueue<Item> writeQueue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicInteger documents = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicLong chunks = new AtomicLong();
+        private final AtomicLong reused = new AtomicLong();
+        private final AtomicLong deleted = new AtomicLong();
+        private volatile boolean failed;
+
+        Pipeline(Path root) {
+            this.root = root;
+        }
+
+        void read(List<Path> files) {
+            try {
+                for (Path file : files) {
+                    String filename = sourcePath(root, file);
+                    String hash = documentService.calculateFileHash(file);
+                    Optional<LoadedDocument> loaded = documentService.getDocumentByFilenameAndHash(filename, hash);
+                    if (loaded.isPresent() && loaded.get().getChunkCount() != null) {
+                        log.info("Document already loaded, skipping: {}", filename);
+                        skipped.incrementAndGet();
+                        continue;
+                    }
+
+                    DocumentTask document = begin(file, filename, hash);
+                    try (Reader reader = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+                        TextChunker chunker = new TextChunker(reader, chunkSize, chunkOverlap);
+                        while (chunker.hasNext()) {
+                            String text = chunker.next();
+                            String chunkHash = HashUtils.sha256(text);
+                            int index = document.chunkCount().getAndIncrement();
+                            Deque<String> previous = document.previousChunks().get(chunkHash);
+                            String previousId = previous != null ? previous.poll() : null;
+                            if (previousId != null) {
+                                document.reusedCount().incrementAndGet();
+                                put(chunkQueue, new ReusedItem(new VectorChunk(previousId, text, metadata(document, index),
+                                        null, document.documentId(), chunkHash)));
+                            } else {
+                                put(chunkQueue, new ChunkItem(document, index, text, chunkHash));
+                            }
+                        }
+                    }
+                    put(chunkQueue, new DocumentEnd(document));
+                }
+            } catch (IOException e) {
+                failed = true;
+                throw new RuntimeException("Error reading documents", e);
+            } catch (RuntimeException e) {
+                failed = true;
+                throw e;
+            } finally {
+                offerEnd(chunkQueue);
+            }
+        }
+
+        private DocumentTask begin(Path file, String filename, String hash) {
+            // прежние версии файла и брошенная на середине загрузка этой же версии — источник готовых чанков
+            List<Integer> previousIds = documentService.getDocumentsByFilename(filename).stream()
+                    .map(LoadedDocument::getId)
+                    .toList();
+            LoadedDocument current = documentService.beginDocument(filename, hash, documentType(file));
+            Map<String, Deque<String>> previousChunks = vectorStoreService.getChunkIdsByHash(previousIds);
+            List<Integer> replacedIds = previousIds.stream()
+                    .filter(id -> !id.equals(current.getId()))
+                    .toList();
+            return new DocumentTask(file, filename, hash, current.getDocumentType(), current.getId(), replacedIds,
+                    previousChunks, new AtomicInteger(), new AtomicInteger());
+        }
+
+        void embed() {
+            List<ChunkItem> batch = new ArrayList<>(embeddingBatchSize);
+            try {
+                while (true) {
+                    Item item = take(chunkQueue);
+                    if (item == null) {
+                        flushEmbeddings(batch);
+                        continue;
+                    }
+                    if (item instanceof ChunkItem chunk) {
+                        batch.add(chunk);
+                        if (batch.size() >= embeddingBatchSize) {
+                            flushEmbeddings(batch);
+                        }
+                        continue;
+                    }
+                    if (item instanceof ReusedItem) {
+                        put(writeQueue, item);
+                        continue;
+                    }
+                    flushEmbeddings(batch);
+                    if (item instanceof EndOfStream) {
+                        return;
+                    }
+                    put(writeQueue, item);
+                }
+            } catch (RuntimeException e) {
+                failed = true;
+                throw e;
+            } finally {
+                offerEnd(writeQueue);
+            }
+        }
+
+        void write() {
+            List<VectorChunk> batch = new ArrayList<>(writeBatchSize);
+            List<VectorChunk> relinks = new ArrayList<>(writeBatchSize);
+            try {
+                while (true) {
+                    Item item = take(writeQueue);
+                    if (item == null) {
+                        flushWrites(batch);
+                        flushRelinks(relinks);
+                        continue;
+                    }
+                    if (item instanceof EmbeddedItem embedded) {
+                        batch.add(embedded.chunk());
+                        if (batch.size() >= writeBatchSize) {
+                            flushWrites(batch);
+                        }
+                    } else if (item instanceof ReusedItem reusedChunk) {
+                        relinks.add(reusedChunk.chunk());
+                        if (relinks.size() >= writeBatchSize) {
+                            flushRelinks(relinks);
+                        }
+                    } else if (item instanceof DocumentEnd end) {
+                        flushWrites(batch);
+                        flushRelinks(relinks);
+                        complete(end.document());
+                    } else if (item instanceof EndOfStream) {
+                        flushWrites(batch);
+                        flushRelinks(relinks);
+                        return;
+                    }
+                }
+            } catch (RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        private void complete(DocumentTask document) {
+            List<String> removed = new ArrayList<>();
+            document.previousChunks().values().forEach(removed::addAll);
+            for (int from = 0; from < removed.size(); from += writeBatchSize) {
+                vectorStoreService.deleteVectors(removed.subList(from, Math.min(from + writeBatchSize, removed.size())));
+            }
+            deleted.addAndGet(removed.size());
+            documentService.completeDocument(document.documentId(), document.chunkCount().get(),
+                    document.replacedDocumentIds());
+            documents.incrementAndGet();
+            int reusedCount = document.reusedCount().get();
+            reused.addAndGet(reusedCount);
+            log.info("Document {} ingested with {} chunks: {} embedded, {} reused, {} deleted", document.filename(),
+                    document.chunkCount().get(), document.chunkCount().get() - reusedCount, reusedCount, removed.size());
+        }
+
+        private void flushEmbeddings(List<ChunkItem> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<String> texts = new ArrayList<>(batch.size());
+            for (ChunkItem chunk : batch) {
+                texts.add(chunk.text());
+            }
+            List<float[]> embeddings = embeddingModel.embed(texts);
+            if (embeddings.size() != batch.size()) {
+                throw new RuntimeException("Embedding model returned " + embeddings.size()
+                        + " vectors for " + batch.size() + " chunks");
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                ChunkItem chunk = batch.get(i);
+                put(writeQueue, new EmbeddedItem(new VectorChunk(UUID.randomUUID().toString(), chunk.text(),
+                        metadata(chunk.document(), chunk.index()), embeddings.get(i), chunk.document().documentId(),
+                        chunk.hash())));
+            }
+            batch.clear();
+        }
+
+        private void flushWrites(List<VectorChunk> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            vectorStoreService.saveVectorsBatch(batch);
+            chunks.addAndGet(batch.size());
+            batch.clear();
+        }
+
+        private void flushRelinks(List<VectorChunk> relinks) {
+            if (relinks.isEmpty()) {
+                return;
+            }
+            vectorStoreService.relinkVectorsBatch(relinks);
+            relinks.clear();
+        }
+
+        private void put(BlockingQueue<Item> queue, Item item) {
+            try {
+                while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    checkFailed();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Ingestion interrupted", e);
+            }
+        }
+
+        private Item take(BlockingQueue<Item> queue) {
+            try {
+                Item item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    checkFailed();
+                }
+                return item;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Ingestion interrupted", e);
+            }
+        }
+
+        private void offerEnd(BlockingQueue<Item> queue) {
+            if (!failed) {
+                put(queue, new EndOfStream());
+            }
+        }
+
+        private void checkFailed() {
+            if (failed) {
+                throw new RuntimeException("Ingestion aborted because another stage failed");
+            }
+        }
+    }
+}
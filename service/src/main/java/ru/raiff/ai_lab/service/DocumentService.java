@@ -3,13 +3,12 @@ package ru.raiff.ai_lab.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import ru.raiff.ai_lab.model.LoadedDocument;
 import ru.raiff.ai_lab.repository.LoadedDocumentRepository;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -21,10 +20,13 @@ import java.util.Optional;
 public class DocumentService {
     
     private final LoadedDocumentRepository loadedDocumentRepository;
+    private final VectorStoreService vectorStoreService;
     
     public LoadedDocument saveDocument(String filename, String content, String documentType, Integer chunkCount) {
-        String contentHash = calculateHash(content);
-        
+        return saveDocumentWithHash(filename, calculateHash(content), documentType, chunkCount);
+    }
+    
+    public LoadedDocument saveDocumentWithHash(String filename, String contentHash, String documentType, Integer chunkCount) {
         if (loadedDocumentRepository.existsByFilenameAndContentHash(filename, contentHash)) {
             log.info("Document already exists: {} with hash: {}", filename, contentHash);
             return loadedDocumentRepository.findByFilenameAndContentHash(filename, contentHash)
@@ -42,6 +44,41 @@ public class DocumentService {
         return loadedDocumentRepository.save(document);
     }
     
+    /**
+     * Запись о документе, загрузка которого начинается. Пока {@code chunk_count} пуст, загрузка не завершена:
+     * повторная загрузка того же содержимого продолжит её, а не пропустит файл.
+     */
+    public LoadedDocument beginDocument(String filename, String contentHash, String documentType) {
+        Optional<LoadedDocument> existing = loadedDocumentRepository.findByFilenameAndContentHash(filename, contentHash);
+        if (existing.isPresent()) {
+            log.info("Resuming incomplete load of document: {}", filename);
+            return existing.get();
+        }
+        
+        LoadedDocument document = new LoadedDocument();
+        document.setFilename(filename);
+        document.setContentHash(contentHash);
+        document.setDocumentType(documentType);
+        document.setLoadedAt(LocalDateTime.now());
+        return loadedDocumentRepository.save(document);
+    }
+    
+    /**
+     * Завершает загрузку: фиксирует число чанков и удаляет записи о прежних версиях файла.
+     */
+    public LoadedDocument completeDocument(Integer documentId, Integer chunkCount, List<Integer> replacedIds) {
+        LoadedDocument document = loadedDocumentRepository.findById(documentId)
+                .orElseThrow(() -> new RuntimeException("Document not found with id: " + documentId));
+        document.setChunkCount(chunkCount);
+        if (!replacedIds.isEmpty()) {
+            log.info("Document {} replaces {} previous versions", document.getFilename(), replacedIds.size());
+            // чанки с хешем загрузка уже перенесла или удалила, остаются только чанки без хеша
+            vectorStoreService.deleteDocumentVectors(replacedIds);
+            loadedDocumentRepository.deleteAllByIdInBatch(replacedIds);
+        }
+        return loadedDocumentRepository.save(document);
+    }
+    
     public Optional<LoadedDocument> getDocumentById(Integer id) {
         return loadedDocumentRepository.findById(id);
     }
@@ -77,11 +114,13 @@ public class DocumentService {
     
     public void deleteDocument(Integer id) {
         log.info("Deleting document with id: {}", id);
+        vectorStoreService.deleteDocumentVectors(List.of(id));
         loadedDocumentRepository.deleteById(id);
     }
     
     public void deleteAllDocuments() {
         log.warn("Deleting all documents");
+        vectorStoreService.deleteAllDocumentVectors();
         loadedDocumentRepository.deleteAll();
     }
     
@@ -101,19 +140,12 @@ public class DocumentService {
         return loadedDocumentRepository.save(document);
     }
     
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public String calculateFileHash(Path path) {
+        return HashUtils.sha256(path);
+    }
+    
     private String calculateHash(String content) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Error calculating hash", e);
-        }
+        return HashUtils.sha256(content);
     }
 }
\ No newline at end of file
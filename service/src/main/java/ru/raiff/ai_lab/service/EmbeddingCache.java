@@ -0,0 +1,109 @@
+package ru.raiff.ai_lab.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.raiff.ai_lab.repository.EmbeddingCacheRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Двухуровневый кеш эмбеддингов с ключом (модель, SHA-256 текста): ограниченный по размеру
+ * in-memory уровень (Caffeine, W-TinyLFU) и персистентный уровень в таблице embedding_cache.
+ */
+@Component
+@Slf4j
+public class EmbeddingCache {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final EmbeddingCacheRepository embeddingCacheRepository;
+    private final boolean persistent;
+    private final Cache<Key, float[]> memory;
+    private final Counter memoryHits;
+    private final Counter persistentHits;
+    private final Counter misses;
+
+    public EmbeddingCache(EmbeddingCacheRepository embeddingCacheRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${app.embedding-cache.memory-max-bytes:268435456}") long memoryMaxBytes,
+                          @Value("${app.embedding-cache.persistent:true}") boolean persistent) {
+        this.embeddingCacheRepository = embeddingCacheRepository;
+        this.persistent = persistent;
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(memoryMaxBytes)
+                .weigher((Key key, float[] value) -> ENTRY_OVERHEAD_BYTES + key.model().length() + value.length * Float.BYTES)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memory, "embedding.cache.memory");
+        this.memoryHits = lookups(meterRegistry, "memory");
+        this.persistentHits = lookups(meterRegistry, "persistent");
+        this.misses = lookups(meterRegistry, "miss");
+    }
+
+    /**
+     * Возвращает найденные эмбеддинги по хешам; отсутствующие в памяти добираются одним запросом к БД.
+     */
+    public Map<String, float[]> getAll(String model, Collection<String> requested) {
+        Set<String> hashes = new LinkedHashSet<>(requested);
+        Map<String, float[]> found = new HashMap<>();
+        List<String> notInMemory = new ArrayList<>();
+        for (String hash : hashes) {
+            float[] embedding = memory.getIfPresent(new Key(model, hash));
+            if (embedding != null) {
+                found.put(hash, embedding);
+            } else {
+                notInMemory.add(hash);
+            }
+        }
+        memoryHits.increment(found.size());
+
+        if (persistent && !notInMemory.isEmpty()) {
+            try {
+                Map<String, float[]> stored = embeddingCacheRepository.findByModelAndHashes(model, notInMemory);
+                stored.forEach((hash, embedding) -> memory.put(new Key(model, hash), embedding));
+                found.putAll(stored);
+                persistentHits.increment(stored.size());
+            } catch (RuntimeException e) {
+                log.warn("Persistent embedding cache lookup failed, falling back to model", e);
+            }
+        }
+        misses.increment(hashes.size() - found.size());
+        return found;
+    }
+
+    public void putAll(String model, Map<String, float[]> embeddings) {
+        if (embeddings.isEmpty()) {
+            return;
+        }
+        embeddings.forEach((hash, embedding) -> memory.put(new Key(model, hash), embedding));
+        if (persistent) {
+            try {
+                embeddingCacheRepository.saveAll(model, embeddings);
+            } catch (RuntimeException e) {
+                log.warn("Failed to persist {} embeddings to cache", embeddings.size(), e);
+            }
+        }
+    }
+
+    private static Counter lookups(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("embedding.cache.lookups")
+                .description("Embedding cache lookups by the tier that served them")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record Key(String model, String hash) {
+    }
+}
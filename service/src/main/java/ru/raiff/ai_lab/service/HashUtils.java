@@ -0,0 +1,52 @@
+package ru.raiff.ai_lab.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public final class HashUtils {
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private HashUtils() {
+    }
+    
+    public static String sha256(String content) {
+        return toHex(newDigest().digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    public static String sha256(Path path) {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error calculating hash for file: " + path, e);
+        }
+        return toHex(digest.digest());
+    }
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Error calculating hash", e);
+        }
+    }
+    
+    private static String toHex(byte[] hash) {
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
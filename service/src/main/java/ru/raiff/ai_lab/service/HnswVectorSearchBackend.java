@@ -0,0 +1,380 @@
+package ru.raiff.ai_lab.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.raiff.ai_lab.dto.VectorSearchOptions;
+import ru.raiff.ai_lab.index.HnswIndex;
+import ru.raiff.ai_lab.index.Quantization;
+import ru.raiff.ai_lab.model.DistanceMetric;
+import ru.raiff.ai_lab.model.VectorStore;
+import ru.raiff.ai_lab.repository.VectorStoreJdbcRepository;
+import ru.raiff.ai_lab.repository.VectorStoreRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Поиск соседей по in-JVM {@link HnswIndex} с файлами в {@code app.vector-index.path}.
+ * При старте отображает существующий индекс и догоняет его из vector_store; пока догонка не закончена,
+ * запросы идут в Postgres. Когда доля надгробий превышает порог, индекс перестраивается в новое поколение.
+ * <p>
+ * При сжатых векторах ({@code app.vector-index.quantization}) граф обходится по кодам, а {@code limit * rerank-factor}
+ * кандидатов пересчитываются по полным эмбеддингам из vector_store, которые и так загружаются вместе со строками.
+ * Граф строится по косинусу; запросы с другой метрикой уходят в Postgres.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = "app.vector-index.backend", havingValue = "hnsw")
+public class HnswVectorSearchBackend implements VectorSearchBackend {
+
+    private static final String GENERATION_PREFIX = "gen-";
+    private static final int CATCH_UP_BATCH = 500;
+
+    private final VectorStoreJdbcRepository vectorStoreJdbcRepository;
+    private final VectorStoreRepository vectorStoreRepository;
+    // читатели — поиск, изменения и checkpoint текущего поколения; писатель — переключение поколений
+    private final ReadWriteLock generationLock = new ReentrantReadWriteLock();
+
+    @Value("${app.vector-index.path:./data/hnsw}")
+    private Path basePath;
+
+    @Value("${app.vector-index.dimensions:1024}")
+    private int dimensions;
+
+    @Value("${app.vector-index.m:16}")
+    private int m;
+
+    @Value("${app.vector-index.ef-construction:200}")
+    private int efConstruction;
+
+    @Value("${app.vector-index.ef-search:64}")
+    private int efSearch;
+
+    @Value("${app.vector-index.quantization:none}")
+    private Quantization quantization;
+
+    @Value("${app.vector-index.rerank-factor:4}")
+    private int rerankFactor;
+
+    @Value("${app.vector-index.compaction-threshold:0.2}")
+    private double compactionThreshold;
+
+    private volatile HnswIndex index;
+    private volatile boolean ready;
+    private volatile List<Consumer<HnswIndex>> pendingDuringCompaction;
+    private volatile List<Consumer<HnswIndex>> pendingDuringCatchUp;
+
+    @PostConstruct
+    public void open() {
+        Path current = latestGeneration().orElseGet(this::nextGeneration);
+        try {
+            index = HnswIndex.open(current, dimensions, m, efConstruction, quantization);
+        } catch (UncheckedIOException e) {
+            // индекс с другими параметрами (например, сменили квантование) или с графом, сославшимся на узлы после
+            // последнего checkpoint (падение процесса), не переиспользуем: догонка заполнит новый
+            log.warn("Cannot reuse HNSW index at {}, starting a new generation: {}", current, e.getMessage());
+            current = nextGeneration();
+            index = HnswIndex.open(current, dimensions, m, efConstruction, quantization);
+        }
+        deleteGenerationsExcept(current);
+        log.info("Opened HNSW index at {} with {} vectors", current, index.size());
+    }
+
+    /**
+     * Сверяет индекс со снимком id из vector_store. Изменения, пришедшие после снимка, откладываются
+     * и применяются поверх догонки: иначе чанк, сохранённый после снимка, догонка сочла бы лишним и удалила.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void catchUpFromDatabase() {
+        // под блокировкой записи: изменения, начатые до этой точки, уже в индексе и в снимке ниже
+        generationLock.writeLock().lock();
+        try {
+            pendingDuringCatchUp = Collections.synchronizedList(new ArrayList<>());
+        } finally {
+            generationLock.writeLock().unlock();
+        }
+        Thread.ofVirtual().name("hnsw-catch-up").start(() -> {
+            long startedAt = System.currentTimeMillis();
+            try {
+                Set<String> databaseIds = new HashSet<>(vectorStoreJdbcRepository.findAllIds());
+                HnswIndex current = index;
+                int removed = 0;
+                for (String id : current.ids()) {
+                    if (!databaseIds.contains(id)) {
+                        current.remove(id);
+                        removed++;
+                    }
+                }
+                List<String> missing = databaseIds.stream().filter(id -> !current.contains(id)).toList();
+                for (int from = 0; from < missing.size(); from += CATCH_UP_BATCH) {
+                    List<String> batch = missing.subList(from, Math.min(missing.size(), from + CATCH_UP_BATCH));
+                    vectorStoreJdbcRepository.findEmbeddings(batch).forEach((id, embedding) -> {
+                        if (embedding != null) {
+                            current.upsert(id, embedding);
+                        }
+                    });
+                }
+                int replayed = finishCatchUp();
+                index.checkpoint();
+                ready = true;
+                log.info("HNSW index caught up: {} added, {} removed, {} changes replayed in {} ms",
+                        missing.size(), removed, replayed, System.currentTimeMillis() - startedAt);
+            } catch (Exception e) {
+                log.error("Error catching up HNSW index, searches stay on Postgres", e);
+                finishCatchUp();
+            }
+        });
+    }
+
+    @Override
+    public List<VectorStore> findNearest(float[] queryEmbedding, int limit, VectorSearchOptions options) {
+        if (!ready || options.metric() != DistanceMetric.COSINE) {
+            return vectorStoreJdbcRepository.findNearestNeighbors(queryEmbedding, limit, options);
+        }
+        boolean rerank = quantization != Quantization.NONE;
+        int candidates = rerank ? limit * rerankFactor : limit;
+        int ef = options.efSearch() != null ? options.efSearch() : efSearch;
+        List<HnswIndex.Neighbor> neighbors;
+        generationLock.readLock().lock();
+        try {
+            neighbors = index.search(queryEmbedding, candidates, Math.max(ef, candidates));
+        } finally {
+            generationLock.readLock().unlock();
+        }
+        List<String> ids = neighbors.stream().map(HnswIndex.Neighbor::id).toList();
+        Map<String, VectorStore> byId = new HashMap<>();
+        vectorStoreRepository.findAllById(ids).forEach(row -> byId.put(row.getId(), row));
+        List<VectorStore> rows = ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+        if (!rerank) {
+            return rows;
+        }
+        return rows.stream()
+                .filter(row -> row.getEmbedding() != null)
+                .sorted(Comparator.comparingDouble(row -> cosineDistance(queryEmbedding, row.getEmbedding())))
+                .limit(limit)
+                .toList();
+    }
+
+    @Override
+    public String name() {
+        return "hnsw-" + quantization.name().toLowerCase();
+    }
+
+    @Override
+    public double bytesPerVector() {
+        return index.bytesPerVector();
+    }
+
+    @Override
+    public void onSaved(Map<String, float[]> embeddings) {
+        embeddings.forEach((id, embedding) -> {
+            if (embedding != null) {
+                apply(target -> target.upsert(id, embedding));
+            }
+        });
+    }
+
+    @Override
+    public void onDeleted(Collection<String> ids) {
+        ids.forEach(id -> apply(target -> target.remove(id)));
+    }
+
+    @Override
+    public void onCleared() {
+        // одним изменением: отложенное до конца догонки, оно должно убрать и то, что догонка добавит
+        apply(target -> target.ids().forEach(target::remove));
+    }
+
+    @Scheduled(fixedDelayString = "${app.vector-index.checkpoint-interval:PT1M}")
+    public void checkpoint() {
+        generationLock.readLock().lock();
+        try {
+            index.checkpoint();
+        } finally {
+            generationLock.readLock().unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.vector-index.compaction-check-interval:PT10M}")
+    public void compactIfNeeded() {
+        HnswIndex current = index;
+        int total = current.size() + current.tombstoneCount();
+        if (!ready || total == 0 || (double) current.tombstoneCount() / total < compactionThreshold) {
+            return;
+        }
+        long startedAt = System.currentTimeMillis();
+        log.info("Compacting HNSW index: {} live, {} tombstones", current.size(), current.tombstoneCount());
+
+        // под блокировкой записи: изменения, начатые до этой точки, уже в current и попадут в обход ниже,
+        // а начатые после — запишутся в очередь
+        generationLock.writeLock().lock();
+        try {
+            pendingDuringCompaction = Collections.synchronizedList(new ArrayList<>());
+        } finally {
+            generationLock.writeLock().unlock();
+        }
+        HnswIndex compacted = null;
+        try {
+            compacted = HnswIndex.open(nextGeneration(), dimensions, m, efConstruction, quantization);
+            current.forEachLive(compacted::upsert);
+            generationLock.writeLock().lock();
+            try {
+                // изменения, пришедшие во время перестроения, досылаем в новый индекс перед переключением
+                for (Consumer<HnswIndex> mutation : pendingDuringCompaction) {
+                    mutation.accept(compacted);
+                }
+                index = compacted;
+            } finally {
+                pendingDuringCompaction = null;
+                generationLock.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            log.error("Error compacting HNSW index, keeping the current generation", e);
+            if (compacted != null && index != compacted) {
+                compacted.close();
+                deleteRecursively(compacted.directory());
+            }
+            return;
+        }
+        compacted.checkpoint();
+        // после переключения под блокировкой записи старое поколение никто не держит
+        current.close();
+        deleteGenerationsExcept(compacted.directory());
+        log.info("HNSW index compacted to {} vectors in {} ms", compacted.size(), System.currentTimeMillis() - startedAt);
+    }
+
+    @PreDestroy
+    public void close() {
+        generationLock.writeLock().lock();
+        try {
+            index.close();
+        } finally {
+            generationLock.writeLock().unlock();
+        }
+    }
+
+    private static double cosineDistance(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 1 : 1 - dot / Math.sqrt(normA * normB);
+    }
+
+    private void apply(Consumer<HnswIndex> mutation) {
+        generationLock.readLock().lock();
+        try {
+            List<Consumer<HnswIndex>> catchUp = pendingDuringCatchUp;
+            if (catchUp != null) {
+                catchUp.add(mutation);
+                return;
+            }
+            List<Consumer<HnswIndex>> pending = pendingDuringCompaction;
+            if (pending != null) {
+                pending.add(mutation);
+            }
+            mutation.accept(index);
+        } finally {
+            generationLock.readLock().unlock();
+        }
+    }
+
+    // отложенные изменения применяются по порядку под блокировкой записи, чтобы новые не обогнали их
+    private int finishCatchUp() {
+        generationLock.writeLock().lock();
+        try {
+            List<Consumer<HnswIndex>> pending = pendingDuringCatchUp;
+            pendingDuringCatchUp = null;
+            if (pending == null) {
+                return 0;
+            }
+            for (Consumer<HnswIndex> mutation : pending) {
+                try {
+                    mutation.accept(index);
+                } catch (RuntimeException e) {
+                    log.warn("Error replaying HNSW index change", e);
+                }
+            }
+            return pending.size();
+        } finally {
+            generationLock.writeLock().unlock();
+        }
+    }
+
+    private Optional<Path> latestGeneration() {
+        try (Stream<Path> dirs = listGenerations()) {
+            return dirs.filter(dir -> Files.exists(dir.resolve("index.meta")))
+                    .max(Comparator.comparing(dir -> generationNumber(dir)));
+        }
+    }
+
+    private Path nextGeneration() {
+        try (Stream<Path> dirs = listGenerations()) {
+            long next = dirs.mapToLong(this::generationNumber).max().orElse(0) + 1;
+            return basePath.resolve(GENERATION_PREFIX + next);
+        }
+    }
+
+    private void deleteGenerationsExcept(Path keep) {
+        try (Stream<Path> dirs = listGenerations()) {
+            dirs.filter(dir -> !dir.equals(keep)).forEach(this::deleteRecursively);
+        }
+    }
+
+    private Stream<Path> listGenerations() {
+        try {
+            Files.createDirectories(basePath);
+            return Files.list(basePath).filter(dir -> dir.getFileName().toString().startsWith(GENERATION_PREFIX));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error listing HNSW index directory " + basePath, e);
+        }
+    }
+
+    private long generationNumber(Path dir) {
+        try {
+            return Long.parseLong(dir.getFileName().toString().substring(GENERATION_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void deleteRecursively(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete old HNSW index generation {}", dir, e);
+        }
+    }
+}
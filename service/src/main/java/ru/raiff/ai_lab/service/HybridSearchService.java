@@ -0,0 +1,86 @@
+package ru.raiff.ai_lab.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.raiff.ai_lab.dto.SearchResult;
+import ru.raiff.ai_lab.model.VectorStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Гибридный поиск: BM25 из {@link LexicalIndexService} и ближайшие соседи из vector_store,
+ * объединённые через reciprocal rank fusion. Пока лексический индекс строится после старта, поиск идёт
+ * только по векторам: неполный индекс сдвигал бы ранги в пользу уже проиндексированных фрагментов.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class HybridSearchService {
+    
+    private final LexicalIndexService lexicalIndexService;
+    private final VectorStoreService vectorStoreService;
+    private final EmbeddingModel embeddingModel;
+    
+    @Value("${app.hybrid-search.rrf-k:60}")
+    private int rrfK;
+    
+    @Value("${app.hybrid-search.candidates:50}")
+    private int candidates;
+    
+    public List<SearchResult> search(String query, int limit) {
+        int depth = Math.max(limit, candidates);
+        
+        List<VectorStore> semantic = vectorStoreService.findSimilarVectors(embeddingModel.embed(query), depth);
+        List<LexicalIndexService.ScoredId> lexical;
+        if (lexicalIndexService.isReady()) {
+            lexical = lexicalIndexService.search(query, depth);
+        } else {
+            log.info("Lexical index is not ready, hybrid search falls back to semantic results only");
+            lexical = List.of();
+        }
+        
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, VectorStore> rows = new HashMap<>();
+        for (int rank = 0; rank < semantic.size(); rank++) {
+            VectorStore row = semantic.get(rank);
+            rows.put(row.getId(), row);
+            scores.merge(row.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+        }
+        for (int rank = 0; rank < lexical.size(); rank++) {
+            scores.merge(lexical.get(rank).id(), 1.0 / (rrfK + rank + 1), Double::sum);
+        }
+        
+        List<Map.Entry<String, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+        if (ranked.size() > limit) {
+            ranked = ranked.subList(0, limit);
+        }
+        
+        List<String> missing = ranked.stream()
+                .map(Map.Entry::getKey)
+                .filter(id -> !rows.containsKey(id))
+                .toList();
+        if (!missing.isEmpty()) {
+            vectorStoreService.getVectorsByIds(missing).forEach(row -> rows.put(row.getId(), row));
+        }
+        
+        Map<String, SearchResult> results = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> entry : ranked) {
+            VectorStore row = rows.get(entry.getKey());
+            if (row != null) {
+                results.put(row.getId(), new SearchResult(row.getId(), row.getContent(),
+                        vectorStoreService.parseMetadata(row.getMetadata()), entry.getValue()));
+            }
+        }
+        log.info("Hybrid search: {} semantic + {} lexical candidates fused into {} results",
+                semantic.size(), lexical.size(), results.size());
+        return new ArrayList<>(results.values());
+    }
+}
@@ -0,0 +1,23 @@
+package ru.raiff.ai_lab.service;
+
+import com.github.pemistahl.lingua.api.Language;
+import com.github.pemistahl.lingua.api.LanguageDetector;
+import com.github.pemistahl.lingua.api.LanguageDetectorBuilder;
+import org.springframework.stereotype.Service;
+
+/**
+ * Определение языка текста (русский или английский) через Lingua.
+ * Всё, что не удалось уверенно распознать как русский, считается английским.
+ */
+@Service
+public class LanguageDetectionService {
+    
+    private final LanguageDetector detector = LanguageDetectorBuilder
+            .fromLanguages(Language.RUSSIAN, Language.ENGLISH)
+            .withLowAccuracyMode()
+            .build();
+    
+    public boolean isRussian(String text) {
+        return text != null && !text.isBlank() && detector.detectLanguageOf(text) == Language.RUSSIAN;
+    }
+}
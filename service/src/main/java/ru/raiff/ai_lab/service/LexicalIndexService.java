@@ -0,0 +1,243 @@
+package ru.raiff.ai_lab.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.ru.RussianAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.QueryBuilder;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process BM25-индекс по vector_store.content на Lucene. Для каждого чанка язык определяется
+ * через Lingua, и текст попадает в поле с русским или английским анализатором.
+ * Индекс живёт в памяти, при старте заполняется из БД и дальше обновляется инкрементально.
+ * Изменения, пришедшие во время начального чтения, откладываются и применяются после него:
+ * иначе чанк, удалённый посреди чтения, вернулся бы в индекс из снимка запроса.
+ */
+@Service
+@Slf4j
+public class LexicalIndexService {
+    
+    private static final String ID_FIELD = "id";
+    private static final String RUSSIAN_FIELD = "content_ru";
+    private static final String ENGLISH_FIELD = "content_en";
+    
+    private final LanguageDetectionService languageDetectionService;
+    private final JdbcTemplate jdbcTemplate;
+    private final ByteBuffersDirectory directory = new ByteBuffersDirectory();
+    private final Analyzer russianAnalyzer = new RussianAnalyzer();
+    private final Analyzer englishAnalyzer = new EnglishAnalyzer();
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final Object bootstrapLock = new Object();
+    // null после завершения начального чтения
+    private List<Runnable> pendingDuringBootstrap = new ArrayList<>();
+    private volatile boolean ready;
+    
+    public LexicalIndexService(LanguageDetectionService languageDetectionService, JdbcTemplate jdbcTemplate) {
+        this.languageDetectionService = languageDetectionService;
+        this.jdbcTemplate = jdbcTemplate;
+        try {
+            Analyzer analyzer = new PerFieldAnalyzerWrapper(new StandardAnalyzer(),
+                    Map.of(RUSSIAN_FIELD, russianAnalyzer, ENGLISH_FIELD, englishAnalyzer));
+            this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+            this.searcherManager = new SearcherManager(writer, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error creating lexical index", e);
+        }
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildFromDatabase() {
+        Thread.ofVirtual().name("lexical-index-bootstrap").start(() -> {
+            long startedAt = System.currentTimeMillis();
+            try {
+                long[] count = {0};
+                jdbcTemplate.query("SELECT id, content FROM vector_store", rs -> {
+                    addDocument(rs.getString(1), rs.getString(2));
+                    count[0]++;
+                });
+                int replayed = finishBootstrap();
+                ready = true;
+                log.info("Lexical index built for {} chunks in {} ms, {} changes replayed",
+                        count[0], System.currentTimeMillis() - startedAt, replayed);
+            } catch (Exception e) {
+                log.error("Error building lexical index", e);
+                finishBootstrap();
+            }
+        });
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    public void index(String id, String content) {
+        apply(() -> {
+            addDocument(id, content);
+            refresh();
+        });
+    }
+    
+    public void indexAll(Map<String, String> contentById) {
+        apply(() -> {
+            contentById.forEach(this::addDocument);
+            refresh();
+        });
+    }
+    
+    public void delete(Collection<String> ids) {
+        apply(() -> {
+            try {
+                for (String id : ids) {
+                    writer.deleteDocuments(new Term(ID_FIELD, id));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error deleting from lexical index", e);
+            }
+            refresh();
+        });
+    }
+    
+    public void deleteAll() {
+        apply(() -> {
+            try {
+                writer.deleteAll();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error clearing lexical index", e);
+            }
+            refresh();
+        });
+    }
+    
+    public List<ScoredId> search(String text, int limit) {
+        Query query = buildQuery(text);
+        if (query == null) {
+            return List.of();
+        }
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                TopDocs topDocs = searcher.search(query, limit);
+                StoredFields storedFields = searcher.storedFields();
+                List<ScoredId> result = new ArrayList<>(topDocs.scoreDocs.length);
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    result.add(new ScoredId(storedFields.document(scoreDoc.doc).get(ID_FIELD), scoreDoc.score));
+                }
+                return result;
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error searching lexical index", e);
+        }
+    }
+    
+    @PreDestroy
+    public void close() throws IOException {
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+    
+    private void apply(Runnable mutation) {
+        synchronized (bootstrapLock) {
+            if (pendingDuringBootstrap != null) {
+                pendingDuringBootstrap.add(mutation);
+                return;
+            }
+        }
+        mutation.run();
+    }
+    
+    // отложенные изменения применяются по порядку под блокировкой, чтобы новые не обогнали их
+    private int finishBootstrap() {
+        synchronized (bootstrapLock) {
+            List<Runnable> pending = pendingDuringBootstrap;
+            pendingDuringBootstrap = null;
+            for (Runnable mutation : pending) {
+                try {
+                    mutation.run();
+                } catch (RuntimeException e) {
+                    log.warn("Error replaying lexical index change", e);
+                }
+            }
+            refresh();
+            return pending.size();
+        }
+    }
+    
+    private Query buildQuery(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        // язык запроса часто не совпадает с языком документа, поэтому ищем сразу по обоим полям
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        Query russian = new QueryBuilder(russianAnalyzer).createBooleanQuery(RUSSIAN_FIELD, text);
+        Query english = new QueryBuilder(englishAnalyzer).createBooleanQuery(ENGLISH_FIELD, text);
+        if (russian == null && english == null) {
+            return null;
+        }
+        if (russian != null) {
+            builder.add(russian, BooleanClause.Occur.SHOULD);
+        }
+        if (english != null) {
+            builder.add(english, BooleanClause.Occur.SHOULD);
+        }
+        return builder.build();
+    }
+    
+    private void addDocument(String id, String content) {
+        Document document = new Document();
+        document.add(new StringField(ID_FIELD, id, Field.Store.YES));
+        if (content != null && !content.isBlank()) {
+            String field = languageDetectionService.isRussian(content) ? RUSSIAN_FIELD : ENGLISH_FIELD;
+            document.add(new TextField(field, content, Field.Store.NO));
+        }
+        try {
+            writer.updateDocument(new Term(ID_FIELD, id), document);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error indexing chunk " + id, e);
+        }
+    }
+    
+    private void refresh() {
+        try {
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error refreshing lexical index", e);
+        }
+    }
+    
+    public record ScoredId(String id, float score) {
+    }
+}
@@ -0,0 +1,237 @@
+package ru.raiff.ai_lab.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.raiff.ai_lab.dto.LlmQueueStatus;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Допуск запросов к модели: не больше {@code max-concurrent} одновременно и ограниченная FIFO-очередь ожидания.
+ * Переполнение очереди отклоняется сразу, а не копит потоки и память; ждут запросы на виртуальных потоках.
+ */
+@Component
+@Slf4j
+public class LlmConcurrencyLimiter {
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Deque<Ticket> waiting = new ArrayDeque<>();
+    private final MeterRegistry meterRegistry;
+    private int maxConcurrent;
+    private final int maxQueued;
+    private final Duration queueTimeout;
+    private final Duration retryAfter;
+    private final Timer admittedWait;
+    private final Timer timedOutWait;
+    private int active;
+    
+    public LlmConcurrencyLimiter(MeterRegistry meterRegistry,
+                                 @Value("${app.llm.max-concurrent:2}") int maxConcurrent,
+                                 @Value("${app.llm.max-queued:32}") int maxQueued,
+                                 @Value("${app.llm.queue-timeout:PT60S}") Duration queueTimeout,
+                                 @Value("${app.llm.retry-after:PT5S}") Duration retryAfter) {
+        this.meterRegistry = meterRegistry;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.queueTimeout = queueTimeout;
+        this.retryAfter = retryAfter;
+        this.admittedWait = queueWaitTimer(meterRegistry, "admitted");
+        this.timedOutWait = queueWaitTimer(meterRegistry, "timeout");
+    }
+    
+    // не из конструктора: датчик получает ссылку на this
+    @PostConstruct
+    public void registerGauges() {
+        Gauge.builder("llm.queue.active", this, limiter -> limiter.status().active())
+                .description("Model requests currently holding a slot")
+                .register(meterRegistry);
+        Gauge.builder("llm.queue.waiting", this, limiter -> limiter.status().queued())
+                .description("Model requests waiting for a slot")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Встаёт в очередь или сразу получает слот. Бросает {@link LlmOverloadedException}, если очередь полна.
+     */
+    public Ticket enqueue() {
+        lock.lock();
+        try {
+            Ticket ticket = new Ticket();
+            if (active < maxConcurrent && waiting.isEmpty()) {
+                active++;
+                ticket.admitted = true;
+                admittedWait.record(0, TimeUnit.NANOSECONDS);
+                return ticket;
+            }
+            if (waiting.size() >= maxQueued) {
+                log.warn("Rejecting LLM request: {} running, {} queued", active, waiting.size());
+                throw new LlmOverloadedException(true, retryAfter);
+            }
+            waiting.addLast(ticket);
+            return ticket;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public <T> T execute(Supplier<T> work) {
+        Ticket ticket = enqueue();
+        try {
+            ticket.await();
+            return work.get();
+        } finally {
+            ticket.release();
+        }
+    }
+    
+    /**
+     * Меняет число одновременных запросов (например, когда бэкенд модели выпал из ротации или вернулся).
+     * Уже допущенные запросы не прерываются, новые ждут, пока занятых слотов не станет меньше лимита.
+     */
+    public void resize(int maxConcurrent) {
+        lock.lock();
+        try {
+            if (this.maxConcurrent != maxConcurrent) {
+                log.info("LLM concurrency limit changed from {} to {}", this.maxConcurrent, maxConcurrent);
+                this.maxConcurrent = maxConcurrent;
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public LlmQueueStatus status() {
+        lock.lock();
+        try {
+            return new LlmQueueStatus(active, waiting.size(), maxConcurrent, maxQueued);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private static Timer queueWaitTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("llm.queue.wait")
+                .description("Time a model request waited for a slot")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+    
+    public final class Ticket implements AutoCloseable {
+        
+        private final long enqueuedAt = System.nanoTime();
+        private boolean admitted;
+        private boolean released;
+        
+        /**
+         * Место в очереди: 1 — следующий, 0 — слот уже получен.
+         */
+        public int position() {
+            lock.lock();
+            try {
+                if (admitted) {
+                    return 0;
+                }
+                int position = 1;
+                for (Ticket ticket : waiting) {
+                    if (ticket == this) {
+                        return position;
+                    }
+                    position++;
+                }
+                return 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Ждёт слот не дольше {@code slice}: {@code true} — слот получен, {@code false} — всё ещё в очереди.
+         * По истечении общего лимита ожидания покидает очередь и бросает {@link LlmOverloadedException}.
+         */
+        public boolean awaitTurn(Duration slice) {
+            long sliceEnd = System.nanoTime() + slice.toNanos();
+            long deadline = enqueuedAt + queueTimeout.toNanos();
+            lock.lock();
+            try {
+                while (!admitted) {
+                    if (released) {
+                        throw new IllegalStateException("LLM ticket was already released");
+                    }
+                    if (waiting.peekFirst() == this && active < maxConcurrent) {
+                        waiting.removeFirst();
+                        active++;
+                        admitted = true;
+                        changed.signalAll();
+                        admittedWait.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                        break;
+                    }
+                    long now = System.nanoTime();
+                    if (now >= deadline) {
+                        waiting.remove(this);
+                        released = true;
+                        changed.signalAll();
+                        timedOutWait.record(now - enqueuedAt, TimeUnit.NANOSECONDS);
+                        throw new LlmOverloadedException(false, retryAfter);
+                    }
+                    if (now >= sliceEnd) {
+                        return false;
+                    }
+                    changed.awaitNanos(Math.min(sliceEnd, deadline) - now);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                waiting.remove(this);
+                released = true;
+                changed.signalAll();
+                throw new RuntimeException("Interrupted while waiting for an LLM slot", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        public void await() {
+            awaitTurn(queueTimeout);
+        }
+        
+        /**
+         * Освобождает слот или место в очереди; повторный вызов ничего не делает.
+         */
+        public void release() {
+            lock.lock();
+            try {
+                if (released) {
+                    return;
+                }
+                released = true;
+                if (admitted) {
+                    active--;
+                } else {
+                    waiting.remove(this);
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        @Override
+        public void close() {
+            release();
+        }
+    }
+}
\ No newline at end of file
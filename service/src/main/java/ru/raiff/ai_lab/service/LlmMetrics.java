@@ -0,0 +1,178 @@
+package ru.raiff.ai_lab.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Метрики горячего пути запроса к модели. Все метрики генерации помечены тегами {@code backend}, {@code model}
+ * и {@code endpoint}: бэкенд и модель — те, на которые запрос направил {@link RoutingChatModel} (из метаданных
+ * ответа), endpoint потока берётся из контекста Reactor ({@link #ENDPOINT}), который выставляет вызывающий код.
+ * Гистограммы публикуются с процентилями, чтобы по Prometheus можно было считать p95/p99.
+ */
+@Component
+public class LlmMetrics {
+
+    /**
+     * Ключ контекста Reactor с именем endpoint'а для тегов.
+     */
+    public static final String ENDPOINT = "llm.endpoint";
+
+    public static final String UNKNOWN_ENDPOINT = "unknown";
+
+    private static final String UNKNOWN_BACKEND = "unknown";
+
+    private final MeterRegistry meterRegistry;
+    private final String model;
+    private final Map<MeterKey, GenerationMeters> generationMeters = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> activeStreams = new ConcurrentHashMap<>();
+
+    public LlmMetrics(MeterRegistry meterRegistry,
+                      @Value("${spring.ai.ollama.chat.model:unknown}") String model) {
+        this.meterRegistry = meterRegistry;
+        this.model = model;
+    }
+
+    /**
+     * Меряет поток ответа от подписки: время до первого токена, паузы между токенами, скорость генерации —
+     * и отдаёт его текст. Токеном считается один непустой фрагмент потока модели — Ollama отдаёт их по одному.
+     * Бэкенд и модель для тегов берутся из первого фрагмента: повтор на другом бэкенде бывает только до него.
+     */
+    public Flux<String> instrumentGeneration(Flux<ChatResponse> responses) {
+        return Flux.deferContextual(context -> {
+            String endpoint = context.getOrDefault(ENDPOINT, UNKNOWN_ENDPOINT);
+            GenerationMeters[] meters = {null};
+            long startedAt = System.nanoTime();
+            long[] last = {0};
+            int[] count = {0};
+            return responses
+                    .mapNotNull(response -> {
+                        String text = text(response);
+                        if (text == null || text.isEmpty()) {
+                            return null;
+                        }
+                        long now = System.nanoTime();
+                        if (count[0] == 0) {
+                            meters[0] = generationMeters(response, endpoint);
+                            meters[0].timeToFirstToken.record(now - startedAt, TimeUnit.NANOSECONDS);
+                        } else {
+                            meters[0].interToken.record(now - last[0], TimeUnit.NANOSECONDS);
+                        }
+                        last[0] = now;
+                        count[0]++;
+                        return text;
+                    })
+                    .doOnComplete(() -> {
+                        if (meters[0] != null) {
+                            recordThroughput(meters[0], count[0], last[0] - startedAt);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Блокирующий вызов модели: длительность и скорость по числу токенов из usage ответа.
+     */
+    public void recordCompletion(String endpoint, ChatResponse response, long nanos) {
+        GenerationMeters meters = generationMeters(response, endpoint);
+        meters.completion.record(nanos, TimeUnit.NANOSECONDS);
+        Usage usage = response != null ? response.getMetadata().getUsage() : null;
+        if (usage != null && usage.getCompletionTokens() != null) {
+            recordThroughput(meters, usage.getCompletionTokens(), nanos);
+        }
+    }
+
+    /**
+     * Суммарное время работы с БД за одну реплику чата (сохранение вопроса, контекст, запись ответа).
+     */
+    public void recordTurnDbTime(String endpoint, long nanos) {
+        Timer.builder("chat.turn.db")
+                .description("Database time spent on one chat turn")
+                .tag("endpoint", endpoint)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Считает поток открытым SSE-соединением от подписки до завершения или отмены.
+     */
+    public <T> Flux<T> trackActiveStream(String endpoint, Flux<T> stream) {
+        AtomicInteger active = activeStreams.computeIfAbsent(endpoint, key -> meterRegistry.gauge(
+                "sse.streams.active", Tags.of("endpoint", key), new AtomicInteger()));
+        return stream
+                .doOnSubscribe(subscription -> active.incrementAndGet())
+                .doFinally(signal -> active.decrementAndGet());
+    }
+
+    private void recordThroughput(GenerationMeters meters, int tokens, long nanos) {
+        meters.tokens.increment(tokens);
+        if (tokens > 1 && nanos > 0) {
+            meters.tokensPerSecond.record(tokens * 1_000_000_000.0 / nanos);
+        }
+    }
+
+    private static String text(ChatResponse response) {
+        return response.getResult() != null && response.getResult().getOutput() != null ?
+                response.getResult().getOutput().getText() : null;
+    }
+
+    private GenerationMeters generationMeters(ChatResponse response, String endpoint) {
+        ChatResponseMetadata metadata = response != null ? response.getMetadata() : null;
+        String backend = metadata != null ? metadata.getOrDefault(RoutingChatModel.BACKEND_METADATA, UNKNOWN_BACKEND) : UNKNOWN_BACKEND;
+        String routedModel = metadata != null ? metadata.getOrDefault(RoutingChatModel.MODEL_METADATA, model) : model;
+        return generationMeters.computeIfAbsent(new MeterKey(backend, routedModel, endpoint), key -> new GenerationMeters(
+                Timer.builder("llm.time.to.first.token")
+                        .description("Time from the model call to the first streamed token")
+                        .tags(key.tags())
+                        .publishPercentileHistogram()
+                        .register(meterRegistry),
+                Timer.builder("llm.inter.token.latency")
+                        .description("Gap between consecutive streamed tokens")
+                        .tags(key.tags())
+                        .publishPercentileHistogram()
+                        .register(meterRegistry),
+                Timer.builder("llm.completion")
+                        .description("Duration of a blocking model call")
+                        .tags(key.tags())
+                        .publishPercentileHistogram()
+                        .register(meterRegistry),
+                DistributionSummary.builder("llm.generation.tokens.per.second")
+                        .description("Generation speed of one response")
+                        .baseUnit("tokens/s")
+                        .tags(key.tags())
+                        .publishPercentileHistogram()
+                        .register(meterRegistry),
+                Counter.builder("llm.generated.tokens")
+                        .description("Tokens generated by the model")
+                        .tags(key.tags())
+                        .register(meterRegistry)));
+    }
+
+    private record MeterKey(String backend, String model, String endpoint) {
+
+        Tags tags() {
+            return Tags.of("backend", backend, "model", model, "endpoint", endpoint);
+        }
+    }
+
+    private record GenerationMeters(Timer timeToFirstToken,
+                                    Timer interToken,
+                                    Timer completion,
+                                    DistributionSummary tokensPerSecond,
+                                    Counter tokens) {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+package ru.raiff.ai_lab.service;
+
+import java.io.Serial;
+import java.time.Duration;
+
+/**
+ * Запрос к модели не принят: очередь ожидания заполнена ({@code queueFull}) или ожидание слота превысило лимит.
+ */
+public class LlmOverloadedException extends RuntimeException {
+    
+    @Serial
+    private static final long serialVersionUID = 1L;
+    
+    private final boolean queueFull;
+    private final Duration retryAfter;
+    
+    public LlmOverloadedException(boolean queueFull, Duration retryAfter) {
+        super(queueFull ? "LLM request queue is full" : "Timed out waiting for an LLM slot");
+        this.queueFull = queueFull;
+        this.retryAfter = retryAfter;
+    }
+    
+    public boolean isQueueFull() {
+        return queueFull;
+    }
+    
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
\ No newline at end of file
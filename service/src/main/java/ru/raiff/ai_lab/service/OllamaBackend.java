@@ -0,0 +1,96 @@
+package ru.raiff.ai_lab.service;
+
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.ollama.api.OllamaApi;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Один хост Ollama в пуле: клиент и модель для запросов, клиент для проверок здоровья с короткими таймаутами,
+ * число выполняющихся запросов и состояние выключателя.
+ */
+final class OllamaBackend {
+    
+    private final String url;
+    private final OllamaApi api;
+    private final OllamaChatModel chatModel;
+    private final OllamaApi probeApi;
+    private final Set<String> configuredModels;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile Set<String> discoveredModels = Set.of();
+    private volatile long ejectedUntil;
+    private volatile boolean ejected;
+    
+    OllamaBackend(String url, OllamaApi api, OllamaChatModel chatModel, OllamaApi probeApi, Set<String> configuredModels) {
+        this.url = url;
+        this.api = api;
+        this.chatModel = chatModel;
+        this.probeApi = probeApi;
+        this.configuredModels = configuredModels;
+    }
+    
+    String url() {
+        return url;
+    }
+    
+    OllamaApi api() {
+        return api;
+    }
+    
+    OllamaChatModel chatModel() {
+        return chatModel;
+    }
+    
+    OllamaApi probeApi() {
+        return probeApi;
+    }
+    
+    AtomicInteger outstanding() {
+        return outstanding;
+    }
+    
+    boolean available(long now) {
+        return !ejected || now - ejectedUntil >= 0;
+    }
+    
+    boolean isEjected() {
+        return ejected;
+    }
+    
+    /**
+     * Обслуживает ли бэкенд модель; пока список моделей неизвестен, считаем, что да.
+     */
+    boolean serves(String model) {
+        Set<String> models = configuredModels.isEmpty() ? discoveredModels : configuredModels;
+        return models.isEmpty() || models.contains(model);
+    }
+    
+    void discovered(Set<String> models) {
+        this.discoveredModels = models;
+    }
+    
+    void succeeded() {
+        consecutiveFailures.set(0);
+        ejected = false;
+    }
+    
+    /**
+     * {@code true}, если ошибка вывела бэкенд из ротации.
+     */
+    boolean failed(int threshold, long ejectNanos) {
+        if (consecutiveFailures.incrementAndGet() < threshold) {
+            return false;
+        }
+        eject(System.nanoTime() + ejectNanos, threshold);
+        return true;
+    }
+    
+    void eject(long until, int threshold) {
+        ejectedUntil = until;
+        ejected = true;
+        // после возвращения одна ошибка снова выводит бэкенд
+        consecutiveFailures.set(threshold - 1);
+    }
+}
\ No newline at end of file
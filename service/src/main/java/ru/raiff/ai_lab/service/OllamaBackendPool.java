@@ -0,0 +1,270 @@
+package ru.raiff.ai_lab.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.ollama.autoconfigure.OllamaChatProperties;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.ollama.api.OllamaApi;
+import org.springframework.ai.ollama.management.ModelManagementOptions;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import ru.raiff.ai_lab.config.OllamaRoutingProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Пул бэкендов Ollama для чат-модели. Запрос уходит на доступный бэкенд с наименьшим числом выполняющихся
+ * запросов среди тех, что обслуживают нужную модель. Бэкенд выводится из ротации после {@code failure-threshold}
+ * ошибок подряд или проваленной проверки {@code /api/tags} и возвращается по истечении {@code eject-duration}.
+ * <p>
+ * {@code app.llm.max-concurrent} задаёт слоты на один бэкенд: общий лимит {@link LlmConcurrencyLimiter}
+ * пересчитывается по числу бэкендов в ротации, так что второй хост удваивает пропускную способность,
+ * а выпавший не перегружает оставшиеся.
+ */
+@Service
+@Slf4j
+public class OllamaBackendPool implements SchedulingConfigurer {
+    
+    private static final String LATEST = ":latest";
+    
+    private final List<OllamaBackend> backends = new ArrayList<>();
+    private final Map<OllamaBackend, Counter> failures = new HashMap<>();
+    private final LlmConcurrencyLimiter llmConcurrencyLimiter;
+    private final String defaultModel;
+    private final int slotsPerBackend;
+    private final int failureThreshold;
+    private final long ejectNanos;
+    private final long healthTimeoutNanos;
+    private final Duration healthInterval;
+    private final ExecutorService probes = Executors.newVirtualThreadPerTaskExecutor();
+    private int next;
+    
+    public OllamaBackendPool(OllamaRoutingProperties properties,
+                             OllamaChatProperties chatProperties,
+                             ToolCallingManager toolCallingManager,
+                             ObjectProvider<ObservationRegistry> observationRegistry,
+                             ObjectProvider<RestClient.Builder> restClientBuilder,
+                             ObjectProvider<WebClient.Builder> webClientBuilder,
+                             LlmConcurrencyLimiter llmConcurrencyLimiter,
+                             MeterRegistry meterRegistry,
+                             @Value("${spring.ai.ollama.base-url}") String baseUrl,
+                             @Value("${app.llm.max-concurrent:2}") int slotsPerBackend) {
+        this.llmConcurrencyLimiter = llmConcurrencyLimiter;
+        this.defaultModel = normalize(chatProperties.getModel());
+        this.slotsPerBackend = slotsPerBackend;
+        this.failureThreshold = Math.max(properties.failureThreshold(), 1);
+        this.ejectNanos = properties.ejectDuration().toNanos();
+        this.healthTimeoutNanos = properties.healthTimeout().toNanos();
+        this.healthInterval = properties.healthInterval();
+        
+        List<OllamaRoutingProperties.Backend> configured = properties.backends().isEmpty() ?
+                List.of(new OllamaRoutingProperties.Backend(baseUrl, List.of())) :
+                properties.backends();
+        SimpleClientHttpRequestFactory probeRequests = new SimpleClientHttpRequestFactory();
+        probeRequests.setConnectTimeout(properties.healthTimeout());
+        probeRequests.setReadTimeout(properties.healthTimeout());
+        for (OllamaRoutingProperties.Backend config : configured) {
+            OllamaApi api = OllamaApi.builder()
+                    .baseUrl(config.url())
+                    .restClientBuilder(restClientBuilder.getIfAvailable(RestClient::builder).clone())
+                    .webClientBuilder(webClientBuilder.getIfAvailable(WebClient::builder).clone())
+                    .build();
+            OllamaChatModel chatModel = OllamaChatModel.builder()
+                    .ollamaApi(api)
+                    .defaultOptions(chatProperties.getOptions())
+                    .toolCallingManager(toolCallingManager)
+                    .observationRegistry(observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP))
+                    .modelManagementOptions(ModelManagementOptions.defaults())
+                    .build();
+            OllamaApi probeApi = OllamaApi.builder()
+                    .baseUrl(config.url())
+                    .restClientBuilder(RestClient.builder().requestFactory(probeRequests))
+                    .build();
+            OllamaBackend backend = new OllamaBackend(config.url(), api, chatModel, probeApi,
+                    config.models().stream().map(OllamaBackendPool::normalize).collect(Collectors.toUnmodifiableSet()));
+            backends.add(backend);
+            
+            Gauge.builder("ollama.backend.outstanding", backend, b -> b.outstanding().get())
+                    .description("Model requests in flight on the backend")
+                    .tag("backend", backend.url())
+                    .register(meterRegistry);
+            Gauge.builder("ollama.backend.available", backend, b -> b.isEjected() ? 0 : 1)
+                    .description("1 while the backend is in rotation")
+                    .tag("backend", backend.url())
+                    .register(meterRegistry);
+            failures.put(backend, Counter.builder("ollama.backend.failures")
+                    .description("Failed model requests on the backend")
+                    .tag("backend", backend.url())
+                    .register(meterRegistry));
+        }
+        log.info("Routing chat model requests over {} Ollama backend(s): {}",
+                backends.size(), backends.stream().map(OllamaBackend::url).toList());
+        updateCapacity();
+    }
+    
+    /**
+     * Занимает бэкенд под запрос; обязательно парный {@link #release}. С непустым {@code exclude} (повтор
+     * на другом бэкенде) возвращает {@code null}, если других доступных нет; первый запрос получает бэкенд
+     * всегда — если вне ротации все, то наименее нагруженный из них.
+     */
+    synchronized OllamaBackend acquire(String model, Set<OllamaBackend> exclude) {
+        long now = System.nanoTime();
+        OllamaBackend best = pick(model, exclude, now, true);
+        if (best == null) {
+            best = pick(null, exclude, now, true);
+        }
+        if (best == null && exclude.isEmpty()) {
+            best = pick(null, exclude, now, false);
+        }
+        if (best != null) {
+            best.outstanding().incrementAndGet();
+            next++;
+        }
+        return best;
+    }
+    
+    /**
+     * Освобождает бэкенд и учитывает исход запроса. Возвращает {@code true}, если ошибка на стороне бэкенда
+     * и запрос имеет смысл повторить на другом.
+     */
+    boolean release(OllamaBackend backend, Throwable error) {
+        backend.outstanding().decrementAndGet();
+        if (error == null) {
+            backend.succeeded();
+            return false;
+        }
+        if (!isBackendFault(error)) {
+            return false;
+        }
+        failures.get(backend).increment();
+        boolean wasEjected = backend.isEjected();
+        if (backend.failed(failureThreshold, ejectNanos) && !wasEjected) {
+            log.warn("Ejecting Ollama backend {} after failed requests: {}", backend.url(), error.getMessage());
+            updateCapacity();
+        }
+        return true;
+    }
+    
+    String modelOf(Prompt prompt) {
+        ChatOptions options = prompt.getOptions();
+        return options != null && options.getModel() != null ? normalize(options.getModel()) : defaultModel;
+    }
+    
+    ChatOptions defaultOptions() {
+        return backends.get(0).chatModel().getDefaultOptions();
+    }
+    
+    List<OllamaBackend> backends() {
+        return backends;
+    }
+    
+    /**
+     * Период проверки берётся из {@link OllamaRoutingProperties#healthInterval()}, как и остальные настройки пула.
+     */
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addFixedDelayTask(this::checkHealth, healthInterval);
+    }
+    
+    /**
+     * Активная проверка: {@code /api/tags} каждого бэкенда параллельно. Заодно обновляет список моделей бэкенда.
+     */
+    public void checkHealth() {
+        List<Callable<Object>> checks = backends.stream()
+                .map(backend -> Executors.callable(() -> probe(backend)))
+                .toList();
+        try {
+            probes.invokeAll(checks, healthTimeoutNanos * 2, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        updateCapacity();
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        probes.shutdownNow();
+    }
+    
+    private void probe(OllamaBackend backend) {
+        try {
+            OllamaApi.ListModelResponse response = backend.probeApi().listModels();
+            if (response != null && response.models() != null) {
+                backend.discovered(response.models().stream()
+                        .map(model -> normalize(model.name()))
+                        .collect(Collectors.toUnmodifiableSet()));
+            }
+            if (backend.isEjected() && backend.available(System.nanoTime())) {
+                backend.succeeded();
+                log.info("Ollama backend {} is back in rotation", backend.url());
+            }
+        } catch (Exception e) {
+            if (!backend.isEjected()) {
+                log.warn("Ejecting Ollama backend {}: health check failed: {}", backend.url(), e.getMessage());
+            }
+            backend.eject(System.nanoTime() + ejectNanos, failureThreshold);
+        }
+    }
+    
+    private OllamaBackend pick(String model, Set<OllamaBackend> exclude, long now, boolean availableOnly) {
+        OllamaBackend best = null;
+        int size = backends.size();
+        // равные по нагрузке бэкенды перебираются по кругу
+        for (int i = 0; i < size; i++) {
+            OllamaBackend backend = backends.get((next + i) % size);
+            if (exclude.contains(backend)
+                    || (availableOnly && !backend.available(now))
+                    || (model != null && !backend.serves(model))) {
+                continue;
+            }
+            if (best == null || backend.outstanding().get() < best.outstanding().get()) {
+                best = backend;
+            }
+        }
+        return best;
+    }
+    
+    private void updateCapacity() {
+        long now = System.nanoTime();
+        long inRotation = backends.stream().filter(backend -> backend.available(now)).count();
+        llmConcurrencyLimiter.resize((int) Math.max(inRotation, 1) * slotsPerBackend);
+    }
+    
+    // 4xx — ошибка запроса, а не бэкенда: повторять и выводить хост из ротации незачем
+    private static boolean isBackendFault(Throwable error) {
+        if (error instanceof NonTransientAiException) {
+            return false;
+        }
+        return !(error instanceof WebClientResponseException response) || response.getStatusCode().is5xxServerError();
+    }
+    
+    static String normalize(String model) {
+        return model.contains(":") ? model : model + LATEST;
+    }
+}
\ No newline at end of file
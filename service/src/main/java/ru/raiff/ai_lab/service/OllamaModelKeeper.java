@@ -0,0 +1,170 @@
+package ru.raiff.ai_lab.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.model.observation.ModelObservationContext;
+import org.springframework.ai.ollama.api.OllamaApi;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Прогрев и удержание моделей Ollama. При старте чат-модель (на каждом бэкенде пула) и модель эмбеддингов загружаются заранее,
+ * пока идёт трафик — раз в {@code check-interval} продлевается их {@code keep_alive}, а после {@code idle-timeout}
+ * без запросов модели выгружаются. Трафик виден по наблюдениям Spring AI за вызовами моделей; собственные
+ * запросы прогрева идут мимо {@code ChatModel} и трафиком не считаются. Время загрузки модели по данным
+ * Ollama ({@code load_duration}) публикуется таймером {@code ollama.model.load}.
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "app.ollama.warm-up.enabled", havingValue = "true", matchIfMissing = true)
+public class OllamaModelKeeper implements ObservationHandler<Observation.Context> {
+
+    private static final String WARM_UP_INPUT = "warm-up";
+
+    private final OllamaApi ollamaApi;
+    private final OllamaBackendPool ollamaBackendPool;
+    private final MeterRegistry meterRegistry;
+    private final String chatModel;
+    private final String embeddingModel;
+    private final String embeddingUrl;
+    private final Duration keepAlive;
+    private final Duration idleTimeout;
+    private volatile Instant lastActivity = Instant.now();
+    private volatile boolean resident;
+
+    public OllamaModelKeeper(OllamaApi ollamaApi,
+                             OllamaBackendPool ollamaBackendPool,
+                             MeterRegistry meterRegistry,
+                             @Value("${spring.ai.ollama.chat.model}") String chatModel,
+                             @Value("${spring.ai.ollama.embedding.model:mxbai-embed-large}") String embeddingModel,
+                             @Value("${spring.ai.ollama.base-url}") String embeddingUrl,
+                             @Value("${app.ollama.keep-alive:PT10M}") Duration keepAlive,
+                             @Value("${app.ollama.idle-timeout:PT30M}") Duration idleTimeout) {
+        this.ollamaApi = ollamaApi;
+        this.ollamaBackendPool = ollamaBackendPool;
+        this.meterRegistry = meterRegistry;
+        this.chatModel = chatModel;
+        this.embeddingModel = embeddingModel;
+        this.embeddingUrl = embeddingUrl;
+        this.keepAlive = keepAlive;
+        this.idleTimeout = idleTimeout;
+    }
+
+    // не из конструктора: датчик получает ссылку на this
+    @PostConstruct
+    public void registerGauges() {
+        Gauge.builder("ollama.models.resident", this, keeper -> keeper.resident ? 1 : 0)
+                .description("1 while the chat and embedding models are kept loaded")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Thread.ofVirtual().name("ollama-warm-up").start(this::load);
+    }
+
+    /**
+     * Пока трафик есть — продлевает {@code keep_alive} (для загруженной модели это доли миллисекунды),
+     * после долгого простоя выгружает модели, освобождая память под другие процессы.
+     */
+    @Scheduled(fixedDelayString = "${app.ollama.check-interval:PT2M}",
+            initialDelayString = "${app.ollama.check-interval:PT2M}")
+    public void maintain() {
+        boolean active = Duration.between(lastActivity, Instant.now()).compareTo(idleTimeout) < 0;
+        if (active) {
+            load();
+        } else if (resident) {
+            unload();
+        }
+    }
+
+    @Override
+    public boolean supportsContext(Observation.Context context) {
+        return context instanceof ModelObservationContext<?, ?>;
+    }
+
+    @Override
+    public void onStart(Observation.Context context) {
+        lastActivity = Instant.now();
+        // модель загрузит сам запрос (он несёт тот же keep_alive), дальше её удерживает maintain
+        resident = true;
+    }
+
+    private void load() {
+        boolean loaded = true;
+        for (OllamaBackend backend : ollamaBackendPool.backends()) {
+            if (!backend.serves(OllamaBackendPool.normalize(chatModel))) {
+                continue;
+            }
+            try {
+                OllamaApi.ChatResponse chat = backend.api().chat(OllamaApi.ChatRequest.builder(chatModel)
+                        .messages(List.of())
+                        .stream(false)
+                        .keepAlive(keepAlive.toSeconds() + "s")
+                        .build());
+                recordLoad(chatModel, "chat", backend.url(), chat.loadDuration());
+            } catch (Exception e) {
+                loaded = false;
+                log.warn("Could not warm up chat model on {}: {}", backend.url(), e.getMessage());
+            }
+        }
+        try {
+            OllamaApi.EmbeddingsResponse embedding = ollamaApi.embed(
+                    new OllamaApi.EmbeddingsRequest(embeddingModel, List.of(WARM_UP_INPUT), keepAlive, null, null));
+            recordLoad(embeddingModel, "embedding", embeddingUrl, embedding.loadDuration());
+        } catch (Exception e) {
+            loaded = false;
+            log.warn("Could not warm up embedding model: {}", e.getMessage());
+        }
+        if (loaded && !resident) {
+            log.info("Ollama models {} and {} loaded, keep_alive {}", chatModel, embeddingModel, keepAlive);
+        }
+        resident = loaded;
+    }
+
+    private void unload() {
+        try {
+            for (OllamaBackend backend : ollamaBackendPool.backends()) {
+                if (backend.serves(OllamaBackendPool.normalize(chatModel))) {
+                    backend.api().chat(OllamaApi.ChatRequest.builder(chatModel)
+                            .messages(List.of())
+                            .stream(false)
+                            .keepAlive("0")
+                            .build());
+                }
+            }
+            ollamaApi.embed(new OllamaApi.EmbeddingsRequest(embeddingModel, List.of(WARM_UP_INPUT), Duration.ZERO, null, null));
+            log.info("Unloaded Ollama models after {} without traffic", idleTimeout);
+        } catch (Exception e) {
+            log.warn("Could not unload Ollama models: {}", e.getMessage());
+        } finally {
+            resident = false;
+        }
+    }
+
+    private void recordLoad(String model, String type, String backend, Long loadNanos) {
+        if (loadNanos == null) {
+            return;
+        }
+        Timer.builder("ollama.model.load")
+                .description("Model load time reported by Ollama; near zero while the model is resident")
+                .tag("model", model)
+                .tag("type", type)
+                .tag("backend", backend)
+                .register(meterRegistry)
+                .record(Duration.ofNanos(loadNanos));
+    }
+}
\ No newline at end of file
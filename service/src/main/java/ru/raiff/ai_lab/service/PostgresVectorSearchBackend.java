@@ -0,0 +1,33 @@
+package ru.raiff.ai_lab.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.raiff.ai_lab.dto.VectorSearchOptions;
+import ru.raiff.ai_lab.model.VectorStore;
+import ru.raiff.ai_lab.repository.VectorStoreJdbcRepository;
+
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.vector-index.backend", havingValue = "postgres", matchIfMissing = true)
+public class PostgresVectorSearchBackend implements VectorSearchBackend {
+    
+    private final VectorStoreJdbcRepository vectorStoreJdbcRepository;
+    
+    @Override
+    public List<VectorStore> findNearest(float[] queryEmbedding, int limit, VectorSearchOptions options) {
+        return vectorStoreJdbcRepository.findNearestNeighbors(queryEmbedding, limit, options);
+    }
+    
+    @Override
+    public String name() {
+        return "postgres";
+    }
+    
+    @Override
+    public double bytesPerVector() {
+        return vectorStoreJdbcRepository.averageStorageBytesPerVector();
+    }
+}
@@ -0,0 +1,129 @@
+package ru.raiff.ai_lab.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.raiff.ai_lab.repository.ResponseCacheRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Семантический кеш ответов: вопрос пользователя эмбеддится и ищется среди сохранённых по косинусному расстоянию.
+ * История чата в эмбеддинг не входит — она длинная и вытеснила бы вопрос из окна модели эмбеддингов; вместо этого
+ * ответ ищется только среди сохранённых для той же истории (по SHA-256 её текста). Сам вопрос, уже попавший
+ * в контекст последней строкой, в ключ не входит, а у вопроса без предыстории ключа нет вовсе — иначе
+ * перефразированный вопрос никогда не совпал бы с сохранённым.
+ * Включается свойством {@code app.response-cache.enabled}; отдельные чаты можно исключить из кеша,
+ * список исключений хранится в БД и переживает рестарт.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResponseCacheService {
+    
+    private final ResponseCacheRepository responseCacheRepository;
+    private final EmbeddingModel embeddingModel;
+    private final ChatContextService chatContextService;
+    private final Set<Long> bypassedChats = ConcurrentHashMap.newKeySet();
+    
+    @Value("${app.response-cache.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${app.response-cache.max-distance:0.05}")
+    private double maxDistance;
+    
+    @Value("${app.response-cache.ttl:PT24H}")
+    private Duration ttl;
+    
+    @Value("${spring.ai.ollama.chat.model}")
+    private String model;
+    
+    public boolean isActiveFor(Long chatId) {
+        return enabled && (chatId == null || !bypassedChats.contains(chatId));
+    }
+    
+    @PostConstruct
+    public void loadBypassedChats() {
+        bypassedChats.addAll(responseCacheRepository.findBypassedChatIds());
+    }
+    
+    public Optional<String> lookup(Long chatId, String prompt, String context) {
+        if (!isActiveFor(chatId)) {
+            return Optional.empty();
+        }
+        try {
+            float[] embedding = embeddingModel.embed(prompt);
+            Optional<String> hit = responseCacheRepository.findNearest(model, contextKey(prompt, context), embedding)
+                    .filter(cached -> cached.distance() <= maxDistance)
+                    .map(ResponseCacheRepository.CachedResponse::response);
+            log.debug("Response cache {} for chat {}", hit.isPresent() ? "hit" : "miss", chatId);
+            return hit;
+        } catch (RuntimeException e) {
+            log.warn("Response cache lookup failed", e);
+            return Optional.empty();
+        }
+    }
+    
+    public void store(Long chatId, String prompt, String context, String response) {
+        if (!isActiveFor(chatId) || response == null || response.isBlank()) {
+            return;
+        }
+        try {
+            float[] embedding = embeddingModel.embed(prompt);
+            responseCacheRepository.save(model, contextKey(prompt, context), prompt, response, embedding,
+                    LocalDateTime.now().plus(ttl));
+        } catch (RuntimeException e) {
+            log.warn("Failed to store response in cache", e);
+        }
+    }
+    
+    public void setBypass(Long chatId, boolean bypass) {
+        log.info("Response cache bypass for chat {}: {}", chatId, bypass);
+        if (bypass) {
+            responseCacheRepository.addBypass(chatId);
+            bypassedChats.add(chatId);
+        } else {
+            responseCacheRepository.removeBypass(chatId);
+            bypassedChats.remove(chatId);
+        }
+    }
+    
+    public int invalidate(String prompt) {
+        int deleted = responseCacheRepository.deleteSimilar(model, embeddingModel.embed(prompt), maxDistance);
+        log.info("Invalidated {} cached responses similar to prompt", deleted);
+        return deleted;
+    }
+    
+    public int invalidateAll() {
+        int deleted = responseCacheRepository.deleteAll();
+        log.warn("Invalidated all {} cached responses", deleted);
+        return deleted;
+    }
+    
+    @Scheduled(fixedDelayString = "${app.response-cache.cleanup-interval:PT10M}")
+    public void deleteExpired() {
+        if (!enabled) {
+            return;
+        }
+        int deleted = responseCacheRepository.deleteExpired();
+        if (deleted > 0) {
+            log.info("Removed {} expired cached responses", deleted);
+        }
+    }
+    
+    /**
+     * Ключ истории, к которой привязан ответ: SHA-256 контекста без текущего вопроса, {@code null} без предыстории.
+     */
+    public String contextKey(String prompt, String context) {
+        String history = chatContextService.historyBefore(context, prompt);
+        return history != null ? HashUtils.sha256(history) : null;
+    }
+}
@@ -0,0 +1,111 @@
+package ru.raiff.ai_lab.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Чат-модель поверх {@link OllamaBackendPool}: основная {@link ChatModel} приложения, через неё идут
+ * {@code ChatClient}, пересказы и склейка запросов. Запрос, упавший по вине бэкенда, один раз повторяется
+ * на другом — поток только если модель ещё ничего не выдала. В метаданных ответа остаются адрес бэкенда
+ * и модель, на которые ушёл запрос ({@link #BACKEND_METADATA}, {@link #MODEL_METADATA}), — по ним
+ * размечаются метрики генерации.
+ */
+@Component
+@Primary
+@RequiredArgsConstructor
+@Slf4j
+public class RoutingChatModel implements ChatModel {
+    
+    public static final String BACKEND_METADATA = "ollama.backend";
+    public static final String MODEL_METADATA = "ollama.model";
+    
+    private static final int MAX_ATTEMPTS = 2;
+    
+    private final OllamaBackendPool ollamaBackendPool;
+    
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        String model = ollamaBackendPool.modelOf(prompt);
+        Set<OllamaBackend> tried = new HashSet<>();
+        OllamaBackend backend = ollamaBackendPool.acquire(model, tried);
+        while (true) {
+            tried.add(backend);
+            try {
+                ChatResponse response = backend.chatModel().call(prompt);
+                ollamaBackendPool.release(backend, null);
+                return routed(response, backend, model);
+            } catch (RuntimeException e) {
+                boolean retryable = ollamaBackendPool.release(backend, e);
+                OllamaBackend other = retryable && tried.size() < MAX_ATTEMPTS ?
+                        ollamaBackendPool.acquire(model, tried) : null;
+                if (other == null) {
+                    throw e;
+                }
+                log.warn("Model call failed on {}, retrying on {}: {}", backend.url(), other.url(), e.getMessage());
+                backend = other;
+            }
+        }
+    }
+    
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            String model = ollamaBackendPool.modelOf(prompt);
+            Set<OllamaBackend> tried = new HashSet<>();
+            return stream(prompt, model, ollamaBackendPool.acquire(model, tried), tried);
+        });
+    }
+    
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return ollamaBackendPool.defaultOptions();
+    }
+    
+    private Flux<ChatResponse> stream(Prompt prompt, String model, OllamaBackend backend, Set<OllamaBackend> tried) {
+        tried.add(backend);
+        AtomicBoolean emitted = new AtomicBoolean();
+        AtomicBoolean released = new AtomicBoolean();
+        return backend.chatModel().stream(prompt)
+                .map(response -> routed(response, backend, model))
+                .doOnNext(response -> emitted.set(true))
+                .doOnComplete(() -> release(backend, released, null))
+                // отмена подписчиком — не ошибка бэкенда
+                .doOnCancel(() -> release(backend, released, null))
+                .onErrorResume(e -> {
+                    boolean retryable = release(backend, released, e);
+                    OllamaBackend other = !emitted.get() && retryable && tried.size() < MAX_ATTEMPTS ?
+                            ollamaBackendPool.acquire(model, tried) : null;
+                    if (other == null) {
+                        return Flux.error(e);
+                    }
+                    log.warn("Model stream failed on {}, retrying on {}: {}", backend.url(), other.url(), e.getMessage());
+                    return stream(prompt, model, other, tried);
+                });
+    }
+    
+    private static ChatResponse routed(ChatResponse response, OllamaBackend backend, String model) {
+        if (response == null) {
+            return null;
+        }
+        return ChatResponse.builder()
+                .from(response)
+                .metadata(BACKEND_METADATA, backend.url())
+                .metadata(MODEL_METADATA, model)
+                .build();
+    }
+    
+    private boolean release(OllamaBackend backend, AtomicBoolean released, Throwable error) {
+        return released.compareAndSet(false, true) && ollamaBackendPool.release(backend, error);
+    }
+}
\ No newline at end of file
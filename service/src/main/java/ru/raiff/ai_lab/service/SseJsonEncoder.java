@@ -0,0 +1,93 @@
+package ru.raiff.ai_lab.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Кодирует данные SSE-событий в JSON одним переиспользуемым {@link JsonGenerator} поверх общего буфера:
+ * экранирование (включая обратный слеш и управляющие символы) делает Jackson, без аллокации генератора на событие.
+ * Экземпляр не потокобезопасен — один на поток ответа.
+ */
+final class SseJsonEncoder {
+    
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    
+    private final BufferWriter buffer = new BufferWriter();
+    private final JsonGenerator generator;
+    
+    SseJsonEncoder() {
+        try {
+            this.generator = JSON_FACTORY.createGenerator(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error creating JSON generator", e);
+        }
+        // корневые значения пишутся подряд в один генератор, разделитель между ними не нужен
+        this.generator.setRootValueSeparator(null);
+    }
+    
+    String text(String text) {
+        return field("text", text);
+    }
+    
+    String position(int position) {
+        try {
+            buffer.reset();
+            generator.writeStartObject();
+            generator.writeNumberField("position", position);
+            generator.writeEndObject();
+            generator.flush();
+            return buffer.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error encoding SSE event", e);
+        }
+    }
+    
+    private String field(String name, String value) {
+        try {
+            buffer.reset();
+            generator.writeStartObject();
+            generator.writeStringField(name, value);
+            generator.writeEndObject();
+            generator.flush();
+            return buffer.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error encoding SSE event", e);
+        }
+    }
+    
+    private static final class BufferWriter extends Writer {
+        
+        private final StringBuilder builder = new StringBuilder(256);
+        
+        void reset() {
+            builder.setLength(0);
+        }
+        
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            builder.append(chars, offset, length);
+        }
+        
+        @Override
+        public void write(String text, int offset, int length) {
+            builder.append(text, offset, offset + length);
+        }
+        
+        @Override
+        public void flush() {
+        }
+        
+        @Override
+        public void close() {
+        }
+        
+        @Override
+        public String toString() {
+            return builder.toString();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,135 @@
+package ru.raiff.ai_lab.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Потоковый разбиватель текста на чанки: читает {@link Reader} порциями и никогда
+ * не держит в памяти больше одного чанка, поэтому подходит для многогигабайтных файлов.
+ * Граница чанка ставится по содержимому: на первом пробеле второй половины окна, где хеш
+ * предшествующего текста даёт нужный остаток, иначе на последнем пробельном символе. Такие границы
+ * не зависят от того, где начался чанк, поэтому после правки в середине файла нарезка через один-два
+ * чанка снова совпадает с прежней и неизменённые чанки можно не пересчитывать.
+ * Соседние чанки перекрываются на {@code overlap} символов.
+ */
+public class TextChunker implements Iterator<String> {
+
+    private static final int ANCHOR_WINDOW = 32;
+    // в среднем одна граница на 32 пробела — примерно середина второй половины окна
+    private static final int ANCHOR_MASK = 31;
+
+    private final Reader reader;
+    private final int chunkSize;
+    private final int overlap;
+    private final char[] readBuffer = new char[8192];
+    private final StringBuilder window;
+
+    private boolean eof;
+    private int carried;
+    private String next;
+
+    public TextChunker(Reader reader, int chunkSize, int overlap) {
+        if (chunkSize <= 0 || overlap < 0 || overlap >= chunkSize) {
+            throw new IllegalArgumentException("Invalid chunk settings: size=" + chunkSize + ", overlap=" + overlap);
+        }
+        this.reader = reader;
+        this.chunkSize = chunkSize;
+        this.overlap = overlap;
+        this.window = new StringBuilder(chunkSize + readBuffer.length);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String chunk = next;
+        next = null;
+        return chunk;
+    }
+
+    private String advance() {
+        while (true) {
+            fill();
+            if (window.length() == 0) {
+                return null;
+            }
+            if (window.length() < chunkSize && eof) {
+                // в окне остался только хвост перекрытия — он уже попал в предыдущий чанк
+                boolean onlyOverlap = window.length() <= carried;
+                String tail = window.toString().strip();
+                window.setLength(0);
+                if (onlyOverlap || tail.isEmpty()) {
+                    return null;
+                }
+                return tail;
+            }
+
+            int cut = findCut();
+            String chunk = window.substring(0, cut).strip();
+            int keepFrom = Math.max(cut - overlap, 1);
+            // перекрытие тоже выравниваем по границе слова, чтобы не начинать чанк с обрывка
+            while (keepFrom < cut && !Character.isWhitespace(window.charAt(keepFrom))) {
+                keepFrom++;
+            }
+            window.delete(0, keepFrom);
+            carried = cut - keepFrom;
+            if (!chunk.isEmpty()) {
+                return chunk;
+            }
+        }
+    }
+
+    private int findCut() {
+        int limit = Math.min(chunkSize, window.length());
+        for (int i = limit / 2 + 1; i < limit; i++) {
+            if (Character.isWhitespace(window.charAt(i)) && isAnchor(i)) {
+                return i + 1;
+            }
+        }
+        for (int i = limit - 1; i > limit / 2; i--) {
+            if (Character.isWhitespace(window.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    private boolean isAnchor(int end) {
+        int hash = 0;
+        for (int i = Math.max(end - ANCHOR_WINDOW, 0); i < end; i++) {
+            hash = 31 * hash + window.charAt(i);
+        }
+        // перемешиваем биты, иначе младшие биты полиномиального хеша зависят только от последних символов
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return (hash & ANCHOR_MASK) == 0;
+    }
+
+    private void fill() {
+        try {
+            while (!eof && window.length() < chunkSize) {
+                int read = reader.read(readBuffer);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    window.append(readBuffer, 0, read);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ru.raiff.ai_lab.service;
+
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+/**
+ * Обрезка текста под бюджет токенов.
+ */
+final class TokenBudget {
+    
+    private static final String ELLIPSIS = " […]";
+    
+    private TokenBudget() {
+    }
+    
+    /**
+     * Начало текста, укладывающееся примерно в {@code maxTokens}; длинный текст режется пропорционально
+     * числу токенов, без пословного перебора.
+     */
+    static String clip(TokenCountEstimator estimator, String text, int maxTokens) {
+        int tokens = estimator.estimate(text);
+        if (tokens <= maxTokens) {
+            return text;
+        }
+        int chars = (int) ((long) text.length() * maxTokens / tokens);
+        if (chars > 0 && Character.isHighSurrogate(text.charAt(chars - 1))) {
+            chars--;
+        }
+        return text.substring(0, chars) + ELLIPSIS;
+    }
+}
\ No newline at end of file
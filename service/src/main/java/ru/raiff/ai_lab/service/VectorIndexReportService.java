@@ -0,0 +1,62 @@
+package ru.raiff.ai_lab.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.raiff.ai_lab.dto.VectorIndexReport;
+import ru.raiff.ai_lab.dto.VectorSearchOptions;
+import ru.raiff.ai_lab.model.DistanceMetric;
+import ru.raiff.ai_lab.model.VectorStore;
+import ru.raiff.ai_lab.repository.VectorStoreJdbcRepository;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Сравнивает активный {@link VectorSearchBackend} с точным перебором в Postgres: запросами служат
+ * случайные эмбеддинги из vector_store, полнота считается как доля точных top-k, найденных бэкендом.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VectorIndexReportService {
+
+    private final VectorSearchBackend vectorSearchBackend;
+    private final VectorStoreJdbcRepository vectorStoreJdbcRepository;
+    private final VectorStoreService vectorStoreService;
+
+    @Value("${app.vector-index.dimensions:1024}")
+    private int dimensions;
+
+    public VectorIndexReport evaluate(int queries, int k) {
+        Map<String, float[]> sample = vectorStoreJdbcRepository.findRandomEmbeddings(queries);
+        double recallSum = 0;
+        long searchNanos = 0;
+        for (float[] query : sample.values()) {
+            List<String> exact = vectorStoreJdbcRepository.findExactNearestIds(query, k);
+            long startedAt = System.nanoTime();
+            List<VectorStore> found = vectorSearchBackend.findNearest(query, k, VectorSearchOptions.of(DistanceMetric.COSINE));
+            searchNanos += System.nanoTime() - startedAt;
+
+            Set<String> foundIds = new HashSet<>();
+            found.forEach(row -> foundIds.add(row.getId()));
+            long hits = exact.stream().filter(foundIds::contains).count();
+            recallSum += exact.isEmpty() ? 1 : (double) hits / exact.size();
+        }
+        int evaluated = sample.size();
+        VectorIndexReport report = new VectorIndexReport(
+                vectorSearchBackend.name(),
+                vectorStoreService.countVectors(),
+                vectorSearchBackend.bytesPerVector(),
+                dimensions * Float.BYTES,
+                k,
+                evaluated,
+                evaluated == 0 ? 0 : recallSum / evaluated,
+                evaluated == 0 ? 0 : searchNanos / 1_000_000.0 / evaluated);
+        log.info("Vector index report: {}", report);
+        return report;
+    }
+}
\ No newline at end of file
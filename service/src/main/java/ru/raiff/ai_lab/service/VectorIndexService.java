@@ -0,0 +1,171 @@
+package ru.raiff.ai_lab.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import ru.raiff.ai_lab.dto.VectorIndexInfo;
+import ru.raiff.ai_lab.dto.VectorIndexRequest;
+import ru.raiff.ai_lab.dto.VectorSearchOptions;
+import ru.raiff.ai_lab.dto.VectorSearchPlan;
+import ru.raiff.ai_lab.model.DistanceMetric;
+import ru.raiff.ai_lab.model.VectorIndexMethod;
+import ru.raiff.ai_lab.repository.VectorIndexRepository;
+import ru.raiff.ai_lab.repository.VectorStoreJdbcRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Построение и перестроение HNSW/IVFFlat индексов vector_store без блокировки записи
+ * ({@code CREATE INDEX CONCURRENTLY}) и проверка через EXPLAIN, что поиск по метрике попадает в индекс.
+ * Намеренно не {@code @Transactional}: конкурентное построение индекса в транзакции невозможно.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VectorIndexService {
+    
+    private static final Pattern INDEX_SCAN = Pattern.compile("Index Scan using (\\S+)");
+    
+    private final VectorIndexRepository vectorIndexRepository;
+    private final VectorStoreJdbcRepository vectorStoreJdbcRepository;
+    
+    @Value("${app.vector-index.dimensions:1024}")
+    private int dimensions;
+    
+    @Value("${app.vector-search.metric:cosine}")
+    private DistanceMetric defaultMetric;
+    
+    public List<VectorIndexInfo> listIndexes() {
+        return vectorIndexRepository.findAll();
+    }
+    
+    /**
+     * Строит индекс для пары (метод, метрика). Если такой уже есть, новый строится рядом под временным
+     * именем и подменяет старый переименованием, так что поиск не остаётся без индекса.
+     */
+    public VectorIndexInfo build(VectorIndexRequest request) {
+        String withClause = withClause(request);
+        Optional<VectorIndexInfo> existing = findIndex(request.method(), request.metric());
+        String name = existing.map(VectorIndexInfo::name).orElseGet(() -> defaultName(request.method(), request.metric()));
+        long startedAt = System.currentTimeMillis();
+        
+        if (existing.isEmpty()) {
+            log.info("Creating vector index {} ({})", name, withClause);
+            try {
+                vectorIndexRepository.createConcurrently(name, request.method(), request.metric(), withClause);
+            } catch (RuntimeException e) {
+                // прерванный CREATE INDEX CONCURRENTLY оставляет невалидный индекс
+                vectorIndexRepository.dropConcurrently(name);
+                throw new RuntimeException("Error creating vector index " + name, e);
+            }
+        } else {
+            String rebuilt = name + "_rebuild";
+            String retired = name + "_old";
+            log.info("Rebuilding vector index {} ({})", name, withClause);
+            vectorIndexRepository.dropConcurrently(rebuilt);
+            try {
+                vectorIndexRepository.createConcurrently(rebuilt, request.method(), request.metric(), withClause);
+            } catch (RuntimeException e) {
+                vectorIndexRepository.dropConcurrently(rebuilt);
+                throw new RuntimeException("Error rebuilding vector index " + name, e);
+            }
+            vectorIndexRepository.dropConcurrently(retired);
+            vectorIndexRepository.rename(name, retired);
+            vectorIndexRepository.rename(rebuilt, name);
+            vectorIndexRepository.dropConcurrently(retired);
+        }
+        
+        log.info("Vector index {} ready in {} ms", name, System.currentTimeMillis() - startedAt);
+        return vectorIndexRepository.findAll().stream()
+                .filter(index -> index.name().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Vector index disappeared after build: " + name));
+    }
+    
+    public VectorSearchPlan explain(VectorSearchOptions options) {
+        float[] probe = vectorStoreJdbcRepository.findRandomEmbeddings(1).values().stream()
+                .findFirst()
+                .orElseGet(this::unitVector);
+        List<String> plan = vectorStoreJdbcRepository.explainNearest(probe, 10, options);
+        String indexUsed = null;
+        for (String line : plan) {
+            Matcher matcher = INDEX_SCAN.matcher(line);
+            if (matcher.find()) {
+                indexUsed = matcher.group(1);
+                break;
+            }
+        }
+        return new VectorSearchPlan(options.metric(), indexUsed, plan);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void verifyDefaultMetricIsIndexed() {
+        try {
+            if (findIndex(null, defaultMetric).isEmpty()) {
+                log.warn("No valid vector index on vector_store uses {}; {} searches will scan the whole table",
+                        defaultMetric.operatorClass(), defaultMetric);
+                return;
+            }
+            VectorSearchPlan plan = explain(VectorSearchOptions.of(defaultMetric));
+            if (plan.indexUsed() == null) {
+                log.warn("Nearest-neighbour query for {} does not use a vector index: {}", defaultMetric, plan.plan());
+            } else {
+                log.info("Nearest-neighbour query for {} uses index {}", defaultMetric, plan.indexUsed());
+            }
+        } catch (Exception e) {
+            log.warn("Could not verify vector index usage", e);
+        }
+    }
+    
+    private Optional<VectorIndexInfo> findIndex(VectorIndexMethod method, DistanceMetric metric) {
+        return vectorIndexRepository.findAll().stream()
+                .filter(VectorIndexInfo::valid)
+                .filter(index -> index.metric() == metric && (method == null || index.method() == method))
+                .findFirst();
+    }
+    
+    private static String withClause(VectorIndexRequest request) {
+        if (request.method() == null || request.metric() == null) {
+            throw new IllegalArgumentException("Index method and distance metric are required");
+        }
+        List<String> parameters = new ArrayList<>();
+        if (request.method() == VectorIndexMethod.HNSW) {
+            if (request.m() != null) {
+                requireRange("m", request.m(), 2, 100);
+                parameters.add("m = " + request.m());
+            }
+            if (request.efConstruction() != null) {
+                requireRange("ef_construction", request.efConstruction(), 4, 1000);
+                parameters.add("ef_construction = " + request.efConstruction());
+            }
+        } else if (request.lists() != null) {
+            requireRange("lists", request.lists(), 1, 32768);
+            parameters.add("lists = " + request.lists());
+        }
+        return String.join(", ", parameters);
+    }
+    
+    private static void requireRange(String parameter, int value, int min, int max) {
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(parameter + " must be between " + min + " and " + max + ": " + value);
+        }
+    }
+    
+    private static String defaultName(VectorIndexMethod method, DistanceMetric metric) {
+        return ("vector_store_" + method.name() + "_" + metric.name() + "_index").toLowerCase(Locale.ROOT);
+    }
+    
+    private float[] unitVector() {
+        float[] vector = new float[dimensions];
+        vector[0] = 1;
+        return vector;
+    }
+}
\ No newline at end of file
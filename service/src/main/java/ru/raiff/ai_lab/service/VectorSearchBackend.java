@@ -0,0 +1,33 @@
+package ru.raiff.ai_lab.service;
+
+import ru.raiff.ai_lab.dto.VectorSearchOptions;
+import ru.raiff.ai_lab.model.VectorStore;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Бэкенд поиска ближайших соседей для {@link VectorStoreService}. Postgres остаётся источником истины;
+ * бэкенд получает уведомления об изменениях после коммита.
+ */
+public interface VectorSearchBackend {
+    
+    List<VectorStore> findNearest(float[] queryEmbedding, int limit, VectorSearchOptions options);
+    
+    String name();
+    
+    /**
+     * Средний объём, который бэкенд тратит на один вектор (данные плюс индекс), в байтах.
+     */
+    double bytesPerVector();
+    
+    default void onSaved(Map<String, float[]> embeddings) {
+    }
+    
+    default void onDeleted(Collection<String> ids) {
+    }
+    
+    default void onCleared() {
+    }
+}
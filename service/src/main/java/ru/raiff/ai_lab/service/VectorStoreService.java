@@ -1,15 +1,25 @@
 package ru.raiff.ai_lab.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.raiff.ai_lab.dto.VectorChunk;
+import ru.raiff.ai_lab.dto.VectorSearchOptions;
+import ru.raiff.ai_lab.model.DistanceMetric;
 import ru.raiff.ai_lab.model.VectorStore;
+import ru.raiff.ai_lab.repository.VectorStoreJdbcRepository;
 import ru.raiff.ai_lab.repository.VectorStoreRepository;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor
@@ -18,41 +28,168 @@ import java.util.*;
 public class VectorStoreService {
     
     private final VectorStoreRepository vectorStoreRepository;
+    private final VectorStoreJdbcRepository vectorStoreJdbcRepository;
+    private final LexicalIndexService lexicalIndexService;
+    private final VectorSearchBackend vectorSearchBackend;
+    private final MeterRegistry meterRegistry;
     private final ObjectMapper objectMapper = new ObjectMapper();
     
+    @Value("${app.lexical-index.search-limit:100}")
+    private int lexicalSearchLimit;
+    
+    @Value("${app.vector-search.metric:cosine}")
+    private DistanceMetric defaultMetric;
+    
+    @Value("${app.vector-search.ef-search:#{null}}")
+    private Integer defaultEfSearch;
+    
+    @Value("${app.vector-search.probes:#{null}}")
+    private Integer defaultProbes;
+    
+    @Value("${app.vector-search.range-limit:100}")
+    private int rangeLimit;
+    
     public VectorStore saveVector(String id, String content, Map<String, Object> metadata, float[] embedding) {
         VectorStore vectorStore = new VectorStore();
         vectorStore.setId(id != null ? id : UUID.randomUUID().toString());
         vectorStore.setContent(content);
         vectorStore.setMetadata(convertMetadataToJson(metadata));
-        vectorStore.setEmbedding(convertEmbeddingToString(embedding));
+        vectorStore.setEmbedding(embedding);
         
         log.info("Saving vector with id: {}", vectorStore.getId());
-        return vectorStoreRepository.save(vectorStore);
+        VectorStore saved = vectorStoreRepository.save(vectorStore);
+        AfterCommit.run(() -> {
+            lexicalIndexService.index(saved.getId(), saved.getContent());
+            vectorSearchBackend.onSaved(Collections.singletonMap(saved.getId(), saved.getEmbedding()));
+        });
+        return saved;
+    }
+    
+    public void saveVectorsBatch(List<VectorChunk> chunks) {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        List<VectorStore> vectors = new ArrayList<>(chunks.size());
+        for (VectorChunk chunk : chunks) {
+            vectors.add(new VectorStore(
+                    chunk.id() != null ? chunk.id() : UUID.randomUUID().toString(),
+                    chunk.content(),
+                    convertMetadataToJson(chunk.metadata()),
+                    chunk.embedding(),
+                    chunk.documentId(),
+                    chunk.chunkHash()));
+        }
+        
+        log.debug("Saving batch of {} vectors", vectors.size());
+        vectorStoreJdbcRepository.insertBatch(vectors);
+        
+        Map<String, String> contentById = new LinkedHashMap<>();
+        Map<String, float[]> embeddingById = new LinkedHashMap<>();
+        vectors.forEach(vector -> {
+            contentById.put(vector.getId(), vector.getContent());
+            embeddingById.put(vector.getId(), vector.getEmbedding());
+        });
+        AfterCommit.run(() -> {
+            lexicalIndexService.indexAll(contentById);
+            vectorSearchBackend.onSaved(embeddingById);
+        });
+    }
+    
+    /**
+     * Переносит существующие чанки к новой версии документа. Текст и эмбеддинг не меняются,
+     * поэтому лексический индекс и бэкенд поиска трогать не нужно.
+     */
+    public void relinkVectorsBatch(List<VectorChunk> chunks) {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        List<VectorStore> vectors = new ArrayList<>(chunks.size());
+        for (VectorChunk chunk : chunks) {
+            VectorStore vector = new VectorStore();
+            vector.setId(chunk.id());
+            vector.setMetadata(convertMetadataToJson(chunk.metadata()));
+            vector.setDocumentId(chunk.documentId());
+            vectors.add(vector);
+        }
+        log.debug("Relinking batch of {} vectors", vectors.size());
+        vectorStoreJdbcRepository.relinkBatch(vectors);
+    }
+    
+    public Map<String, Deque<String>> getChunkIdsByHash(List<Integer> documentIds) {
+        return vectorStoreJdbcRepository.findChunkIdsByHash(documentIds);
     }
     
     public Optional<VectorStore> getVectorById(String id) {
         return vectorStoreRepository.findById(id);
     }
     
+    public List<VectorStore> getVectorsByIds(List<String> ids) {
+        return vectorStoreRepository.findAllById(ids);
+    }
+    
     public List<VectorStore> getAllVectors() {
         return vectorStoreRepository.findAll();
     }
     
     public List<VectorStore> findSimilarVectors(float[] queryEmbedding, int limit) {
-        String embeddingString = convertEmbeddingToString(queryEmbedding);
-        log.info("Finding {} nearest neighbors", limit);
-        return vectorStoreRepository.findNearestNeighbors(embeddingString, limit);
+        return findSimilarVectors(queryEmbedding, limit, new VectorSearchOptions(defaultMetric, defaultEfSearch, defaultProbes));
     }
     
+    public List<VectorStore> findSimilarVectors(float[] queryEmbedding, int limit, VectorSearchOptions options) {
+        log.info("Finding {} nearest neighbors by {}", limit, options.metric());
+        long startedAt = System.nanoTime();
+        List<VectorStore> result = vectorSearchBackend.findNearest(queryEmbedding, limit, options);
+        recordSearch(vectorSearchBackend.name(), options.metric(), System.nanoTime() - startedAt, result.size());
+        return result;
+    }
+    
+    /**
+     * Порог задаётся в метрике индекса ({@code app.vector-search.metric}): запрос по другой метрике индекс
+     * не использует и сканирует всю таблицу.
+     */
     public List<VectorStore> findVectorsWithinDistance(float[] queryEmbedding, double distance) {
-        String embeddingString = convertEmbeddingToString(queryEmbedding);
-        log.info("Finding vectors within distance: {}", distance);
-        return vectorStoreRepository.findWithinDistance(embeddingString, distance);
+        return findVectorsWithinDistance(queryEmbedding, distance, defaultMetric);
+    }
+    
+    /**
+     * Не больше {@code app.vector-search.range-limit} ближайших соседей, лежащих ближе порога.
+     */
+    public List<VectorStore> findVectorsWithinDistance(float[] queryEmbedding, double distance, DistanceMetric metric) {
+        log.info("Finding vectors within {} distance: {}", metric, distance);
+        long startedAt = System.nanoTime();
+        // HNSW отдаёт не больше ef_search строк, так что поднимаем его до лимита
+        int efSearch = Math.min(1000, Math.max(rangeLimit, defaultEfSearch != null ? defaultEfSearch : 0));
+        VectorSearchOptions options = new VectorSearchOptions(metric, efSearch, defaultProbes);
+        List<VectorStore> result = vectorStoreJdbcRepository.findWithinDistance(queryEmbedding, distance, rangeLimit, options);
+        recordSearch("postgres-range", metric, System.nanoTime() - startedAt, result.size());
+        return result;
+    }
+    
+    private void recordSearch(String backend, DistanceMetric metric, long nanos, int results) {
+        String metricTag = metric.name().toLowerCase();
+        Timer.builder("vector.search")
+                .description("Vector similarity search latency")
+                .tags("backend", backend, "metric", metricTag)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("vector.search.results")
+                .description("Rows returned by a vector similarity search")
+                .tags("backend", backend, "metric", metricTag)
+                .register(meterRegistry)
+                .record(results);
     }
     
     public List<VectorStore> searchByContent(String keyword) {
-        return vectorStoreRepository.findByContentContaining(keyword);
+        if (!lexicalIndexService.isReady()) {
+            return vectorStoreRepository.findByContentContaining(keyword);
+        }
+        List<String> ids = lexicalIndexService.search(keyword, lexicalSearchLimit).stream()
+                .map(LexicalIndexService.ScoredId::id)
+                .toList();
+        Map<String, VectorStore> byId = new HashMap<>();
+        vectorStoreRepository.findAllById(ids).forEach(vector -> byId.put(vector.getId(), vector));
+        return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
     }
     
     public List<VectorStore> searchByMetadata(Map<String, Object> metadataQuery) {
@@ -71,26 +208,71 @@ public class VectorStoreService {
             vectorStore.setMetadata(convertMetadataToJson(metadata));
         }
         if (embedding != null) {
-            vectorStore.setEmbedding(convertEmbeddingToString(embedding));
+            vectorStore.setEmbedding(embedding);
         }
         
         log.info("Updating vector with id: {}", id);
-        return vectorStoreRepository.save(vectorStore);
+        VectorStore saved = vectorStoreRepository.save(vectorStore);
+        AfterCommit.run(() -> {
+            lexicalIndexService.index(saved.getId(), saved.getContent());
+            if (embedding != null) {
+                vectorSearchBackend.onSaved(Collections.singletonMap(saved.getId(), embedding));
+            }
+        });
+        return saved;
     }
     
     public void deleteVector(String id) {
         log.info("Deleting vector with id: {}", id);
         vectorStoreRepository.deleteById(id);
+        AfterCommit.run(() -> {
+            lexicalIndexService.delete(List.of(id));
+            vectorSearchBackend.onDeleted(List.of(id));
+        });
     }
     
     public void deleteVectors(List<String> ids) {
         log.info("Deleting {} vectors", ids.size());
         vectorStoreRepository.deleteByIds(ids);
+        AfterCommit.run(() -> {
+            lexicalIndexService.delete(ids);
+            vectorSearchBackend.onDeleted(ids);
+        });
+    }
+    
+    /**
+     * Чанки удаляемых документов: внешний ключ на {@code loaded_document} их не удаляет, а лишь обнуляет ссылку,
+     * и без этого они оставались бы в поиске.
+     */
+    public void deleteDocumentVectors(List<Integer> documentIds) {
+        List<String> ids = vectorStoreJdbcRepository.deleteByDocumentIds(documentIds);
+        log.info("Deleted {} vectors of {} documents", ids.size(), documentIds.size());
+        onVectorsDeleted(ids);
+    }
+    
+    public void deleteAllDocumentVectors() {
+        List<String> ids = vectorStoreJdbcRepository.deleteAllDocumentChunks();
+        log.warn("Deleted all {} document vectors", ids.size());
+        onVectorsDeleted(ids);
+    }
+    
+    private void onVectorsDeleted(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        AfterCommit.run(() -> {
+            lexicalIndexService.delete(ids);
+            vectorSearchBackend.onDeleted(ids);
+        });
     }
     
     public void deleteAllVectors() {
         log.warn("Deleting all vectors");
         vectorStoreRepository.deleteAll();
+        AfterCommit.run(() -> {
+            lexicalIndexService.deleteAll();
+            vectorSearchBackend.onCleared();
+        });
     }
     
     public long countVectors() {
@@ -105,21 +287,6 @@ public class VectorStoreService {
         return vectorStoreRepository.existsById(id);
     }
     
-    private String convertEmbeddingToString(float[] embedding) {
-        if (embedding == null) {
-            return null;
-        }
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < embedding.length; i++) {
-            sb.append(embedding[i]);
-            if (i < embedding.length - 1) {
-                sb.append(",");
-            }
-        }
-        sb.append("]");
-        return sb.toString();
-    }
-    
     private String convertMetadataToJson(Map<String, Object> metadata) {
         if (metadata == null || metadata.isEmpty()) {
             return "{}";
@@ -137,7 +304,7 @@ public class VectorStoreService {
             return new HashMap<>();
         }
         try {
-            return objectMapper.readValue(metadataJson, Map.class);
+            return objectMapper.readValue(metadataJson, new TypeReference<>() {});
         } catch (JsonProcessingException e) {
             log.error("Error parsing metadata JSON", e);
             return new HashMap<>();
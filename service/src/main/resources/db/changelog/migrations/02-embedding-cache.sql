@@ -0,0 +1,12 @@
+--liquibase formatted sql
+
+--changeset author:system id:02-embedding-cache
+-- Персистентный уровень кеша эмбеддингов: ключ — модель и SHA-256 текста
+CREATE TABLE IF NOT EXISTS embedding_cache (
+    model        VARCHAR(255) NOT NULL,
+    content_hash VARCHAR(64)  NOT NULL,
+    embedding    VECTOR       NOT NULL,
+    created_at   TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+    CONSTRAINT embedding_cache_pk PRIMARY KEY (model, content_hash)
+);
@@ -0,0 +1,19 @@
+--liquibase formatted sql
+
+--changeset author:system id:03-response-cache
+-- Семантический кеш ответов модели: поиск по косинусной близости эмбеддинга промпта
+CREATE TABLE IF NOT EXISTS response_cache (
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    model      VARCHAR(255) NOT NULL,
+    prompt     TEXT         NOT NULL,
+    response   TEXT         NOT NULL,
+    embedding  VECTOR(1024) NOT NULL,
+    created_at TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_at TIMESTAMP    NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS response_cache_hnsw_index
+    ON response_cache USING hnsw (embedding vector_cosine_ops);
+
+CREATE INDEX IF NOT EXISTS idx_response_cache_expires_at
+    ON response_cache(expires_at);
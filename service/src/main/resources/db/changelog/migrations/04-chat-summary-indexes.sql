@@ -0,0 +1,10 @@
+--liquibase formatted sql
+
+--changeset author:system id:04-chat-summary-indexes
+-- Список чатов с keyset-пагинацией по (created_at, id)
+CREATE INDEX IF NOT EXISTS idx_chat_created_at_id
+    ON chat(created_at DESC, id DESC);
+
+-- Реплики чата по времени: последнее сообщение, последние N реплик и подсчёт через index-only scan
+CREATE INDEX IF NOT EXISTS idx_chat_entry_chat_id_created_at
+    ON chat_entry(chat_id, created_at, id);
@@ -0,0 +1,11 @@
+--liquibase formatted sql
+
+--changeset author:system id:05-pooled-chat-ids
+-- Шаг identity-последовательностей под pooled-оптимизатор Hibernate (allocationSize = 50):
+-- один nextval резервирует блок из 50 id, и вставки реплик можно слать пачками
+ALTER TABLE chat ALTER COLUMN id SET INCREMENT BY 50;
+ALTER TABLE chat_entry ALTER COLUMN id SET INCREMENT BY 50;
+
+-- pooled трактует значение последовательности как верхнюю границу блока, поэтому сдвигаем её на уже выданные id
+SELECT setval(pg_get_serial_sequence('public.chat', 'id'), GREATEST((SELECT MAX(id) FROM chat), 1));
+SELECT setval(pg_get_serial_sequence('public.chat_entry', 'id'), GREATEST((SELECT MAX(id) FROM chat_entry), 1));
\ No newline at end of file
@@ -0,0 +1,17 @@
+--liquibase formatted sql
+
+--changeset author:system id:06-document-chunks
+-- Связь чанка с загруженным документом и хеш его текста: при повторной загрузке файла
+-- сохраняются чанки с совпавшим хешем, эмбеддинги считаются только для новых
+ALTER TABLE vector_store ADD COLUMN document_id INTEGER REFERENCES loaded_document(id) ON DELETE SET NULL;
+ALTER TABLE vector_store ADD COLUMN chunk_hash VARCHAR(64);
+
+CREATE INDEX IF NOT EXISTS vector_store_document_idx ON vector_store (document_id);
+
+-- уже загруженные чанки привязываем к документу по метаданным конвейера загрузки
+UPDATE vector_store v
+SET document_id = d.id,
+    chunk_hash  = encode(sha256(convert_to(v.content, 'UTF8')), 'hex')
+FROM loaded_document d
+WHERE d.filename = v.metadata ->> 'source'
+  AND d.content_hash = v.metadata ->> 'document_hash';
\ No newline at end of file
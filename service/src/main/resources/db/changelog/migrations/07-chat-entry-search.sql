@@ -0,0 +1,22 @@
+--liquibase formatted sql
+
+--changeset author:system id:07-chat-entry-search
+-- Полнотекстовый поиск по репликам. Язык реплики определяет приложение (Lingua) и пишет в language,
+-- конфигурация text search выбирается по нему. Константы ::regconfig сворачиваются в OID при разборе,
+-- поэтому выражение неизменяемое и годится для генерируемой колонки
+ALTER TABLE chat_entry ADD COLUMN language VARCHAR(2);
+
+-- для уже сохранённых реплик хватает грубой оценки: есть кириллица — русский
+UPDATE chat_entry SET language = CASE WHEN content ~ '[А-Яа-яЁё]' THEN 'ru' ELSE 'en' END;
+
+ALTER TABLE chat_entry ADD COLUMN search_vector TSVECTOR GENERATED ALWAYS AS (
+    to_tsvector(CASE language
+                    WHEN 'ru' THEN 'russian'::regconfig
+                    WHEN 'en' THEN 'english'::regconfig
+                    ELSE 'simple'::regconfig
+                    END,
+                coalesce(content, ''))
+    ) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_chat_entry_search_vector
+    ON chat_entry USING gin (search_vector);
\ No newline at end of file
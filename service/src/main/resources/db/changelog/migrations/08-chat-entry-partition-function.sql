@@ -0,0 +1,15 @@
+--liquibase formatted sql
+
+--changeset author:system id:08-chat-entry-partition-function splitStatements:false
+-- Месячная секция chat_entry. Вызывается миграцией 09 для уже накопленной истории,
+-- а дальше приложением: заранее на ближайшие месяцы и перед возвратом архивного чата в старый месяц
+CREATE OR REPLACE FUNCTION create_chat_entry_partition(month DATE) RETURNS TEXT AS $$
+DECLARE
+    from_ts        TIMESTAMP := date_trunc('month', month);
+    partition_name TEXT      := 'chat_entry_p' || to_char(from_ts, 'YYYY_MM');
+BEGIN
+    EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF chat_entry FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, from_ts, from_ts + INTERVAL '1 month');
+    RETURN partition_name;
+END;
+$$ LANGUAGE plpgsql;
\ No newline at end of file
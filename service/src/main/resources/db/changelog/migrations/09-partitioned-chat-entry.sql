@@ -0,0 +1,62 @@
+--liquibase formatted sql
+
+--changeset author:system id:09-partitioned-chat-entry
+-- chat_entry секционируется по месяцам created_at: свежие секции с их индексами малы и держатся в shared buffers,
+-- старые пустеют по мере архивации простаивающих чатов и удаляются. Ключ секционирования обязан входить
+-- в первичный ключ, поэтому ключ теперь (id, created_at); Hibernate по-прежнему находит реплику по id.
+-- Секционированная таблица не может иметь identity-колонку (до PostgreSQL 17), id берётся из обычной
+-- последовательности с тем же именем и шагом 50
+ALTER TABLE chat_entry RENAME TO chat_entry_legacy;
+ALTER TABLE chat_entry_legacy RENAME CONSTRAINT chat_entry_pkey TO chat_entry_legacy_pkey;
+ALTER TABLE chat_entry_legacy ALTER COLUMN id DROP IDENTITY;
+DROP INDEX IF EXISTS idx_chat_entry_chat_id_created_at;
+DROP INDEX IF EXISTS idx_chat_entry_search_vector;
+
+CREATE SEQUENCE chat_entry_id_seq INCREMENT BY 50;
+
+CREATE TABLE chat_entry (
+    id            BIGINT       NOT NULL DEFAULT nextval('chat_entry_id_seq'),
+    content       TEXT,
+    created_at    TIMESTAMP(6) NOT NULL,
+    role          VARCHAR(255)
+        CONSTRAINT chat_entry_role_check
+            CHECK ((role)::TEXT = ANY (ARRAY['USER'::CHARACTER VARYING, 'ASSISTANT'::CHARACTER VARYING]::TEXT[])),
+    chat_id       BIGINT REFERENCES chat(id),
+    language      VARCHAR(2),
+    search_vector TSVECTOR GENERATED ALWAYS AS (
+        to_tsvector(CASE language
+                        WHEN 'ru' THEN 'russian'::regconfig
+                        WHEN 'en' THEN 'english'::regconfig
+                        ELSE 'simple'::regconfig
+                        END,
+                    coalesce(content, ''))
+        ) STORED,
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+ALTER SEQUENCE chat_entry_id_seq OWNED BY chat_entry.id;
+
+-- индексы родителя наследуются каждой секцией, в том числе созданными позже
+CREATE INDEX idx_chat_entry_chat_id_created_at ON chat_entry (chat_id, created_at, id);
+CREATE INDEX idx_chat_entry_search_vector ON chat_entry USING gin (search_vector);
+
+-- секции на всю накопленную историю и на два месяца вперёд; границы считаются по тому же времени,
+-- с которым реплики переносятся ниже, иначе реплика без created_at в чате старше всех реплик не найдёт секцию
+SELECT create_chat_entry_partition(month::DATE)
+FROM (SELECT min(coalesce(ce.created_at, c.created_at, now())) AS first_at,
+             max(coalesce(ce.created_at, c.created_at, now())) AS last_at
+      FROM chat_entry_legacy ce
+               LEFT JOIN chat c ON c.id = ce.chat_id) bounds,
+     generate_series(date_trunc('month', coalesce(bounds.first_at, now())),
+                     date_trunc('month', greatest(bounds.last_at, now())) + INTERVAL '2 months',
+                     INTERVAL '1 month') AS month;
+
+-- реплики без времени создания получают время чата: created_at теперь ключ секционирования
+INSERT INTO chat_entry (id, content, created_at, role, chat_id, language)
+SELECT ce.id, ce.content, coalesce(ce.created_at, c.created_at, now()), ce.role, ce.chat_id, ce.language
+FROM chat_entry_legacy ce
+         LEFT JOIN chat c ON c.id = ce.chat_id;
+
+SELECT setval('chat_entry_id_seq', GREATEST((SELECT MAX(id) FROM chat_entry), 1));
+
+DROP TABLE chat_entry_legacy;
\ No newline at end of file
@@ -0,0 +1,18 @@
+--liquibase formatted sql
+
+--changeset author:system id:10-chat-archive
+-- Холодное хранилище простаивающих чатов: все реплики чата одним сжатым блоком (zstd поверх JSON).
+-- Блок уже сжат, поэтому TOAST хранит его как есть, без повторной попытки pglz.
+-- Сводка последней реплики нужна списку чатов, чтобы архивный чат не приходилось поднимать ради превью
+CREATE TABLE IF NOT EXISTS chat_archive (
+    chat_id         BIGINT PRIMARY KEY REFERENCES chat(id) ON DELETE CASCADE,
+    entry_count     INTEGER      NOT NULL,
+    last_preview    TEXT,
+    last_message_at TIMESTAMP(6),
+    codec           VARCHAR(16)  NOT NULL,
+    raw_size        INTEGER      NOT NULL,
+    payload         BYTEA        NOT NULL,
+    archived_at     TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+ALTER TABLE chat_archive ALTER COLUMN payload SET STORAGE EXTERNAL;
\ No newline at end of file
@@ -0,0 +1,15 @@
+--liquibase formatted sql
+
+--changeset author:system id:11-response-cache-context
+-- Эмбеддится только вопрос пользователя, история чата участвует в ключе хешем: иначе длинная история
+-- вытесняет вопрос из окна модели эмбеддингов, и разные вопросы одного чата получают один ответ
+ALTER TABLE response_cache ADD COLUMN context_hash VARCHAR(64);
+
+-- такие записи эмбеддились вместе с историей и под новый ключ не подходят
+DELETE FROM response_cache WHERE prompt LIKE 'Context: %';
+
+-- чаты, исключённые из кеша; раньше список жил только в памяти и терялся при рестарте
+CREATE TABLE IF NOT EXISTS response_cache_bypass (
+    chat_id    BIGINT PRIMARY KEY REFERENCES chat (id) ON DELETE CASCADE,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
\ No newline at end of file
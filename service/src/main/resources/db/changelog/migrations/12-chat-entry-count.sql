@@ -0,0 +1,43 @@
+--liquibase formatted sql
+
+--changeset author:system id:12-chat-entry-count splitStatements:false
+-- Счётчик живых реплик в строке чата: список чатов больше не считает count(*) по каждому чату.
+-- Ведётся триггерами уровня оператора, так что пакетная вставка обновляет строку чата один раз;
+-- реплики, ушедшие в chat_archive, учитываются через chat_archive.entry_count
+ALTER TABLE chat ADD COLUMN entry_count BIGINT NOT NULL DEFAULT 0;
+
+UPDATE chat c
+SET entry_count = counted.entries
+FROM (SELECT chat_id, count(*) AS entries FROM chat_entry GROUP BY chat_id) counted
+WHERE counted.chat_id = c.id;
+
+CREATE OR REPLACE FUNCTION chat_entry_count_inserted() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE chat c
+    SET entry_count = c.entry_count + inserted.entries
+    FROM (SELECT chat_id, count(*) AS entries FROM new_entries GROUP BY chat_id) inserted
+    WHERE inserted.chat_id = c.id;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION chat_entry_count_deleted() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE chat c
+    SET entry_count = greatest(c.entry_count - deleted.entries, 0)
+    FROM (SELECT chat_id, count(*) AS entries FROM old_entries GROUP BY chat_id) deleted
+    WHERE deleted.chat_id = c.id;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- у триггера с таблицей переходов может быть только одно событие, поэтому их два
+CREATE TRIGGER chat_entry_count_insert
+    AFTER INSERT ON chat_entry
+    REFERENCING NEW TABLE AS new_entries
+    FOR EACH STATEMENT EXECUTE FUNCTION chat_entry_count_inserted();
+
+CREATE TRIGGER chat_entry_count_delete
+    AFTER DELETE ON chat_entry
+    REFERENCING OLD TABLE AS old_entries
+    FOR EACH STATEMENT EXECUTE FUNCTION chat_entry_count_deleted();
\ No newline at end of file
@@ -0,0 +1,7 @@
+--liquibase formatted sql
+
+--changeset author:system id:13-document-source-path
+-- filename хранит путь файла относительно app.ingestion.base-dir, а не голое имя: одноимённые файлы
+-- из разных каталогов — разные документы, а не версии друг друга. Прежние записи загружались по имени,
+-- для файлов из корня каталога оно совпадает с путём
+ALTER TABLE loaded_document ALTER COLUMN filename TYPE VARCHAR(1024);
\ No newline at end of file
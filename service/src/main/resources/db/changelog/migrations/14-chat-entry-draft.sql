@@ -0,0 +1,6 @@
+--liquibase formatted sql
+
+--changeset author:system id:14-chat-entry-draft
+-- Черновик ответа пишется в chat_entry, пока генерация ещё идёт; окно контекста такие реплики пропускает,
+-- иначе недописанный ответ попал бы в промпт следующего вопроса
+ALTER TABLE chat_entry ADD COLUMN draft BOOLEAN NOT NULL DEFAULT false;
\ No newline at end of file
@@ -0,0 +1,9 @@
+--liquibase formatted sql
+
+--changeset author:system id:15-chat-archive-search
+-- Поисковый вектор архивного чата: реплики уходят из chat_entry в сжатый блок, а полнотекстовый поиск
+-- должен их находить. Вектор один на чат и без позиций, чтобы размер не рос с длиной истории;
+-- уже архивные чаты получают его при следующем проходе архивации
+ALTER TABLE chat_archive ADD COLUMN search_vector TSVECTOR;
+
+CREATE INDEX idx_chat_archive_search_vector ON chat_archive USING gin (search_vector);
\ No newline at end of file
@@ -59,6 +59,59 @@ document.addEventListener("DOMContentLoaded", function() {
     `;
     document.head.appendChild(style);
     
+    // Догрузка списка чатов: сервер отдаёт первую страницу, дальше идём по курсору /api/chats
+    const loadMoreButton = document.getElementById("load-more-chats");
+    if (loadMoreButton) {
+        const chatList = document.querySelector(".chat-list");
+        loadMoreButton.addEventListener("click", async function() {
+            loadMoreButton.disabled = true;
+            try {
+                const response = await fetch(`/api/chats?cursor=${encodeURIComponent(loadMoreButton.dataset.cursor)}`);
+                if (!response.ok) {
+                    throw new Error(`HTTP ${response.status}`);
+                }
+                const page = await response.json();
+                page.chats.forEach(c => chatList.appendChild(createChatListItem(c, chatList.dataset.activeChat)));
+                if (page.nextCursor) {
+                    loadMoreButton.dataset.cursor = page.nextCursor;
+                    loadMoreButton.disabled = false;
+                } else {
+                    loadMoreButton.remove();
+                }
+            } catch (error) {
+                console.error("Ошибка загрузки списка чатов:", error);
+                loadMoreButton.disabled = false;
+            }
+        });
+    }
+    
+    // Та же разметка, что у элемента списка в chat.html
+    function createChatListItem(c, activeChatId) {
+        const li = document.createElement("li");
+        if (String(c.id) === activeChatId) {
+            li.classList.add("active");
+        }
+        const link = document.createElement("a");
+        link.href = `/chat/${c.id}`;
+        const title = document.createElement("span");
+        title.textContent = c.title;
+        link.appendChild(title);
+        const form = document.createElement("form");
+        form.action = `/chat/${c.id}/delete`;
+        form.method = "post";
+        form.addEventListener("submit", e => {
+            if (!confirm('Удалить чат?')) e.preventDefault();
+        });
+        const deleteButton = document.createElement("button");
+        deleteButton.type = "submit";
+        deleteButton.className = "delete-chat-btn";
+        deleteButton.textContent = "✕";
+        form.appendChild(deleteButton);
+        li.appendChild(link);
+        li.appendChild(form);
+        return li;
+    }
+    
     const sendButton = document.getElementById("send-button");
     const sendMvcButton = document.getElementById("send-mvc-button");
     const chatInput = document.getElementById("chat-input");
@@ -135,6 +188,7 @@ document.addEventListener("DOMContentLoaded", function() {
 
         const eventSource = new EventSource(url);
         let fullText = "";
+        let renderer = null;
 
         // Создаем блок для ответа AI
         const aiDiv = document.createElement("div");
@@ -175,8 +229,16 @@ document.addEventListener("DOMContentLoaded", function() {
         
         console.log("Loading placeholder added to chat");
 
+        // Пока запрос ждёт свободный слот модели, сервер присылает позицию в очереди
+        eventSource.addEventListener("queue", function(event) {
+            if (firstTokenReceived) return;
+            const data = JSON.parse(event.data);
+            aiBubble.title = `Позиция в очереди: ${data.position}`;
+        });
+
         eventSource.onmessage = function(event) {
             try {
+                reconnectAttempts = 0;
                 const data = JSON.parse(event.data);
                 let token = data.text;
                 
@@ -185,15 +247,11 @@ document.addEventListener("DOMContentLoaded", function() {
                     firstTokenReceived = true;
                     aiBubble.innerHTML = ""; // Очищаем анимацию
                     aiBubble.classList.add("ai-response"); // Добавляем класс для анимации появления
+                    renderer = createMarkdownRenderer(aiBubble);
                 }
                 
                 fullText += token;
-                // Преобразуем Markdown в HTML (при условии, что marked.js подключен)
-                if (typeof marked !== 'undefined') {
-                    aiBubble.innerHTML = marked.parse(fullText);
-                } else {
-                    aiBubble.textContent = fullText;
-                }
+                renderer.append(token);
                 
                 // Плавная прокрутка только если близко к низу
                 const isNearBottom = messagesContainer.scrollHeight - messagesContainer.scrollTop - messagesContainer.clientHeight < 100;
@@ -205,7 +263,18 @@ document.addEventListener("DOMContentLoaded", function() {
             }
         };
 
+        // Сервер закончил ответ: закрываем поток, иначе EventSource переподключится сам
+        eventSource.addEventListener("done", function() {
+            eventSource.close();
+        });
+
+        let reconnectAttempts = 0;
         eventSource.onerror = function(e) {
+            // При обрыве EventSource сам переподключается с Last-Event-ID и сервер досылает пропущенные токены
+            if (eventSource.readyState === EventSource.CONNECTING && ++reconnectAttempts <= 5) {
+                console.log(`Stream interrupted, reconnecting (attempt ${reconnectAttempts})`);
+                return;
+            }
             eventSource.close();
             
             // Перезагружаем страницу только если не получили данных (реальная ошибка)
@@ -217,6 +286,51 @@ document.addEventListener("DOMContentLoaded", function() {
         };
     });
     
+    // Инкрементальный рендер Markdown: завершённые блоки (до пустой строки вне блока кода)
+    // разбираются один раз и больше не трогаются, заново разбирается только последний, ещё открытый блок
+    function createMarkdownRenderer(container) {
+        const committed = document.createElement("div");
+        const live = document.createElement("div");
+        container.appendChild(committed);
+        container.appendChild(live);
+
+        let text = "";
+        let committedUpTo = 0;
+        let scanPos = 0;
+        let fence = null;
+
+        function append(chunk) {
+            text += chunk;
+            // Без marked.js показываем текст как есть
+            if (typeof marked === 'undefined') {
+                live.textContent = text;
+                return;
+            }
+
+            let boundary = committedUpTo;
+            let newline;
+            while ((newline = text.indexOf("\n", scanPos)) !== -1) {
+                const line = text.slice(scanPos, newline).trim();
+                if (fence !== null) {
+                    if (line.startsWith(fence)) fence = null;
+                } else if (line.startsWith("```") || line.startsWith("~~~")) {
+                    fence = line.slice(0, 3);
+                } else if (line === "") {
+                    boundary = newline + 1;
+                }
+                scanPos = newline + 1;
+            }
+
+            if (boundary > committedUpTo) {
+                committed.insertAdjacentHTML("beforeend", marked.parse(text.slice(committedUpTo, boundary)));
+                committedUpTo = boundary;
+            }
+            live.innerHTML = marked.parse(text.slice(committedUpTo));
+        }
+
+        return { append };
+    }
+
     // Allow sending message with Enter key
     chatInput.addEventListener("keypress", function(e) {
         if (e.key === "Enter" && !e.shiftKey) {
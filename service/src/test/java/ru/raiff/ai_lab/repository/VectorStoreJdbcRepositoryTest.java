@@ -0,0 +1,143 @@
+package ru.raiff.ai_lab.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import ru.raiff.ai_lab.dto.VectorSearchOptions;
+import ru.raiff.ai_lab.model.DistanceMetric;
+import ru.raiff.ai_lab.model.PgVector;
+import ru.raiff.ai_lab.model.VectorStore;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Планы запросов vector_store на настоящем pgvector: поиск соседей и поиск по порогу должны идти
+ * по HNSW-индексу из миграций. Без Docker тест пропускается.
+ */
+@JdbcTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(VectorStoreJdbcRepository.class)
+@Testcontainers(disabledWithoutDocker = true)
+class VectorStoreJdbcRepositoryTest {
+
+    private static final int DIMENSIONS = 1024;
+    private static final int ROWS = 200;
+    private static final String HNSW_INDEX = "vector_store_hnsw_index";
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>(
+            DockerImageName.parse("ankane/pgvector:v0.5.0").asCompatibleSubstituteFor("postgres"));
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    @Autowired
+    private VectorStoreJdbcRepository repository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Random random = new Random(42);
+    private final List<VectorStore> vectors = new ArrayList<>();
+
+    @BeforeEach
+    void insertVectors() {
+        for (int i = 0; i < ROWS; i++) {
+            VectorStore vector = new VectorStore();
+            vector.setId("chunk-" + i);
+            vector.setContent("chunk " + i);
+            vector.setMetadata("{}");
+            vector.setEmbedding(randomVector());
+            vectors.add(vector);
+        }
+        repository.insertBatch(vectors);
+        jdbcTemplate.execute("ANALYZE vector_store");
+    }
+
+    @Test
+    void nearestNeighboursUseHnswIndex() {
+        List<String> plan = repository.explainNearest(randomVector(), 10, VectorSearchOptions.of(DistanceMetric.COSINE));
+
+        assertThat(String.join("\n", plan)).contains("Index Scan using " + HNSW_INDEX);
+    }
+
+    @Test
+    void rangeSearchUsesHnswIndex() {
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+        String sql = "EXPLAIN " + VectorStoreJdbcRepository.WITHIN_DISTANCE_SQL.formatted(DistanceMetric.COSINE.operator());
+        float[] query = randomVector();
+
+        List<String> plan = jdbcTemplate.execute((ConnectionCallback<List<String>>) connection -> {
+            PgVector.register(connection);
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setObject(1, new PgVector(query));
+                ps.setObject(2, new PgVector(query));
+                ps.setInt(3, 100);
+                ps.setDouble(4, 0.5);
+                try (ResultSet rs = ps.executeQuery()) {
+                    List<String> lines = new ArrayList<>();
+                    while (rs.next()) {
+                        lines.add(rs.getString(1));
+                    }
+                    return lines;
+                }
+            }
+        });
+
+        assertThat(String.join("\n", plan)).contains("Index Scan using " + HNSW_INDEX);
+    }
+
+    @Test
+    void rangeSearchKeepsOnlyRowsCloserThanThreshold() {
+        VectorStore target = vectors.get(7);
+
+        List<VectorStore> found = repository.findWithinDistance(target.getEmbedding(), 0.01, 100,
+                new VectorSearchOptions(DistanceMetric.COSINE, 100, null));
+
+        // случайные векторы размерности 1024 почти ортогональны, ближе порога только сам запрос
+        assertThat(found).extracting(VectorStore::getId).containsExactly(target.getId());
+    }
+
+    @Test
+    void searchTuningDoesNotLeakIntoCallerTransaction() {
+        // тест выполняется в транзакции, и репозиторий присоединяется к ней
+        String before = jdbcTemplate.queryForObject("SELECT current_setting('hnsw.ef_search', true)", String.class);
+
+        repository.findNearestNeighbors(randomVector(), 5, new VectorSearchOptions(DistanceMetric.COSINE, 7, null));
+
+        String after = jdbcTemplate.queryForObject("SELECT current_setting('hnsw.ef_search', true)", String.class);
+        assertThat(after).isNotEqualTo("7");
+        if (before != null) {
+            assertThat(after).isEqualTo(before);
+        }
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
\ No newline at end of file
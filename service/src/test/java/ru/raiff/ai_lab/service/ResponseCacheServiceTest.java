@@ -0,0 +1,78 @@
+package ru.raiff.ai_lab.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.raiff.ai_lab.repository.ChatEntryRepository;
+import ru.raiff.ai_lab.repository.ResponseCacheRepository;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ключ кеша ответов для контекста, который строит {@link ChatContextService}: текущий вопрос уже входит в контекст
+ * последней строкой, но на ключ влиять не должен.
+ */
+class ResponseCacheServiceTest {
+
+    private static final String MODEL = "gemma3";
+    private static final String QUESTION = "Что такое Kafka?";
+    private static final String PARAPHRASE = "Расскажи, что такое Kafka";
+    private static final String ANSWER = "Брокер сообщений";
+
+    private final ResponseCacheRepository repository = mock(ResponseCacheRepository.class);
+    private final EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+    private ResponseCacheService responseCacheService;
+
+    @BeforeEach
+    void setUp() {
+        ChatContextService chatContextService = new ChatContextService(mock(ChatEntryRepository.class),
+                mock(ConversationSummaryService.class), mock(ChatArchiveService.class),
+                new JTokkitTokenCountEstimator(), new SimpleMeterRegistry(),
+                20, 1500, 500, Duration.ofMinutes(30), 100);
+        responseCacheService = new ResponseCacheService(repository, embeddingModel, chatContextService);
+        ReflectionTestUtils.setField(responseCacheService, "enabled", true);
+        ReflectionTestUtils.setField(responseCacheService, "maxDistance", 0.05);
+        ReflectionTestUtils.setField(responseCacheService, "ttl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(responseCacheService, "model", MODEL);
+        when(embeddingModel.embed(QUESTION)).thenReturn(new float[]{1f, 0f});
+        when(embeddingModel.embed(PARAPHRASE)).thenReturn(new float[]{0.99f, 0.01f});
+    }
+
+    @Test
+    void paraphrasedFirstQuestionHitsCacheInAnotherChat() {
+        responseCacheService.store(1L, QUESTION, "USER: " + QUESTION + "\n", ANSWER);
+        ArgumentCaptor<String> storedKey = ArgumentCaptor.forClass(String.class);
+        verify(repository).save(eq(MODEL), storedKey.capture(), eq(QUESTION), eq(ANSWER), any(), any());
+        when(repository.findNearest(eq(MODEL), eq(storedKey.getValue()), any()))
+                .thenReturn(Optional.of(new ResponseCacheRepository.CachedResponse(ANSWER, 0.01)));
+
+        Optional<String> hit = responseCacheService.lookup(2L, PARAPHRASE, "USER: " + PARAPHRASE + "\n");
+
+        assertThat(storedKey.getValue()).isNull();
+        assertThat(hit).contains(ANSWER);
+    }
+
+    @Test
+    void sameQuestionAfterDifferentHistoryGetsAnotherKey() {
+        String history = "USER: Привет\nASSISTANT: Здравствуйте!\n";
+
+        String firstTurnKey = responseCacheService.contextKey(QUESTION, "USER: " + QUESTION + "\n");
+        String laterKey = responseCacheService.contextKey(QUESTION, history + "USER: " + QUESTION + "\n");
+        String paraphraseKey = responseCacheService.contextKey(PARAPHRASE, history + "USER: " + PARAPHRASE + "\n");
+
+        assertThat(firstTurnKey).isNull();
+        assertThat(laterKey).isNotNull().isEqualTo(paraphraseKey).isEqualTo(HashUtils.sha256(history));
+    }
+}
\ No newline at end of file